@@ -1,5 +1,7 @@
 package ro.fortsoft.hztask.agent;
 
+import ro.fortsoft.hztask.agent.executor.ExecutionEngine;
+import ro.fortsoft.hztask.agent.processor.AsyncTaskProcessorFactory;
 import ro.fortsoft.hztask.agent.processor.TaskProcessorFactory;
 
 import java.util.HashMap;
@@ -14,11 +16,55 @@ public class AgentConfig {
 
     private Map<Class, TaskProcessorFactory> processorRegistry = new HashMap<>();
 
+    private Map<Class, AsyncTaskProcessorFactory> asyncProcessorRegistry = new HashMap<>();
+
+    private Map<Class, ExecutionEngine> executionEngineRegistry = new HashMap<>();
+
+    /** engine for the task types without one registered, if not set a
+     * {@link ro.fortsoft.hztask.agent.executor.ThreadPoolExecutionEngine} with maxRunningTasks threads **/
+    private ExecutionEngine executionEngine;
+
     private String name;
 
     /** maximum simultaneous running tasks on Agent **/
     private int maxRunningTasks = 5;
 
+    /** adapt the number of simultaneous running tasks to the processing time of the tasks, between
+     * minRunningTasks and maxRunningTasks **/
+    private boolean adaptiveRunningTasks = false;
+
+    /** floor for the adaptive number of running tasks **/
+    private int minRunningTasks = 1;
+
+    /** maximum simultaneous running tasks of a type, within maxRunningTasks **/
+    private Map<Class, Integer> maxRunningTasksPerType = new HashMap<>();
+
+    /** maximum number of tasks claimed and kept ready to start as soon as a running slot frees up,
+     * the actual number adapts to how fast the tasks finish. 0 disables prefetching **/
+    private int maxPrefetchedTasks = 10;
+
+    /** maximum number of finished tasks reported to the Master in a single message **/
+    private int completionBatchSize = 50;
+
+    /** maximum time a finished task waits for others to fill the batch before being reported to the Master **/
+    private long completionBatchLingerMillis = 20;
+
+    /** maximum number of completion batches sent to the Master and not yet acknowledged **/
+    private int maxUnacknowledgedCompletionBatches = 4;
+
+    /** how often the Agent renews with the Master the leases on the tasks it holds, keep it well
+     * below the Master's lease time **/
+    private long leaseRenewIntervalMillis = 10000;
+
+    /** running tasks taking longer than this are considered hung, their leases are no longer renewed
+     * so the Master takes them back and cancels them. 0 means no limit **/
+    private long maxTaskProcessingMillis = 0;
+
+    /** maximum number of {@link ro.fortsoft.hztask.agent.processor.StreamedResult}s written at the same time,
+     * the others wait for a free writer. The Master fails reading a stream not started within
+     * its idle timeout, so keep it above the number of streams expected to be written at once **/
+    private int resultStreamWriterThreads = 16;
+
     public void registerTaskProcessorFactory(Class taskClass, TaskProcessorFactory taskProcessorFactory) {
         processorRegistry.put(taskClass, taskProcessorFactory);
     }
@@ -27,6 +73,33 @@ public class AgentConfig {
         return processorRegistry;
     }
 
+    public void registerAsyncTaskProcessorFactory(Class taskClass, AsyncTaskProcessorFactory taskProcessorFactory) {
+        asyncProcessorRegistry.put(taskClass, taskProcessorFactory);
+    }
+
+    public Map<Class, AsyncTaskProcessorFactory> getAsyncProcessorRegistry() {
+        return asyncProcessorRegistry;
+    }
+
+    /**
+     * Run the tasks of this type on their own engine, like virtual threads for IO bound tasks
+     */
+    public void registerExecutionEngine(Class taskClass, ExecutionEngine executionEngine) {
+        executionEngineRegistry.put(taskClass, executionEngine);
+    }
+
+    public Map<Class, ExecutionEngine> getExecutionEngineRegistry() {
+        return executionEngineRegistry;
+    }
+
+    public ExecutionEngine getExecutionEngine() {
+        return executionEngine;
+    }
+
+    public void setExecutionEngine(ExecutionEngine executionEngine) {
+        this.executionEngine = executionEngine;
+    }
+
     public int getMaxRunningTasks() {
         return maxRunningTasks;
     }
@@ -35,6 +108,90 @@ public class AgentConfig {
         this.maxRunningTasks = maxRunningTasks;
     }
 
+    public boolean isAdaptiveRunningTasks() {
+        return adaptiveRunningTasks;
+    }
+
+    public void setAdaptiveRunningTasks(boolean adaptiveRunningTasks) {
+        this.adaptiveRunningTasks = adaptiveRunningTasks;
+    }
+
+    public int getMinRunningTasks() {
+        return minRunningTasks;
+    }
+
+    public void setMinRunningTasks(int minRunningTasks) {
+        this.minRunningTasks = minRunningTasks;
+    }
+
+    /**
+     * Limit the running tasks of this type so that, when slow, they don't take the slots of the other types.
+     * Register an execution engine for the type to also run them on a separate pool
+     */
+    public void setMaxRunningTasks(Class taskClass, int maxRunningTasks) {
+        maxRunningTasksPerType.put(taskClass, maxRunningTasks);
+    }
+
+    public Map<Class, Integer> getMaxRunningTasksPerType() {
+        return maxRunningTasksPerType;
+    }
+
+    public int getMaxPrefetchedTasks() {
+        return maxPrefetchedTasks;
+    }
+
+    public void setMaxPrefetchedTasks(int maxPrefetchedTasks) {
+        this.maxPrefetchedTasks = maxPrefetchedTasks;
+    }
+
+    public int getCompletionBatchSize() {
+        return completionBatchSize;
+    }
+
+    public void setCompletionBatchSize(int completionBatchSize) {
+        this.completionBatchSize = completionBatchSize;
+    }
+
+    public long getCompletionBatchLingerMillis() {
+        return completionBatchLingerMillis;
+    }
+
+    public void setCompletionBatchLingerMillis(long completionBatchLingerMillis) {
+        this.completionBatchLingerMillis = completionBatchLingerMillis;
+    }
+
+    public int getMaxUnacknowledgedCompletionBatches() {
+        return maxUnacknowledgedCompletionBatches;
+    }
+
+    public void setMaxUnacknowledgedCompletionBatches(int maxUnacknowledgedCompletionBatches) {
+        this.maxUnacknowledgedCompletionBatches = maxUnacknowledgedCompletionBatches;
+    }
+
+    public long getLeaseRenewIntervalMillis() {
+        return leaseRenewIntervalMillis;
+    }
+
+    public void setLeaseRenewIntervalMillis(long leaseRenewIntervalMillis) {
+        this.leaseRenewIntervalMillis = leaseRenewIntervalMillis;
+    }
+
+    public long getMaxTaskProcessingMillis() {
+        return maxTaskProcessingMillis;
+    }
+
+    public void setMaxTaskProcessingMillis(long maxTaskProcessingMillis) {
+        this.maxTaskProcessingMillis = maxTaskProcessingMillis;
+    }
+
+    public int getResultStreamWriterThreads() {
+        return resultStreamWriterThreads;
+    }
+
+    public void setResultStreamWriterThreads(int resultStreamWriterThreads) {
+        this.resultStreamWriterThreads = resultStreamWriterThreads;
+    }
+
     public String getName() {
         return name;
     }
@@ -24,9 +24,13 @@ import com.hazelcast.core.HazelcastInstance;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.hztask.agent.event.task.TaskEventSubscriber;
+import ro.fortsoft.hztask.agent.finalizer.ResultStreamWriter;
 import ro.fortsoft.hztask.agent.listener.ClusterMembershipListener;
 import ro.fortsoft.hztask.common.HzKeysConstants;
 import ro.fortsoft.hztask.common.MemberType;
+import ro.fortsoft.hztask.common.TasksMapConfigUtil;
+import ro.fortsoft.hztask.common.stream.ResultStreamConfigUtil;
+import ro.fortsoft.hztask.serialization.SerializationConfigUtil;
 
 import java.util.concurrent.Executors;
 
@@ -48,6 +52,12 @@ public class ClusterAgent  {
         if(name != null) {
             hzConfig.getMemberAttributeConfig().setStringAttribute(HzKeysConstants.AGENT_NAME_PROPERTY, name);
         }
+        //the Master assigns us at most this many tasks at once, updated as the prefetch depth adapts
+        hzConfig.getMemberAttributeConfig().setIntAttribute(HzKeysConstants.AGENT_CAPACITY_PROPERTY,
+                config.getMaxRunningTasks() + config.getMaxPrefetchedTasks());
+        SerializationConfigUtil.addSerializationConfig(hzConfig);
+        TasksMapConfigUtil.addTasksMapIndexes(hzConfig);
+        ResultStreamConfigUtil.addResultStreamConfig(hzConfig);
 
         HazelcastInstance hzInstance = Hazelcast.newHazelcastInstance(hzConfig);
         hzInstance.getUserContext().put(HzKeysConstants.USER_CONTEXT_MEMBER_TYPE, MemberType.AGENT);
@@ -57,6 +67,8 @@ public class ClusterAgent  {
 
         clusterAgentService = new ClusterAgentService(config, eventBus);
         clusterAgentService.setHzInstance(hzInstance);
+        clusterAgentService.setResultStreamWriter(new ResultStreamWriter(clusterAgentService,
+                config.getResultStreamWriterThreads()));
 
         hzInstance.getUserContext().put(HzKeysConstants.USER_CONTEXT_CLUSTER_AGENT_SERVICE,
                 clusterAgentService);
@@ -7,10 +7,18 @@ import com.hazelcast.core.Member;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.hztask.agent.consumer.TaskConsumerThread;
+import ro.fortsoft.hztask.agent.consumer.TaskLeaseRenewer;
+import ro.fortsoft.hztask.agent.executor.ExecutionEngine;
+import ro.fortsoft.hztask.agent.executor.TaskExecutionService;
+import ro.fortsoft.hztask.agent.executor.ThreadPoolExecutionEngine;
+import ro.fortsoft.hztask.agent.finalizer.ResultStreamWriter;
+import ro.fortsoft.hztask.agent.processor.AsyncTaskProcessorFactory;
 import ro.fortsoft.hztask.agent.processor.TaskProcessorFactory;
 import ro.fortsoft.hztask.cluster.IClusterAgentService;
+import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.util.ClusterUtil;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -21,6 +29,12 @@ public class ClusterAgentService implements IClusterAgentService {
 
     private TaskConsumerThread taskConsumerThread;
 
+    private TaskExecutionService taskExecutionService;
+
+    private TaskLeaseRenewer taskLeaseRenewer;
+
+    private ResultStreamWriter resultStreamWriter;
+
     private HazelcastInstance hzInstance;
 
     private AgentConfig config;
@@ -70,12 +84,15 @@ public class ClusterAgentService implements IClusterAgentService {
         }
     }
 
+    /**
+     * The Agent keeps working on the tasks already assigned to it, a standby or restarted Master
+     * will announce itself and receive the outcome of the tasks finished in the meantime
+     */
     public void handleMasterLeft() {
         log.info("Master has left the cluster!!");
         lockMaster.writeLock().lock();
         try {
             master = null;
-            stopWork();
         } finally {
             lockMaster.writeLock().unlock();
         }
@@ -83,6 +100,9 @@ public class ClusterAgentService implements IClusterAgentService {
 
     private void stopWork() {
         taskConsumerThread.shutDown();
+        taskLeaseRenewer.shutdown();
+        taskExecutionService.shutdown();
+        resultStreamWriter.shutdown();
     }
 
     @Override
@@ -92,6 +112,22 @@ public class ClusterAgentService implements IClusterAgentService {
         }
     }
 
+    @Override
+    public void tasksAssigned(Collection<TaskKey> taskKeys) {
+        TaskConsumerThread consumerThread = taskConsumerThread;
+        if(consumerThread != null && consumerThread.isAlive()) {
+            consumerThread.tasksAssigned(taskKeys);
+        }
+    }
+
+    @Override
+    public void cancelTasks(Collection<TaskKey> taskKeys) {
+        TaskConsumerThread consumerThread = taskConsumerThread;
+        if(consumerThread != null) {
+            consumerThread.cancelTasks(taskKeys);
+        }
+    }
+
     @Override
     public void shutdown() {
         stopWork();
@@ -102,12 +138,28 @@ public class ClusterAgentService implements IClusterAgentService {
     @Override
     public void outputDebugStatistics() {
         taskConsumerThread.outputDebugStatistics();
+        taskExecutionService.outputDebugStatistics();
     }
 
     private void startTaskConsumer() {
+        if(taskExecutionService == null) {
+            ExecutionEngine defaultExecutionEngine = config.getExecutionEngine() != null ?
+                    config.getExecutionEngine() : new ThreadPoolExecutionEngine(config.getMaxRunningTasks());
+            taskExecutionService = new TaskExecutionService(eventBus, defaultExecutionEngine,
+                    config.getExecutionEngineRegistry());
+        }
         taskConsumerThread = new TaskConsumerThread(this);
+        if(taskLeaseRenewer != null) {
+            taskLeaseRenewer.shutdown();
+        }
+        taskLeaseRenewer = new TaskLeaseRenewer(this, taskConsumerThread);
 
         taskConsumerThread.start();
+        taskLeaseRenewer.start();
+    }
+
+    public TaskExecutionService getTaskExecutionService() {
+        return taskExecutionService;
     }
 
     public TaskConsumerThread getTaskConsumerThread() {
@@ -122,10 +174,22 @@ public class ClusterAgentService implements IClusterAgentService {
         this.hzInstance = hzInstance;
     }
 
+    public ResultStreamWriter getResultStreamWriter() {
+        return resultStreamWriter;
+    }
+
+    public void setResultStreamWriter(ResultStreamWriter resultStreamWriter) {
+        this.resultStreamWriter = resultStreamWriter;
+    }
+
     public Map<Class, TaskProcessorFactory> getProcessorRegistry() {
         return config.getProcessorRegistry();
     }
 
+    public Map<Class, AsyncTaskProcessorFactory> getAsyncProcessorRegistry() {
+        return config.getAsyncProcessorRegistry();
+    }
+
     public Member getMaster() {
         lockMaster.readLock().lock();
         try {
@@ -139,6 +203,31 @@ public class ClusterAgentService implements IClusterAgentService {
         return config.getMaxRunningTasks();
     }
 
+    /**
+     * A task was processed, called before its outcome is reported to the Master
+     */
+    public void taskProcessed(TaskKey taskKey, String taskType, long processingNanos, boolean failed) {
+        TaskConsumerThread consumerThread = taskConsumerThread;
+        if(consumerThread != null) {
+            consumerThread.taskProcessed(taskKey, taskType, processingNanos, failed);
+        }
+    }
+
+    /**
+     * @return the number of tasks the Master can assign to us at once
+     */
+    public int getAdvertisedCapacity() {
+        TaskConsumerThread consumerThread = taskConsumerThread;
+        if(consumerThread == null) {
+            return config.getMaxRunningTasks() + config.getMaxPrefetchedTasks();
+        }
+        return consumerThread.getCapacity();
+    }
+
+    public AgentConfig getConfig() {
+        return config;
+    }
+
     public EventBus getEventBus() {
         return eventBus;
     }
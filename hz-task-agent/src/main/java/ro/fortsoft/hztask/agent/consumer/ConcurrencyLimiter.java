@@ -0,0 +1,156 @@
+package ro.fortsoft.hztask.agent.consumer;
+
+import com.google.common.base.Objects;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Adapts the number of tasks the Agent runs at once from how long the tasks take to process.
+ *
+ * A gradient limit: the recent processing time is compared to the lowest one seen, which stands
+ * for the processing time without load. While they are close the limit grows by about its square root
+ * for every finished task, when the recent processing time is going up(the machine or the services
+ * the tasks use are saturated) the limit shrinks proportionally. The processing times are kept for
+ * each task type, so the fast types don't make the slow ones look overloaded. A rising failure rate
+ * also backs off the limit. The limit stays between the configured floor and ceiling, and it is
+ * fixed when they're equal.
+ *
+ * @author Serban Balamaci
+ */
+public class ConcurrencyLimiter {
+
+    /** weight of the latest sample in the recent processing time average **/
+    private static final double EWMA_ALPHA = 0.2;
+
+    /** the lowest processing time can go up at most by NO_LOAD_DRIFT every this many samples,
+     * so it follows the tasks if they became slower for good, but not the load **/
+    private static final int MIN_WINDOW_SAMPLES = 500;
+
+    private static final double NO_LOAD_DRIFT = 1.1;
+
+    /** recent processing time can be this many times the lowest one before the limit shrinks **/
+    private static final double TOLERANCE = 1.5;
+
+    /** the limit shrinks at most by half on a sample **/
+    private static final double MIN_GRADIENT = 0.5;
+
+    /** weight of the newly computed limit, so the limit does not swing on every sample **/
+    private static final double SMOOTHING = 0.2;
+
+    private static final double ERROR_EWMA_ALPHA = 0.1;
+
+    /** failure rate above which the limit backs off **/
+    private static final double MAX_ERROR_RATE = 0.1;
+
+    private static final double ERROR_BACKOFF = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private double limit;
+
+    private double errorRate = 0;
+
+    private final Map<String, ProcessingTime> processingTimes = new HashMap<>();
+
+    public ConcurrencyLimiter(int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, Math.min(minLimit, maxLimit));
+        this.maxLimit = Math.max(1, maxLimit);
+        this.limit = this.minLimit;
+    }
+
+    /**
+     * @return the number of tasks that can run at once
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @param taskType type of the processed task, not needed for failed tasks
+     * @param processingNanos how long the processing of the task took
+     * @param failed if the processing failed
+     * @param inFlight number of tasks running when this one finished
+     */
+    public synchronized void onSample(String taskType, long processingNanos, boolean failed, int inFlight) {
+        if(minLimit == maxLimit) {
+            return;
+        }
+        errorRate += ERROR_EWMA_ALPHA * ((failed ? 1 : 0) - errorRate);
+        if(failed) {
+            if(errorRate > MAX_ERROR_RATE) {
+                setLimit(limit * ERROR_BACKOFF);
+            }
+            return;
+        }
+
+        ProcessingTime processingTime = processingTimes.get(taskType);
+        if(processingTime == null) {
+            processingTime = new ProcessingTime();
+            processingTimes.put(taskType, processingTime);
+        }
+        processingTime.add(processingNanos);
+
+        double gradient = Math.max(MIN_GRADIENT, Math.min(1.0,
+                TOLERANCE * processingTime.getNoLoadNanos() / Math.max(processingTime.recentNanos, 1)));
+        //don't grow the limit when not using it
+        if(gradient == 1.0 && inFlight < limit / 2) {
+            return;
+        }
+        double newLimit = limit * gradient + Math.sqrt(limit);
+        setLimit(limit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private void setLimit(double newLimit) {
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this)
+                .add("limit", getLimit())
+                .add("minLimit", minLimit)
+                .add("maxLimit", maxLimit)
+                .add("errorRate", errorRate)
+                .add("processingTimes", processingTimes)
+                .toString();
+    }
+
+    /**
+     * Recent and lowest processing time of a task type
+     */
+    private static class ProcessingTime {
+
+        private double recentNanos = -1;
+
+        private double noLoadNanos = Double.MAX_VALUE;
+
+        private double windowMinNanos = Double.MAX_VALUE;
+        private int windowSamples;
+
+        private void add(long processingNanos) {
+            recentNanos = recentNanos < 0 ? processingNanos : recentNanos + EWMA_ALPHA * (processingNanos - recentNanos);
+
+            //the minimum of the average rather than of the samples, a lucky fast sample should not count
+            noLoadNanos = Math.min(noLoadNanos, recentNanos);
+            windowMinNanos = Math.min(windowMinNanos, recentNanos);
+            if(++ windowSamples >= MIN_WINDOW_SAMPLES) {
+                noLoadNanos = Math.min(noLoadNanos * NO_LOAD_DRIFT, windowMinNanos);
+                windowMinNanos = Double.MAX_VALUE;
+                windowSamples = 0;
+            }
+        }
+
+        private double getNoLoadNanos() {
+            return noLoadNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("recent %.1fms, no load %.1fms", recentNanos / 1_000_000,
+                    getNoLoadNanos() / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package ro.fortsoft.hztask.agent.consumer;
+
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Tasks already claimed by this Agent which wait for a free running slot. They are kept deserialized,
+ * so a slot that frees up is refilled right away without a call to the cluster.
+ *
+ * The number of tasks to keep adapts to the rate at which the running tasks finish: enough to keep the
+ * slots busy for the time it takes to get new tasks, which is the time the finished tasks wait to be
+ * reported to the Master plus a few round trips (report, the Master pushing new tasks, claiming them),
+ * measured as the latency of claiming tasks.
+ *
+ * @author Serban Balamaci
+ */
+public class PrefetchBuffer {
+
+    /** weight of the latest sample in the moving averages **/
+    private static final double EWMA_ALPHA = 0.2;
+
+    /** round trips needed to get new tasks after some finished **/
+    private static final int REFILL_ROUND_TRIPS = 3;
+
+    /** higher priority first, then the older tasks **/
+    private static final Comparator<Task> TASK_ORDER = new Comparator<Task>() {
+        @Override
+        public int compare(Task task, Task other) {
+            if(task.getPriority() != other.getPriority()) {
+                return Integer.compare(other.getPriority(), task.getPriority());
+            }
+            return Long.compare(task.getInternalCounter(), other.getInternalCounter());
+        }
+    };
+
+    private final PriorityQueue<Task> tasks = new PriorityQueue<>(16, TASK_ORDER);
+
+    private final int maxDepth;
+
+    private final long reportLingerMillis;
+
+    private volatile int targetDepth;
+
+    /** moving averages, negative until the first sample **/
+    private double completionIntervalMs = -1;
+    private double claimLatencyMs = -1;
+
+    private long lastCompletionNanos;
+
+    /**
+     * @param maxDepth maximum number of tasks to keep, 0 disables prefetching
+     * @param reportLingerMillis how long finished tasks can wait before being reported to the Master
+     */
+    public PrefetchBuffer(int maxDepth, long reportLingerMillis) {
+        this.maxDepth = maxDepth;
+        this.reportLingerMillis = reportLingerMillis;
+        this.targetDepth = maxDepth;
+    }
+
+    public synchronized void add(Collection<Task> claimedTasks) {
+        tasks.addAll(claimedTasks);
+    }
+
+    /**
+     * @return the next task of a type with a free running slot, null if there's none
+     */
+    public synchronized Task poll(TaskTypeQuotas taskTypeQuotas) {
+        List<Task> skipped = null;
+        Task task;
+        while ((task = tasks.poll()) != null && ! taskTypeQuotas.hasFreeSlot(task.getTaskType())) {
+            if(skipped == null) {
+                skipped = new ArrayList<>();
+            }
+            skipped.add(task);
+        }
+        if(skipped != null) {
+            tasks.addAll(skipped);
+        }
+        return task;
+    }
+
+    /**
+     * @return the number of tasks of the types with a free running slot
+     */
+    public synchronized int countStartable(TaskTypeQuotas taskTypeQuotas) {
+        int startable = 0;
+        for(Task task : tasks) {
+            if(taskTypeQuotas.hasFreeSlot(task.getTaskType())) {
+                startable++;
+            }
+        }
+        return startable;
+    }
+
+    /**
+     * @return task type -> number of tasks held
+     */
+    public synchronized Map<String, Integer> countByTaskType() {
+        Map<String, Integer> counts = new HashMap<>();
+        for(Task task : tasks) {
+            Integer count = counts.get(task.getTaskType());
+            counts.put(task.getTaskType(), count != null ? count + 1 : 1);
+        }
+        return counts;
+    }
+
+    /**
+     * Drop the tasks with these keys
+     * @return the number of tasks dropped
+     */
+    public synchronized int remove(Set<TaskKey> taskKeys) {
+        int removed = 0;
+        Iterator<Task> iterator = tasks.iterator();
+        while (iterator.hasNext()) {
+            if(taskKeys.contains(iterator.next().getTaskKey())) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    public synchronized int size() {
+        return tasks.size();
+    }
+
+    /**
+     * @return the number of tasks the buffer should hold for the current completion rate
+     */
+    public int getTargetDepth() {
+        return targetDepth;
+    }
+
+    /**
+     * @return the keys of the tasks held
+     */
+    public synchronized List<TaskKey> getTaskKeys() {
+        List<TaskKey> taskKeys = new ArrayList<>(tasks.size());
+        for(Task task : tasks) {
+            taskKeys.add(task.getTaskKey());
+        }
+        return taskKeys;
+    }
+
+    /**
+     * A running task finished and its slot was freed
+     */
+    public synchronized void recordCompletion() {
+        long now = System.nanoTime();
+        if(lastCompletionNanos != 0) {
+            completionIntervalMs = ewma(completionIntervalMs, (now - lastCompletionNanos) / 1_000_000d);
+            recomputeTargetDepth();
+        }
+        lastCompletionNanos = now;
+    }
+
+    /**
+     * @param latencyNanos how long it took to claim a batch of tasks
+     */
+    public synchronized void recordClaimLatency(long latencyNanos) {
+        claimLatencyMs = ewma(claimLatencyMs, latencyNanos / 1_000_000d);
+        recomputeTargetDepth();
+    }
+
+    private static double ewma(double average, double sample) {
+        return average < 0 ? sample : average + EWMA_ALPHA * (sample - average);
+    }
+
+    private void recomputeTargetDepth() {
+        if(maxDepth == 0 || completionIntervalMs < 0 || claimLatencyMs < 0) {
+            return;
+        }
+        double refillMs = reportLingerMillis + REFILL_ROUND_TRIPS * claimLatencyMs;
+        int depth = (int) Math.ceil(refillMs / Math.max(completionIntervalMs, 0.001));
+        targetDepth = Math.max(1, Math.min(maxDepth, depth));
+    }
+}
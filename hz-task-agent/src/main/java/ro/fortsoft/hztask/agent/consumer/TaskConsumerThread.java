@@ -1,110 +1,345 @@
 package ro.fortsoft.hztask.agent.consumer;
 
+import com.google.common.collect.Sets;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
 import com.hazelcast.core.IMap;
 import com.hazelcast.query.PagingPredicate;
 import com.hazelcast.query.Predicate;
-import com.hazelcast.query.SqlPredicate;
+import com.hazelcast.query.Predicates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.agent.AgentConfig;
 import ro.fortsoft.hztask.agent.ClusterAgentService;
 import ro.fortsoft.hztask.agent.executor.TaskExecutionService;
+import ro.fortsoft.hztask.agent.processor.AsyncTaskProcessorFactory;
 import ro.fortsoft.hztask.agent.processor.TaskProcessor;
 import ro.fortsoft.hztask.agent.processor.TaskProcessorFactory;
 import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.TasksMapConfigUtil;
 import ro.fortsoft.hztask.common.task.Task;
 import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.comparator.PriorityAndOldestTaskComparator;
+import ro.fortsoft.hztask.entryprocessor.ClaimTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.ProcessingStartedEntryProcessor;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  *
- * This is the main thread that scans for new Tasks on the distribution list
+ * This is the main thread that picks up the Tasks assigned to this agent. The Master pushes
+ * the keys of the tasks it assigns, the scan of the distribution list is only a slow fallback
+ * for catching any missed notifications.
+ * The pushed tasks are claimed in batches into the {@link PrefetchBuffer}, from where they are started
+ * as soon as a running slot frees up.
+ * Task types with their own running limit are claimed only while they have room, the keys of the others
+ * are put aside until a task of their type finishes.
+ * The keys of all the tasks held, from assigned to running, are reported for renewing their leases
+ * with the Master, except for the tasks running longer than the maximum processing time.
  *
  * @author Serban Balamaci
  */
 public class TaskConsumerThread extends Thread {
 
     /** BlockingQueue is Threadsafe **/
-    private BlockingQueue<TaskKey> runningTasksQueue;
+    private BlockingQueue<TaskKey> runningTasksQueue = new LinkedBlockingQueue<>();
+
+    /** when the processing of the running tasks started, until it ends **/
+    private final ConcurrentMap<TaskKey, Long> processingStartDates = new ConcurrentHashMap<>();
+
+    /** how many of the tasks can run at once **/
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /** keys of tasks assigned to this agent which are waiting to be started **/
+    private BlockingQueue<TaskKey> assignedTasksQueue = new LinkedBlockingQueue<>();
+
+    /** guards against queueing the same task key twice(pushed by the Master and also found by the scan) **/
+    private Set<TaskKey> assignedTaskKeys = Sets.newConcurrentHashSet();
 
     private ClusterAgentService clusterAgentService;
 
     private IMap<TaskKey, Task> tasksMap;
 
+    private final String localClusterId;
+
     private TaskExecutionService taskExecutionService;
 
+    private final PrefetchBuffer prefetchBuffer;
+
+    /** guarded by startLock **/
+    private final TaskTypeQuotas taskTypeQuotas;
+
+    /** task type -> keys of the assigned tasks which were not claimed because the type had no room **/
+    private final ConcurrentMap<String, Queue<TaskKey>> deferredTaskKeys = new ConcurrentHashMap<>();
+
+    private final Set<TaskKey> deferredTaskKeySet = Sets.newConcurrentHashSet();
+
+    /** number of deferred tasks included in the capacity last advertised through the member attribute **/
+    private int advertisedDeferredTasks = 0;
+
+    /** guards starting the prefetched tasks, which is done both by this thread and when a slot is freed **/
+    private final Object startLock = new Object();
+
+    /** signaled when there might be room for claiming more tasks **/
+    private final Object spaceLock = new Object();
+
     private volatile boolean shuttingDown = false;
 
+    /** how often to scan for the tasks assigned to us, in case a push was missed **/
+    private static final long FALLBACK_SCAN_INTERVAL_MS = 10000;
+
     private static final Logger log = LoggerFactory.getLogger(TaskConsumerThread.class);
 
     public TaskConsumerThread(ClusterAgentService clusterAgentService) {
         this.clusterAgentService = clusterAgentService;
-        runningTasksQueue = new LinkedBlockingQueue<>(clusterAgentService.getMaxRunningTasks());
+        AgentConfig config = clusterAgentService.getConfig();
+        concurrencyLimiter = config.isAdaptiveRunningTasks() ?
+                new ConcurrencyLimiter(config.getMinRunningTasks(), config.getMaxRunningTasks()) :
+                new ConcurrencyLimiter(config.getMaxRunningTasks(), config.getMaxRunningTasks());
         tasksMap = clusterAgentService.getHzInstance().getMap(HzKeysConstants.TASKS_MAP);
-        taskExecutionService = new TaskExecutionService(clusterAgentService.getEventBus());
+        localClusterId = clusterAgentService.getHzInstance().getCluster().getLocalMember().getUuid();
+        taskExecutionService = clusterAgentService.getTaskExecutionService();
+        prefetchBuffer = new PrefetchBuffer(clusterAgentService.getConfig().getMaxPrefetchedTasks(),
+                clusterAgentService.getConfig().getCompletionBatchLingerMillis());
+        taskTypeQuotas = new TaskTypeQuotas(clusterAgentService.getConfig().getMaxRunningTasksPerType());
     }
 
     @Override
     public void run() {
         log.info("Started TaskConsumer thread");
 
-        String localClusterId = clusterAgentService.getHzInstance().getCluster().getLocalMember().getUuid();
+        //tasks might have been assigned to us before we started
+        long nextScanDate = 0;
 
         while (true) {
             if(shuttingDown) {
                 break;
             }
             try {
-                boolean foundTask = false;
-
-                Set<TaskKey> eligibleTasks = retrieveTasksAssignedToInstanceId(localClusterId);
-
-//                log.debug("Returned " + eligibleTasks.size() + " remaining " + runningTasksQueue.remainingCapacity());
+                //on the clock and not only when idle, a steady stream of pushes must not hide a missed one
+                long now = System.currentTimeMillis();
+                if (now >= nextScanDate) {
+                    log.debug("Scanning for tasks assigned to us and missed...");
+                    nextScanDate = now + FALLBACK_SCAN_INTERVAL_MS;
+                    tasksAssigned(retrieveTasksAssignedToInstanceId(localClusterId));
+                }
 
-                for (TaskKey taskKey : eligibleTasks) {
-                    if (!runningTasksQueue.contains(taskKey)) {
-                        Task task = tasksMap.get(taskKey);
-                        if(task != null) { //The query ran before the task was removed from the map
-                            foundTask = true;
-                            startProcessingTask(taskKey, task);
-                        }
-                    }
+                int space = getClaimSpace();
+                if (space <= 0) {
+                    waitForClaimSpace();
+                    continue;
                 }
-                if (!foundTask) {
-                    log.debug("No Tasks found to process, sleeping a while...");
-                    Thread.sleep(2000);
+
+                TaskKey taskKey = assignedTasksQueue.poll(Math.max(1, nextScanDate - System.currentTimeMillis()),
+                        TimeUnit.MILLISECONDS);
+                if (taskKey == null) {
+                    continue;
                 }
+                List<TaskKey> taskKeys = new ArrayList<>(space);
+                taskKeys.add(taskKey);
+                assignedTasksQueue.drainTo(taskKeys, space - 1);
+                assignedTaskKeys.removeAll(taskKeys);
+
+                claimTasks(taskKeys, localClusterId);
+                startPrefetchedTasks();
+                advertiseDeferredTasks();
             } catch (InterruptedException e) {
                 log.info("TaskConsumer Thread received an interrupt signal, stopping");
                 break;
-            } catch (Throwable t) {
-                log.info("TaskConsumer Thread encountered unexpected exception", t);
+            } catch (HazelcastInstanceNotActiveException e) {
+                log.info("TaskConsumer Thread stopping, the cluster connection was shut down");
                 break;
+            } catch (Throwable t) {
+                //ex. a task that can't be deserialized, the tasks claimed in the batch are taken back
+                //by the Master when their lease expires
+                log.error("TaskConsumer Thread encountered unexpected exception", t);
             }
         }
         log.info("TaskConsumer Thread terminated");
     }
 
     private Set<TaskKey> retrieveTasksAssignedToInstanceId(String localClusterId) {
-        Predicate selectPredicate = new SqlPredicate("clusterInstanceUuid=" + localClusterId);
+        Predicate selectPredicate = Predicates.and(
+                Predicates.equal(TasksMapConfigUtil.CLUSTER_INSTANCE_UUID_ATTRIBUTE, localClusterId),
+                Predicates.equal(TasksMapConfigUtil.STARTED_DATE_ATTRIBUTE, 0L));
 
         PagingPredicate pagingPredicate = new PagingPredicate(selectPredicate,
-                new PriorityAndOldestTaskComparator(), clusterAgentService.getMaxRunningTasks() + 1);
+                new PriorityAndOldestTaskComparator(), clusterAgentService.getAdvertisedCapacity() + 1);
+
+        //the entries are fetched, the members' pages are merged in priority order by comparing the values
+        Set<TaskKey> taskKeys = new HashSet<>();
+        for(Map.Entry<TaskKey, Task> entry : tasksMap.entrySet(pagingPredicate)) {
+            taskKeys.add(entry.getKey());
+        }
+        return taskKeys;
+    }
+
+    /**
+     * @return how many more tasks can be claimed, the free running slots plus the room in the prefetch buffer.
+     * Claimed tasks waiting for a slot of their type don't take room, so they can't hold back the other types
+     */
+    private int getClaimSpace() {
+        synchronized (startLock) {
+            return getFreeRunningSlots() + prefetchBuffer.getTargetDepth()
+                    - prefetchBuffer.countStartable(taskTypeQuotas);
+        }
+    }
+
+    private void waitForClaimSpace() throws InterruptedException {
+        synchronized (spaceLock) {
+            if(getClaimSpace() <= 0) {
+                spaceLock.wait(FALLBACK_SCAN_INTERVAL_MS);
+            }
+        }
+    }
+
+    /**
+     * Claims the tasks in one call into the prefetch buffer, the claim failing for the tasks that finished,
+     * were reassigned or were stolen by the Master for another Agent since they were pushed to us
+     */
+    private void claimTasks(List<TaskKey> taskKeys, String localClusterId) {
+        Set<String> fullTaskTypes;
+        synchronized (startLock) {
+            fullTaskTypes = taskTypeQuotas.getFullTaskTypes(prefetchBuffer.countByTaskType());
+        }
+
+        long start = System.nanoTime();
+        Map<TaskKey, Object> claimed = tasksMap.executeOnKeys(new HashSet<>(taskKeys),
+                new ClaimTaskEntryProcessor(localClusterId, fullTaskTypes));
+        prefetchBuffer.recordClaimLatency(System.nanoTime() - start);
+
+        List<Task> claimedTasks = new ArrayList<>(claimed.size());
+        int deferred = 0;
+        for(Map.Entry<TaskKey, Object> entry : claimed.entrySet()) {
+            Object result = entry.getValue();
+            if(result instanceof Task) {
+                claimedTasks.add((Task) result);
+            } else if(result instanceof String) {
+                deferTask(entry.getKey(), (String) result);
+                deferred++;
+            }
+        }
+        if(claimedTasks.size() + deferred < taskKeys.size()) {
+            log.debug("{} of {} tasks could not be claimed", taskKeys.size() - claimedTasks.size() - deferred,
+                    taskKeys.size());
+        }
+        prefetchBuffer.add(claimedTasks);
+    }
+
+    private void deferTask(TaskKey taskKey, String taskType) {
+        if(! deferredTaskKeySet.add(taskKey)) {
+            return;
+        }
+        Queue<TaskKey> taskKeys = deferredTaskKeys.get(taskType);
+        if(taskKeys == null) {
+            deferredTaskKeys.putIfAbsent(taskType, new ConcurrentLinkedQueue<TaskKey>());
+            taskKeys = deferredTaskKeys.get(taskType);
+        }
+        taskKeys.offer(taskKey);
+    }
+
+    /**
+     * Queue again for claiming as many of the put aside tasks of the type as there are free slots
+     */
+    private void releaseDeferredTasks(String taskType, int freeSlots) {
+        Queue<TaskKey> taskKeys = deferredTaskKeys.get(taskType);
+        if(taskKeys == null) {
+            return;
+        }
+        List<TaskKey> released = new ArrayList<>();
+        TaskKey taskKey;
+        while (released.size() < freeSlots && (taskKey = taskKeys.poll()) != null) {
+            deferredTaskKeySet.remove(taskKey);
+            released.add(taskKey);
+        }
+        tasksAssigned(released);
+    }
+
+    /**
+     * The deferred tasks still take credits on the Master, so we raise our capacity by their number,
+     * otherwise a type without room could keep the Master from assigning us tasks of the other types.
+     * The completion reports also carry the capacity, but there might be none while a type hangs
+     */
+    private void advertiseDeferredTasks() {
+        int deferredTasks = deferredTaskKeySet.size();
+        if(deferredTasks != advertisedDeferredTasks) {
+            advertisedDeferredTasks = deferredTasks;
+            clusterAgentService.getHzInstance().getCluster().getLocalMember()
+                    .setIntAttribute(HzKeysConstants.AGENT_CAPACITY_PROPERTY, getCapacity());
+        }
+    }
+
+    /**
+     * Start prefetched tasks while there are free running slots
+     */
+    private void startPrefetchedTasks() {
+        synchronized (startLock) {
+            while (getFreeRunningSlots() > 0) {
+                Task task = prefetchBuffer.poll(taskTypeQuotas);
+                if(task == null) {
+                    break;
+                }
+                startProcessingTask(task);
+            }
+        }
+    }
 
-        return tasksMap.keySet(pagingPredicate);
+    private int getFreeRunningSlots() {
+        return concurrencyLimiter.getLimit() - runningTasksQueue.size();
     }
 
-    private void startProcessingTask(TaskKey taskKey,Task task) throws InterruptedException {
+    private void startProcessingTask(Task task) {
         log.info("Starting processing of task {}", task);
-        runningTasksQueue.put(taskKey);
+        TaskKey taskKey = task.getTaskKey();
+        runningTasksQueue.offer(taskKey);
+        processingStartDates.put(taskKey, System.currentTimeMillis());
+        taskTypeQuotas.taskStarted(taskKey, task.getTaskType());
+        //not waited for, so the start doesn't pay a round trip. A run lost before it gets recorded is not
+        //counted against the task
+        tasksMap.submitToKey(taskKey, new ProcessingStartedEntryProcessor(localClusterId));
+
+        try {
+            AsyncTaskProcessorFactory asyncFactory = clusterAgentService.getAsyncProcessorRegistry()
+                    .get(task.getClass());
+            if(asyncFactory != null) {
+                taskExecutionService.executeAsyncTask(asyncFactory.getObject(), taskKey, task);
+                return;
+            }
 
-        TaskProcessorFactory factory = clusterAgentService.getProcessorRegistry().get(task.getClass());
-        TaskProcessor taskProcessor = factory.getObject();
+            TaskProcessorFactory factory = clusterAgentService.getProcessorRegistry().get(task.getClass());
+            if(factory == null) {
+                throw new IllegalStateException("No TaskProcessor registered for " + task.getClass().getName());
+            }
+            TaskProcessor taskProcessor = factory.getObject();
+
+            taskExecutionService.executeTask(taskProcessor, taskKey, task);
+        } catch (Throwable t) { //reported as failed, so a bad task doesn't stop the other tasks from starting
+            log.error("Could not start processing of task {}", task, t);
+            taskExecutionService.startFailed(taskKey, task, t);
+        }
+    }
 
-        taskExecutionService.executeTask(taskProcessor, taskKey, task);
+    /**
+     * Queue for processing tasks that were assigned to this agent
+     * @param taskKeys keys of the assigned tasks
+     */
+    public void tasksAssigned(Collection<TaskKey> taskKeys) {
+        for (TaskKey taskKey : taskKeys) {
+            if (! deferredTaskKeySet.contains(taskKey) && assignedTaskKeys.add(taskKey)) {
+                assignedTasksQueue.offer(taskKey);
+            }
+        }
     }
 
     /**
@@ -112,10 +347,113 @@ public class TaskConsumerThread extends Thread {
      * @param taskKey taskKey
      */
     public void removeFromRunningTasksQueue(TaskKey taskKey) {
-        runningTasksQueue.remove(taskKey);
+        String taskType;
+        int freeSlots;
+        synchronized (startLock) {
+            if(runningTasksQueue.remove(taskKey)) {
+                prefetchBuffer.recordCompletion();
+            }
+            processingStartDates.remove(taskKey);
+            taskType = taskTypeQuotas.taskFinished(taskKey);
+
+            //refill the slot right away from the prefetched tasks
+            startPrefetchedTasks();
+            freeSlots = taskType != null ? taskTypeQuotas.getFreeSlots(taskType) : 0;
+        }
+        if(freeSlots > 0) {
+            releaseDeferredTasks(taskType, freeSlots);
+        }
+
+        synchronized (spaceLock) {
+            spaceLock.notifyAll();
+        }
+    }
+
+    /**
+     * Adapt the number of running tasks to the processing time of the task
+     */
+    public void taskProcessed(TaskKey taskKey, String taskType, long processingNanos, boolean failed) {
+        processingStartDates.remove(taskKey);
+        concurrencyLimiter.onSample(taskType, processingNanos, failed, runningTasksQueue.size());
+    }
+
+    /**
+     * @return the number of tasks this agent can take at once, the running slots plus the current
+     * prefetch depth plus the tasks put aside until their type has room
+     */
+    public int getCapacity() {
+        return concurrencyLimiter.getLimit() + prefetchBuffer.getTargetDepth()
+                + deferredTaskKeySet.size();
+    }
+
+    /**
+     * @return the keys of the tasks claimed by this agent and not yet started
+     */
+    public List<TaskKey> getPrefetchedTaskKeys() {
+        return prefetchBuffer.getTaskKeys();
+    }
+
+    /**
+     * @return the keys of the tasks this agent holds, assigned, put aside, prefetched or running. The tasks
+     * running longer than the maximum processing time are left out, so the Master takes them back
+     */
+    public Set<TaskKey> getHeldTaskKeys() {
+        Set<TaskKey> heldTaskKeys = new HashSet<>(assignedTaskKeys);
+        heldTaskKeys.addAll(deferredTaskKeySet);
+        heldTaskKeys.addAll(prefetchBuffer.getTaskKeys());
+
+        long maxProcessingMillis = clusterAgentService.getConfig().getMaxTaskProcessingMillis();
+        long now = System.currentTimeMillis();
+        for(TaskKey taskKey : runningTasksQueue) {
+            Long startDate = processingStartDates.get(taskKey);
+            if(maxProcessingMillis > 0 && startDate != null && now - startDate > maxProcessingMillis) {
+                log.warn("Task {} is running for {}ms, not renewing its lease", taskKey, now - startDate);
+                continue;
+            }
+            heldTaskKeys.add(taskKey);
+        }
+        return heldTaskKeys;
+    }
+
+    /**
+     * Drop the tasks the Master took back, cancelling the running ones
+     * @param taskKeys keys of the tasks
+     */
+    public void cancelTasks(Collection<TaskKey> taskKeys) {
+        Set<TaskKey> cancelledTaskKeys = new HashSet<>(taskKeys);
+
+        assignedTasksQueue.removeAll(cancelledTaskKeys);
+        assignedTaskKeys.removeAll(cancelledTaskKeys);
+        for(Queue<TaskKey> deferred : deferredTaskKeys.values()) {
+            deferred.removeAll(cancelledTaskKeys);
+        }
+        deferredTaskKeySet.removeAll(cancelledTaskKeys);
+        int prefetched = prefetchBuffer.remove(cancelledTaskKeys);
+
+        int running = 0;
+        for(TaskKey taskKey : cancelledTaskKeys) {
+            if(runningTasksQueue.contains(taskKey) && taskExecutionService.cancel(taskKey)) {
+                running++;
+            }
+        }
+        log.info("Master took back {} tasks, cancelled {} running and {} prefetched", cancelledTaskKeys.size(),
+                running, prefetched);
+
+        synchronized (spaceLock) {
+            spaceLock.notifyAll();
+        }
     }
 
     public void outputDebugStatistics() {
+        log.info("Running {} tasks, prefetched {} tasks(target {}): {}", runningTasksQueue.size(),
+                prefetchBuffer.size(), prefetchBuffer.getTargetDepth(), prefetchBuffer.getTaskKeys());
+        log.info("Running tasks limit {}", concurrencyLimiter);
+        synchronized (startLock) {
+            log.info("Task type quotas {}", taskTypeQuotas);
+        }
+        for(Map.Entry<String, Queue<TaskKey>> entry : deferredTaskKeys.entrySet()) {
+            log.info("Waiting for room {} tasks of type {}", entry.getValue().size(), entry.getKey());
+        }
     }
 
     public void shutDown() {
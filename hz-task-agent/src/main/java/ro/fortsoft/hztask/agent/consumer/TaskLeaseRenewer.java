@@ -0,0 +1,75 @@
+package ro.fortsoft.hztask.agent.consumer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.Member;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.agent.ClusterAgentService;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.op.RenewTaskLeasesOp;
+import ro.fortsoft.hztask.util.ClusterUtil;
+
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically renews with the Master, in a single message, the leases on all the tasks the Agent holds.
+ * A task left out is taken back by the Master when its lease runs out
+ *
+ * @author Serban Balamaci
+ */
+public class TaskLeaseRenewer {
+
+    private ClusterAgentService clusterAgentService;
+
+    private TaskConsumerThread taskConsumerThread;
+
+    private ScheduledExecutorService renewExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Task lease renewer").setDaemon(true).build());
+
+    private static final Logger log = LoggerFactory.getLogger(TaskLeaseRenewer.class);
+
+    public TaskLeaseRenewer(ClusterAgentService clusterAgentService, TaskConsumerThread taskConsumerThread) {
+        this.clusterAgentService = clusterAgentService;
+        this.taskConsumerThread = taskConsumerThread;
+    }
+
+    public void start() {
+        long intervalMillis = clusterAgentService.getConfig().getLeaseRenewIntervalMillis();
+        renewExecutor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    renewLeases();
+                } catch (Exception e) {
+                    log.error("Error renewing the task leases", e);
+                }
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void renewLeases() {
+        Member master = clusterAgentService.getMaster();
+        if(master == null) {
+            return; //a new Master seeds the leases of the tasks it finds assigned when taking over
+        }
+
+        Set<TaskKey> heldTaskKeys = taskConsumerThread.getHeldTaskKeys();
+        if(heldTaskKeys.isEmpty()) {
+            return;
+        }
+
+        HazelcastInstance hzInstance = clusterAgentService.getHzInstance();
+        log.debug("Renewing leases on {} tasks", heldTaskKeys.size());
+        hzInstance.getExecutorService(HzKeysConstants.EXECUTOR_SERVICE_COMS).submitToMember(
+                new RenewTaskLeasesOp(heldTaskKeys, ClusterUtil.getLocalMemberUuid(hzInstance)), master);
+    }
+
+    public void shutdown() {
+        renewExecutor.shutdownNow();
+    }
+}
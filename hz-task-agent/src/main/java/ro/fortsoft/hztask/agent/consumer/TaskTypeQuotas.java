@@ -0,0 +1,93 @@
+package ro.fortsoft.hztask.agent.consumer;
+
+import com.google.common.base.Objects;
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps count of the running tasks of each type against the per type limits, so a slow task type
+ * can't take all the running slots of the Agent. Types without a limit are bounded only by
+ * the Agent wide maximum running tasks.
+ *
+ * Not threadsafe, guarded by the consumer
+ *
+ * @author Serban Balamaci
+ */
+public class TaskTypeQuotas {
+
+    /** task type -> maximum running tasks **/
+    private final Map<String, Integer> maxRunningTasks = new HashMap<>();
+
+    private final Map<String, Integer> runningTasks = new HashMap<>();
+
+    private final Map<TaskKey, String> runningTaskTypes = new HashMap<>();
+
+    public TaskTypeQuotas(Map<Class, Integer> maxRunningTasksPerType) {
+        for(Map.Entry<Class, Integer> entry : maxRunningTasksPerType.entrySet()) {
+            maxRunningTasks.put(entry.getKey().getName(), entry.getValue());
+        }
+    }
+
+    public boolean hasFreeSlot(String taskType) {
+        Integer max = maxRunningTasks.get(taskType);
+        return max == null || getRunningTasks(taskType) < max;
+    }
+
+    public void taskStarted(TaskKey taskKey, String taskType) {
+        runningTaskTypes.put(taskKey, taskType);
+        runningTasks.put(taskType, getRunningTasks(taskType) + 1);
+    }
+
+    /**
+     * @return the type of the finished task, null if it was not running
+     */
+    public String taskFinished(TaskKey taskKey) {
+        String taskType = runningTaskTypes.remove(taskKey);
+        if(taskType != null) {
+            runningTasks.put(taskType, getRunningTasks(taskType) - 1);
+        }
+        return taskType;
+    }
+
+    /**
+     * @param claimedTasks task type -> number of tasks claimed and not yet started
+     * @return the limited task types which already have enough tasks running or claimed
+     */
+    public Set<String> getFullTaskTypes(Map<String, Integer> claimedTasks) {
+        Set<String> fullTaskTypes = new HashSet<>();
+        for(Map.Entry<String, Integer> entry : maxRunningTasks.entrySet()) {
+            String taskType = entry.getKey();
+            Integer claimed = claimedTasks.get(taskType);
+            int taken = getRunningTasks(taskType) + (claimed != null ? claimed : 0);
+            if(taken >= entry.getValue()) {
+                fullTaskTypes.add(taskType);
+            }
+        }
+        return fullTaskTypes;
+    }
+
+    /**
+     * @return how many more tasks of the type can be started, Integer.MAX_VALUE for the types without a limit
+     */
+    public int getFreeSlots(String taskType) {
+        Integer max = maxRunningTasks.get(taskType);
+        return max == null ? Integer.MAX_VALUE : Math.max(0, max - getRunningTasks(taskType));
+    }
+
+    public int getRunningTasks(String taskType) {
+        Integer running = runningTasks.get(taskType);
+        return running != null ? running : 0;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("runningTasks", runningTasks)
+                .add("maxRunningTasks", maxRunningTasks)
+                .toString();
+    }
+}
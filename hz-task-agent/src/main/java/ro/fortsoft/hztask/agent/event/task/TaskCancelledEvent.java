@@ -0,0 +1,21 @@
+package ro.fortsoft.hztask.agent.event.task;
+
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+/**
+ * A running task was cancelled because the Master took it back, its outcome is not reported
+ *
+ * @author Serban Balamaci
+ */
+public class TaskCancelledEvent {
+
+    private final TaskKey taskKey;
+
+    public TaskCancelledEvent(TaskKey taskKey) {
+        this.taskKey = taskKey;
+    }
+
+    public TaskKey getTaskKey() {
+        return taskKey;
+    }
+}
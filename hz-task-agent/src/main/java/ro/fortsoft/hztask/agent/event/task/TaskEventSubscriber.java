@@ -5,26 +5,43 @@ import ro.fortsoft.hztask.agent.ClusterAgentService;
 import ro.fortsoft.hztask.agent.finalizer.TaskFinishedHandler;
 
 /**
- * Subscriber that reacts to the {@link TaskFinishedEvent} and {@link TaskFailedEvent} events
+ * Subscriber that reacts to the {@link TaskFinishedEvent}, {@link TaskFailedEvent} and
+ * {@link TaskCancelledEvent} events
  *
  * @author Serban Balamaci
  */
 public class TaskEventSubscriber {
 
+    private ClusterAgentService clusterAgentService;
+
     private TaskFinishedHandler taskFinishedHandler;
 
     public TaskEventSubscriber(ClusterAgentService clusterAgentService) {
+        this.clusterAgentService = clusterAgentService;
         this.taskFinishedHandler = new TaskFinishedHandler(clusterAgentService);
     }
 
     @Subscribe
     public void onTaskFinishedEvent(TaskFinishedEvent ev) {
-        taskFinishedHandler.success(ev.getTaskKey(), ev.getResult());
+        clusterAgentService.taskProcessed(ev.getTaskKey(), ev.getTask().getTaskType(), ev.getProcessingNanos(),
+                false);
+        taskFinishedHandler.success(ev.getTaskKey(), ev.getResult(), ev.getProcessingStartDate(),
+                ev.getProcessingNanos());
     }
 
     @Subscribe
     public void onTaskFailedEvent(TaskFailedEvent ev) {
-        taskFinishedHandler.failure(ev.getTaskKey(), ev.getException());
+        clusterAgentService.taskProcessed(ev.getTaskKey(), null, ev.getProcessingNanos(), true);
+        taskFinishedHandler.failure(ev.getTaskKey(), ev.getException(), ev.getProcessingStartDate(),
+                ev.getProcessingNanos());
+    }
+
+    /**
+     * The Master took the task back, so there's nothing to report, just free its slot
+     */
+    @Subscribe
+    public void onTaskCancelledEvent(TaskCancelledEvent ev) {
+        clusterAgentService.getTaskConsumerThread().removeFromRunningTasksQueue(ev.getTaskKey());
     }
 
 }
@@ -11,14 +11,21 @@ public class TaskFailedEvent {
 
     private final Throwable exception;
 
+    private final long processingStartDate;
+    private final long processingNanos;
+
     /**
      * Constr.
      * @param taskKey taskKey
      * @param exception exception that was encountered when processing the task
+     * @param processingStartDate when the processing started, in millis since epoch
+     * @param processingNanos how long the processing took
      */
-    public TaskFailedEvent(TaskKey taskKey, Throwable exception) {
+    public TaskFailedEvent(TaskKey taskKey, Throwable exception, long processingStartDate, long processingNanos) {
         this.taskKey = taskKey;
         this.exception = exception;
+        this.processingStartDate = processingStartDate;
+        this.processingNanos = processingNanos;
     }
 
     public TaskKey getTaskKey() {
@@ -28,4 +35,12 @@ public class TaskFailedEvent {
     public Throwable getException() {
         return exception;
     }
+
+    public long getProcessingStartDate() {
+        return processingStartDate;
+    }
+
+    public long getProcessingNanos() {
+        return processingNanos;
+    }
 }
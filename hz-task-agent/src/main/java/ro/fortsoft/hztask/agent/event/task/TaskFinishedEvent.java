@@ -15,16 +15,24 @@ public class TaskFinishedEvent<T extends Serializable> {
 
     private final T result;
 
+    private final long processingStartDate;
+    private final long processingNanos;
+
     /**
      * Constr.
      * @param taskKey taskKey
      * @param task Task
      * @param result after the task was processed
+     * @param processingStartDate when the processing started, in millis since epoch
+     * @param processingNanos how long the processing took
      */
-    public TaskFinishedEvent(TaskKey taskKey, Task task, T result) {
+    public TaskFinishedEvent(TaskKey taskKey, Task task, T result, long processingStartDate,
+                             long processingNanos) {
         this.taskKey = taskKey;
         this.task = task;
         this.result = result;
+        this.processingStartDate = processingStartDate;
+        this.processingNanos = processingNanos;
     }
 
     public TaskKey getTaskKey() {
@@ -38,4 +46,12 @@ public class TaskFinishedEvent<T extends Serializable> {
     public T getResult() {
         return result;
     }
+
+    public long getProcessingStartDate() {
+        return processingStartDate;
+    }
+
+    public long getProcessingNanos() {
+        return processingNanos;
+    }
 }
@@ -0,0 +1,75 @@
+package ro.fortsoft.hztask.agent.executor;
+
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base for the engines backed by an {@link ExecutorService}, keeps count of the waiting and running tasks
+ * the same way whatever the kind of pool
+ *
+ * @author Serban Balamaci
+ */
+public abstract class AbstractExecutionEngine implements ExecutionEngine {
+
+    private final ListeningExecutorService executorService;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    protected AbstractExecutionEngine(ExecutorService executorService) {
+        this.executorService = MoreExecutors.listeningDecorator(executorService);
+    }
+
+    @Override
+    public ListenableFuture<Object> submit(final Callable<Object> processingCall) {
+        queued.incrementAndGet();
+        try {
+            return executorService.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    queued.decrementAndGet();
+                    active.incrementAndGet();
+                    try {
+                        return processingCall.call();
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    @Override
+    public int getActiveThreads() {
+        return active.get();
+    }
+
+    @Override
+    public void shutdown() {
+        executorService.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("queueDepth", getQueueDepth())
+                .add("activeThreads", getActiveThreads())
+                .toString();
+    }
+}
@@ -0,0 +1,29 @@
+package ro.fortsoft.hztask.agent.executor;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Runs the task processing on the Agent. An engine can be set for the whole Agent and
+ * for individual task types through the {@link ro.fortsoft.hztask.agent.AgentConfig}
+ *
+ * @author Serban Balamaci
+ */
+public interface ExecutionEngine {
+
+    ListenableFuture<Object> submit(Callable<Object> processingCall);
+
+    /**
+     * @return number of submitted tasks waiting for a thread
+     */
+    int getQueueDepth();
+
+    /**
+     * @return number of tasks being processed
+     */
+    int getActiveThreads();
+
+    void shutdown();
+
+}
@@ -0,0 +1,23 @@
+package ro.fortsoft.hztask.agent.executor;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Work stealing pool, fits CPU bound tasks which may split their work into subtasks
+ *
+ * @author Serban Balamaci
+ */
+public class ForkJoinExecutionEngine extends AbstractExecutionEngine {
+
+    /**
+     * Pool with one thread per available core
+     */
+    public ForkJoinExecutionEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ForkJoinExecutionEngine(int parallelism) {
+        //asyncMode, the submitted tasks are taken in FIFO order
+        super(new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+    }
+}
@@ -1,22 +1,32 @@
 package ro.fortsoft.hztask.agent.executor;
 
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListeningExecutorService;
-import com.google.common.util.concurrent.MoreExecutors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.agent.event.task.TaskCancelledEvent;
 import ro.fortsoft.hztask.agent.event.task.TaskFailedEvent;
 import ro.fortsoft.hztask.agent.event.task.TaskFinishedEvent;
+import ro.fortsoft.hztask.agent.processor.AsyncTaskProcessor;
 import ro.fortsoft.hztask.agent.processor.TaskProcessor;
 import ro.fortsoft.hztask.common.task.Task;
 import ro.fortsoft.hztask.common.task.TaskKey;
 
 import java.io.Serializable;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 
 /**
  * Service that performs the task execution on the agents
@@ -30,39 +40,191 @@ public class TaskExecutionService {
     private EventBus eventBus;
 
     /**
-     * Pool for executing the tasks
+     * Engine for executing the tasks which don't have one registered for their type
      */
-    private ListeningExecutorService taskExecutorService = MoreExecutors.
-            listeningDecorator(Executors.newCachedThreadPool());
+    private ExecutionEngine defaultExecutionEngine;
 
-    public TaskExecutionService(EventBus eventBus) {
+    private Map<Class, ExecutionEngine> executionEngineRegistry;
+
+    /** futures of the tasks being processed, for cancelling them **/
+    private final ConcurrentMap<TaskKey, Future<?>> runningFutures = new ConcurrentHashMap<>();
+
+    /** tasks cancelled and not yet ended, their outcome is not reported **/
+    private final Set<TaskKey> cancelledTaskKeys = Sets.newConcurrentHashSet();
+
+    public TaskExecutionService(EventBus eventBus, ExecutionEngine defaultExecutionEngine,
+                                Map<Class, ExecutionEngine> executionEngineRegistry) {
         this.eventBus = eventBus;
+        this.defaultExecutionEngine = defaultExecutionEngine;
+        this.executionEngineRegistry = new HashMap<>(executionEngineRegistry);
     }
 
     public void executeTask(final TaskProcessor taskProcessor, final TaskKey taskKey, final Task task) {
 
-        ListenableFuture resultFuture = taskExecutorService.submit(new Callable() {
-            @Override
-            public Object call() throws Exception {
-                return taskProcessor.process(task);
-            }
-        });
+        final TimedProcessingCall processingCall = new TimedProcessingCall(taskProcessor, task);
+        ListenableFuture resultFuture = getExecutionEngine(task.getClass()).submit(processingCall);
+        runningFutures.put(taskKey, resultFuture);
 
         Futures.addCallback(resultFuture, new FutureCallback() {
             @Override
             public void onSuccess(Object result) {
-                log.info("SUCCESS FINISH processing for task {}", task);
-                eventBus.post(new TaskFinishedEvent(taskKey, task, (Serializable) result));
+                taskFinished(taskKey, task, result, processingCall.startDate, processingCall.processingNanos);
             }
 
             @Override
             public void onFailure(Throwable throwable) {
-                log.info("FAIL FINISH processing for task {}", task.getId());
-                eventBus.post(new TaskFailedEvent(taskKey, throwable));
+                taskFailed(taskKey, task, throwable, processingCall.startDate, processingCall.processingNanos);
             }
         });
     }
 
+    /**
+     * The engine thread is used only for starting the processing, the outcome is reported
+     * when the returned stage completes
+     */
+    public void executeAsyncTask(final AsyncTaskProcessor taskProcessor, final TaskKey taskKey, final Task task) {
+        getExecutionEngine(task.getClass()).submit(new Callable<Object>() {
+            @Override
+            public Object call() {
+                final long startDate = System.currentTimeMillis();
+                final long startNanos = System.nanoTime();
+
+                CompletionStage<?> resultStage;
+                try {
+                    resultStage = taskProcessor.process(task);
+                    if(resultStage == null) {
+                        throw new IllegalStateException("AsyncTaskProcessor returned no CompletionStage");
+                    }
+                } catch (Throwable throwable) {
+                    taskFailed(taskKey, task, throwable, startDate, System.nanoTime() - startNanos);
+                    return null;
+                }
+
+                try {
+                    runningFutures.put(taskKey, resultStage.toCompletableFuture());
+                } catch (UnsupportedOperationException e) {
+                    log.debug("CompletionStage of task {} cannot be cancelled", taskKey);
+                }
+
+                resultStage.whenComplete(new BiConsumer<Object, Throwable>() {
+                    @Override
+                    public void accept(Object result, Throwable throwable) {
+                        long processingNanos = System.nanoTime() - startNanos;
+                        if(throwable == null) {
+                            taskFinished(taskKey, task, result, startDate, processingNanos);
+                        } else {
+                            if(throwable instanceof CompletionException && throwable.getCause() != null) {
+                                throwable = throwable.getCause();
+                            }
+                            taskFailed(taskKey, task, throwable, startDate, processingNanos);
+                        }
+                    }
+                });
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Cancel the processing of the task, interrupting it if it's running. A task cancelled in time
+     * posts a {@link TaskCancelledEvent} instead of its outcome
+     * @return false if the task was not being processed or it already ended
+     */
+    public boolean cancel(TaskKey taskKey) {
+        Future<?> future = runningFutures.get(taskKey);
+        if(future == null) {
+            return false;
+        }
+        cancelledTaskKeys.add(taskKey);
+        if(future.cancel(true)) {
+            log.info("Cancelled processing of task {}", taskKey);
+            return true;
+        }
+        cancelledTaskKeys.remove(taskKey);
+        return false;
+    }
+
+    /**
+     * Report as failed a task whose processing could not be started
+     */
+    public void startFailed(TaskKey taskKey, Task task, Throwable throwable) {
+        taskFailed(taskKey, task, throwable, System.currentTimeMillis(), 0);
+    }
+
+    private void taskFinished(TaskKey taskKey, Task task, Object result, long startDate, long processingNanos) {
+        runningFutures.remove(taskKey);
+        if(cancelledTaskKeys.remove(taskKey)) {
+            //cancelled after the processing ended, the Master already took it back
+            eventBus.post(new TaskCancelledEvent(taskKey));
+            return;
+        }
+        log.info("SUCCESS FINISH processing for task {}", task);
+        eventBus.post(new TaskFinishedEvent(taskKey, task, (Serializable) result, startDate, processingNanos));
+    }
+
+    private void taskFailed(TaskKey taskKey, Task task, Throwable throwable, long startDate, long processingNanos) {
+        runningFutures.remove(taskKey);
+        if(cancelledTaskKeys.remove(taskKey)) {
+            log.info("CANCELLED processing for task {}", task.getId());
+            eventBus.post(new TaskCancelledEvent(taskKey));
+            return;
+        }
+        log.info("FAIL FINISH processing for task {}", task.getId());
+        eventBus.post(new TaskFailedEvent(taskKey, throwable, startDate, processingNanos));
+    }
+
+    public ExecutionEngine getExecutionEngine(Class taskClass) {
+        ExecutionEngine executionEngine = executionEngineRegistry.get(taskClass);
+        return executionEngine != null ? executionEngine : defaultExecutionEngine;
+    }
+
+    public void outputDebugStatistics() {
+        log.info("Default execution engine {}", defaultExecutionEngine);
+        for(Map.Entry<Class, ExecutionEngine> entry : executionEngineRegistry.entrySet()) {
+            log.info("Execution engine for {} {}", entry.getKey().getSimpleName(), entry.getValue());
+        }
+    }
+
+    public void shutdown() {
+        //the same engine can be registered for more task types
+        Map<ExecutionEngine, Boolean> executionEngines = new IdentityHashMap<>();
+        executionEngines.put(defaultExecutionEngine, Boolean.TRUE);
+        for(ExecutionEngine executionEngine : executionEngineRegistry.values()) {
+            executionEngines.put(executionEngine, Boolean.TRUE);
+        }
+        for(ExecutionEngine executionEngine : executionEngines.keySet()) {
+            executionEngine.shutdown();
+        }
+    }
+
+    /**
+     * Runs the TaskProcessor keeping track of when the processing started and how long it took
+     */
+    private static class TimedProcessingCall implements Callable<Object> {
+
+        private final TaskProcessor taskProcessor;
+        private final Task task;
+
+        private volatile long startDate;
+        private volatile long processingNanos;
+
+        private TimedProcessingCall(TaskProcessor taskProcessor, Task task) {
+            this.taskProcessor = taskProcessor;
+            this.task = task;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            startDate = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            try {
+                return taskProcessor.process(task);
+            } finally {
+                processingNanos = System.nanoTime() - startNanos;
+            }
+        }
+    }
+
 
 
 }
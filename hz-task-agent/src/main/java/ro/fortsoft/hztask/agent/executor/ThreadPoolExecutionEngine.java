@@ -0,0 +1,18 @@
+package ro.fortsoft.hztask.agent.executor;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Fixed number of platform threads, the default engine sized to the maximum running tasks of the Agent
+ *
+ * @author Serban Balamaci
+ */
+public class ThreadPoolExecutionEngine extends AbstractExecutionEngine {
+
+    public ThreadPoolExecutionEngine(int threads) {
+        super(Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("Task executor %d").setDaemon(true).build()));
+    }
+}
@@ -0,0 +1,59 @@
+package ro.fortsoft.hztask.agent.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A virtual thread for every task, fits IO bound tasks where one Agent can wait on tens of thousands
+ * of requests at once(with maxRunningTasks raised accordingly). Requires running on JDK 21+
+ *
+ * @author Serban Balamaci
+ */
+public class VirtualThreadExecutionEngine extends AbstractExecutionEngine {
+
+    public VirtualThreadExecutionEngine() {
+        super(newVirtualThreadPerTaskExecutor());
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return findFactoryMethod() != null;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        Method factoryMethod = findFactoryMethod();
+        if(factoryMethod == null) {
+            throw new IllegalStateException("Virtual threads require JDK 21+, running on "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            return (ExecutorService) factoryMethod.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the virtual threads executor", e);
+        }
+    }
+
+    /** looked up by reflection so we still build for and run on older JDKs **/
+    private static Method findFactoryMethod() {
+        if(javaFeatureVersion() < 21) { //JDK 19 and 20 have it only as a preview feature
+            return null;
+        }
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static int javaFeatureVersion() {
+        String version = System.getProperty("java.specification.version");
+        try {
+            return version.startsWith("1.") ? Integer.parseInt(version.substring(2)) : Integer.parseInt(version);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
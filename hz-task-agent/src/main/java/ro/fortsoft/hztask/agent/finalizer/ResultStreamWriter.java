@@ -0,0 +1,193 @@
+package ro.fortsoft.hztask.agent.finalizer;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import com.hazelcast.core.IQueue;
+import com.hazelcast.core.Member;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.agent.ClusterAgentService;
+import ro.fortsoft.hztask.agent.processor.StreamedResult;
+import ro.fortsoft.hztask.common.stream.ResultStreamConfigUtil;
+import ro.fortsoft.hztask.common.stream.ResultStreamRef;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the {@link StreamedResult}s in chunks to the queues the Master reads them from. Each result
+ * is written by a thread of a bounded pool, which waits while the queue holds a full window of chunks not yet
+ * read by the Master. If the same Master does not read for the idle timeout(it dropped the result)
+ * the stream is abandoned and its queue destroyed.
+ * While there is no Master, or a new one was announced during the wait, the writer keeps waiting: the completion
+ * referencing the stream is held by the Agent until a new Master announces itself, and that Master reads it then.
+ *
+ * @author Serban Balamaci
+ */
+public class ResultStreamWriter {
+
+    private final ClusterAgentService clusterAgentService;
+
+    private final ThreadPoolExecutor writerExecutor;
+
+    private static final Logger log = LoggerFactory.getLogger(ResultStreamWriter.class);
+
+    /**
+     * @param clusterAgentService clusterAgentService
+     * @param writerThreads maximum number of streams written at the same time
+     */
+    public ResultStreamWriter(ClusterAgentService clusterAgentService, int writerThreads) {
+        this.clusterAgentService = clusterAgentService;
+        writerExecutor = new ThreadPoolExecutor(writerThreads, writerThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("Result stream writer-%d").setDaemon(true).build());
+        writerExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    public void write(final ResultStreamRef streamRef, final StreamedResult result) {
+        writerExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                writeStream(streamRef, result);
+            }
+        });
+    }
+
+    /**
+     * Stops the writers, the streams not finished are left incomplete
+     */
+    public void shutdown() {
+        writerExecutor.shutdownNow();
+    }
+
+    private void writeStream(ResultStreamRef streamRef, StreamedResult result) {
+        IQueue<Object> queue = clusterAgentService.getHzInstance().getQueue(streamRef.getQueueName());
+        ChunkedQueueOutputStream out = new ChunkedQueueOutputStream(queue, clusterAgentService);
+        try {
+            result.writeTo(out);
+            out.close();
+            log.debug("Finished writing result stream {}", streamRef.getQueueName());
+        } catch (HazelcastInstanceNotActiveException | InterruptedIOException e) {
+            log.info("Result stream {} not finished, Agent shutting down", streamRef.getQueueName());
+        } catch (Exception e) {
+            if(out.isAbandoned()) {
+                log.warn("Result stream {} not read by the Master, abandoning it", streamRef.getQueueName());
+                queue.destroy();
+                return;
+            }
+            log.error("Failed writing result stream {}", streamRef.getQueueName(), e);
+            failStream(queue, e);
+        }
+    }
+
+    private void failStream(IQueue<Object> queue, Exception e) {
+        Throwable rootCause = Throwables.getRootCause(e);
+        String message = rootCause.getClass().getName() + ": " + rootCause.getMessage();
+        try {
+            if(! queue.offer(message, ResultStreamConfigUtil.IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                queue.destroy();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            queue.destroy();
+        }
+    }
+
+    /**
+     * Buffers the written bytes into chunks, put in the queue as they fill up
+     */
+    private static class ChunkedQueueOutputStream extends OutputStream {
+
+        private final IQueue<Object> queue;
+
+        private final ClusterAgentService clusterAgentService;
+
+        private final byte[] chunk = new byte[ResultStreamConfigUtil.CHUNK_SIZE];
+        private int chunkLength;
+
+        private boolean closed;
+
+        /** the reader made no room for the idle timeout **/
+        private boolean abandoned;
+
+        private ChunkedQueueOutputStream(IQueue<Object> queue, ClusterAgentService clusterAgentService) {
+            this.queue = queue;
+            this.clusterAgentService = clusterAgentService;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if(chunkLength == chunk.length) {
+                sendChunk();
+            }
+            chunk[chunkLength++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if(chunkLength == chunk.length) {
+                    sendChunk();
+                }
+                int length = Math.min(len, chunk.length - chunkLength);
+                System.arraycopy(b, off, chunk, chunkLength, length);
+                chunkLength += length;
+                off += length;
+                len -= length;
+            }
+        }
+
+        /**
+         * The end of the stream is signaled by an empty chunk
+         */
+        @Override
+        public void close() throws IOException {
+            if(closed) {
+                return;
+            }
+            if(chunkLength > 0) {
+                sendChunk();
+            }
+            offer(new byte[0]);
+            closed = true;
+        }
+
+        private void sendChunk() throws IOException {
+            if(closed) {
+                throw new IOException("Result stream closed");
+            }
+            //the queue serializes the chunk when offered, so the buffer can be filled again
+            offer(chunkLength == chunk.length ? chunk : Arrays.copyOf(chunk, chunkLength));
+            chunkLength = 0;
+        }
+
+        private void offer(byte[] data) throws IOException {
+            try {
+                Member master = clusterAgentService.getMaster();
+                while (! queue.offer(data, ResultStreamConfigUtil.IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Member currentMaster = clusterAgentService.getMaster();
+                    if(currentMaster != null && currentMaster.equals(master)) {
+                        abandoned = true;
+                        throw new IOException("Result stream not read for " + ResultStreamConfigUtil.IDLE_TIMEOUT_MS
+                                + "ms");
+                    }
+                    log.info("Result stream waiting for a new Master to read it");
+                    master = currentMaster;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted writing the result stream");
+            }
+        }
+
+        private boolean isAbandoned() {
+            return abandoned;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package ro.fortsoft.hztask.agent.finalizer;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hazelcast.core.ExecutionCallback;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import com.hazelcast.core.IExecutorService;
+import com.hazelcast.core.Member;
+import com.hazelcast.nio.serialization.HazelcastSerializationException;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.agent.ClusterAgentService;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.task.TaskCompletion;
+import ro.fortsoft.hztask.op.NotifyMasterTasksCompletedBatchOp;
+import ro.fortsoft.hztask.util.ClusterUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gathers the finished tasks and reports them to the Master in batches. A batch is sent when it
+ * reaches the configured size or when its oldest entry waited the configured linger time.
+ *
+ * Batches are pipelined, only a bounded number of them are sent and not yet acknowledged by the Master.
+ * The running task slots are released when the Master acknowledged the batch, so while the Master
+ * is slow the Agent does not pick up more work. While there is no Master the batches are held
+ * until a new Master is announced. A batch the Master failed to acknowledge is sent again, with a capped
+ * backoff, for as long as that Master is around, or to the Master that replaced it.
+ * A finished task whose result or exception can't be serialized is reported as failed with a description
+ * of it, so it doesn't keep the rest of its batch from reaching the Master.
+ *
+ * @author Serban Balamaci
+ */
+public class TaskCompletionBatcher {
+
+    private ClusterAgentService clusterAgentService;
+
+    private final int batchSize;
+
+    private final long lingerMillis;
+
+    private List<TaskCompletion> batch;
+
+    /** permits for the batches sent and not yet acknowledged by the Master **/
+    private final Semaphore unacknowledgedBatches;
+
+    /** single thread that sends the batches to the Master **/
+    private ScheduledExecutorService senderExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Completion batch sender").setDaemon(true).build());
+
+    /** resends the batches the Master failed to acknowledge **/
+    private ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("Completion batch retry").setDaemon(true).build());
+
+    private static final int WARN_AFTER_ATTEMPTS = 5;
+
+    private static final long RETRY_BASE_DELAY_MS = 100;
+    private static final long RETRY_MAX_DELAY_MS = 5000;
+
+    private static final Logger log = LoggerFactory.getLogger(TaskCompletionBatcher.class);
+
+    public TaskCompletionBatcher(ClusterAgentService clusterAgentService) {
+        this.clusterAgentService = clusterAgentService;
+        this.batchSize = clusterAgentService.getConfig().getCompletionBatchSize();
+        this.lingerMillis = clusterAgentService.getConfig().getCompletionBatchLingerMillis();
+        this.unacknowledgedBatches = new Semaphore(clusterAgentService.getConfig().
+                getMaxUnacknowledgedCompletionBatches());
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    public void add(TaskCompletion taskCompletion) {
+        taskCompletion = serializable(taskCompletion);
+        List<TaskCompletion> fullBatch = null;
+
+        synchronized (this) {
+            batch.add(taskCompletion);
+            if (batch.size() >= batchSize) {
+                fullBatch = takeBatch();
+            } else if (batch.size() == 1) {
+                senderExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendLingeringBatch();
+                    }
+                }, lingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (fullBatch != null) {
+            final List<TaskCompletion> completions = fullBatch;
+            senderExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    send(completions);
+                }
+            });
+        }
+    }
+
+    private void sendLingeringBatch() {
+        List<TaskCompletion> completions;
+        synchronized (this) {
+            completions = takeBatch();
+        }
+        send(completions);
+    }
+
+    private List<TaskCompletion> takeBatch() {
+        List<TaskCompletion> completions = batch;
+        batch = new ArrayList<>(batchSize);
+        return completions;
+    }
+
+    private void send(List<TaskCompletion> completions) {
+        if (completions.isEmpty()) {
+            return;
+        }
+
+        try {
+            unacknowledgedBatches.acquire();
+        } catch (InterruptedException e) {
+            log.info("Sending of finished tasks received an interrupt signal, stopping");
+            releaseRunningTasks(completions);
+            return;
+        }
+
+        submitToMaster(completions, 1);
+    }
+
+    private void submitToMaster(final List<TaskCompletion> completions, final int attempt) {
+        HazelcastInstance hzInstance = clusterAgentService.getHzInstance();
+        final Member master = clusterAgentService.getMaster();
+        if (master == null) {
+            //hold on to them until a new Master is announced
+            log.info("Wanted to notify Master of {} finished tasks but Master left, waiting for a new Master",
+                    completions.size());
+            retryExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    submitToMaster(completions, attempt);
+                }
+            }, RETRY_MAX_DELAY_MS, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        IExecutorService executorService = hzInstance.getExecutorService(HzKeysConstants.
+                EXECUTOR_SERVICE_FINISHED_TASKS);
+
+        log.debug("Notifying Master of {} finished tasks attempt {}", completions.size(), attempt);
+        try {
+            executorService.submitToMember(new NotifyMasterTasksCompletedBatchOp(completions,
+                    ClusterUtil.getLocalMemberUuid(hzInstance), clusterAgentService.getAdvertisedCapacity()), master,
+                    new ExecutionCallback<Object>() {
+                @Override
+                public void onResponse(Object response) {
+                    acknowledged(completions);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failed(completions, master, attempt, t);
+                }
+            });
+        } catch (RuntimeException e) {
+            //the op is serialized and the instance checked before it's sent, those failures are thrown right away
+            failed(completions, master, attempt, e);
+        }
+    }
+
+    private void failed(final List<TaskCompletion> completions, Member master, final int attempt, Throwable t) {
+        if (t instanceof HazelcastInstanceNotActiveException || t instanceof RejectedExecutionException
+                || t instanceof HazelcastSerializationException) {
+            //shutting down, or a batch that can't be sent to any Master
+            log.error("Failed to notify Master of the status of {} tasks, giving up", completions.size(), t);
+            acknowledged(completions);
+            return;
+        }
+
+        Member currentMaster = clusterAgentService.getMaster();
+        if (currentMaster != null && ! currentMaster.equals(master)) {
+            log.info("Master changed, notifying the new Master of the status of {} tasks", completions.size());
+            retryExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    submitToMaster(completions, 1);
+                }
+            });
+            return;
+        }
+
+        //the same Master(until it's seen leaving) might just be slow, the results must not be lost
+        if (attempt >= WARN_AFTER_ATTEMPTS) {
+            log.warn("Failed to notify Master of the status of {} tasks after {} attempts, retrying",
+                    completions.size(), attempt, t);
+        } else {
+            log.info("Failed to notify Master of the status of {} tasks, retrying", completions.size(), t);
+        }
+        retryExecutor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                submitToMaster(completions, attempt + 1);
+            }
+        }, retryDelay(attempt), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A result or exception that can't be serialized is replaced with a failure naming its class and message
+     */
+    private TaskCompletion serializable(TaskCompletion completion) {
+        HazelcastInstance hzInstance = clusterAgentService.getHzInstance();
+        if (! (hzInstance instanceof SerializationServiceSupport)) {
+            return completion;
+        }
+
+        try {
+            ((SerializationServiceSupport) hzInstance).getSerializationService().toData(completion);
+            return completion;
+        } catch (HazelcastSerializationException e) {
+            Throwable exception = completion.getException();
+            String description = exception != null
+                    ? "exception " + exception.getClass().getName() + ": " + exception.getMessage()
+                    : "result of type " + completion.getResult().getClass().getName();
+            log.error("Could not serialize the {} of task {}, reporting the task as failed", description,
+                    completion.getTaskKey(), e);
+
+            RuntimeException failure = new RuntimeException("Could not serialize the " + description);
+            if (exception != null) {
+                failure.setStackTrace(exception.getStackTrace());
+            }
+            return TaskCompletion.failure(completion.getTaskKey(), failure)
+                    .withProcessingTime(completion.getProcessingStartDate(), completion.getProcessingNanos());
+        }
+    }
+
+    private long retryDelay(int attempt) {
+        return Math.min(RETRY_MAX_DELAY_MS, RETRY_BASE_DELAY_MS << Math.min(attempt - 1, 16));
+    }
+
+    private void acknowledged(List<TaskCompletion> completions) {
+        unacknowledgedBatches.release();
+        releaseRunningTasks(completions);
+    }
+
+    private void releaseRunningTasks(List<TaskCompletion> completions) {
+        for (TaskCompletion completion : completions) {
+            clusterAgentService.getTaskConsumerThread().removeFromRunningTasksQueue(completion.getTaskKey());
+        }
+    }
+
+}
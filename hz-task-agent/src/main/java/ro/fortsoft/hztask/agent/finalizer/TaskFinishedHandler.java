@@ -1,82 +1,45 @@
 package ro.fortsoft.hztask.agent.finalizer;
 
-import com.google.common.base.Optional;
-import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.core.IExecutorService;
-import com.hazelcast.core.Member;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import ro.fortsoft.hztask.agent.ClusterAgentService;
-import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.agent.processor.StreamedResult;
+import ro.fortsoft.hztask.common.stream.ResultStreamRef;
+import ro.fortsoft.hztask.common.task.TaskCompletion;
 import ro.fortsoft.hztask.common.task.TaskKey;
-import ro.fortsoft.hztask.op.NotifyMasterTaskFailedOp;
-import ro.fortsoft.hztask.op.NotifyMasterTaskFinishedOp;
-import ro.fortsoft.hztask.op.master.AbstractMasterOp;
-import ro.fortsoft.hztask.util.ClusterUtil;
 
 import java.io.Serializable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
 /**
+ * Hands the outcome of the processed tasks for reporting to the Master
  *
  * @author sbalamaci
  */
 public class TaskFinishedHandler {
 
-    private ClusterAgentService clusterAgentService;
+    private TaskCompletionBatcher taskCompletionBatcher;
 
-    private static final Logger log = LoggerFactory.getLogger(TaskFinishedHandler.class);
+    private ResultStreamWriter resultStreamWriter;
 
     public TaskFinishedHandler(ClusterAgentService clusterAgentService) {
-        this.clusterAgentService = clusterAgentService;
+        this.taskCompletionBatcher = new TaskCompletionBatcher(clusterAgentService);
+        this.resultStreamWriter = clusterAgentService.getResultStreamWriter();
     }
 
-    public void failure(TaskKey taskKey, Throwable exception) {
-        HazelcastInstance hzInstance = clusterAgentService.getHzInstance();
-
-        Optional<Future> masterNotified = sendToMaster(new NotifyMasterTaskFailedOp(taskKey, exception,
-                ClusterUtil.getLocalMemberUuid(hzInstance)));
-        if(masterNotified.isPresent()) {
-            waitForConfirmationFromMaster(masterNotified.get());
-        }
-        clusterAgentService.getTaskConsumerThread().removeFromRunningTasksQueue(taskKey);
+    public void failure(TaskKey taskKey, Throwable exception, long processingStartDate, long processingNanos) {
+        taskCompletionBatcher.add(TaskCompletion.failure(taskKey, exception)
+                .withProcessingTime(processingStartDate, processingNanos));
     }
 
-    public void success(TaskKey taskKey, Serializable result) {
-        HazelcastInstance hzInstance = clusterAgentService.getHzInstance();
-
-        Optional<Future> masterNotified = sendToMaster(new NotifyMasterTaskFinishedOp(taskKey, result,
-                ClusterUtil.getLocalMemberUuid(hzInstance)));
-        if(masterNotified.isPresent()) {
-            waitForConfirmationFromMaster(masterNotified.get());
-        }
-
-        clusterAgentService.getTaskConsumerThread().removeFromRunningTasksQueue(taskKey);
-    }
-
-    private void waitForConfirmationFromMaster(Future masterNotification) {
-        try {
-            masterNotification.get();
-        } catch (InterruptedException e) {
-            log.info("Callback for Master notification received an interrupt signal, stopping");
-        } catch (ExecutionException e) {
-            log.error("Task {}, failed to notify Master of it's status", e);
-        }
-    }
-
-    private Optional<Future> sendToMaster(AbstractMasterOp masterOp) {
-        HazelcastInstance hzInstance = clusterAgentService.getHzInstance();
-        IExecutorService executorService = hzInstance.getExecutorService(HzKeysConstants.
-                EXECUTOR_SERVICE_FINISHED_TASKS);
-
-        Member master = clusterAgentService.getMaster();
-        if(master != null) {
-            return Optional.of(executorService.submitToMember(masterOp, master));
-        } else {
-            log.info("Wanted to notify Master but Master left"); //maybe
-            return Optional.absent();
+    /**
+     * A {@link StreamedResult} is reported as a reference to the stream it's being written to
+     */
+    public void success(TaskKey taskKey, Serializable result, long processingStartDate, long processingNanos) {
+        if(result instanceof StreamedResult) {
+            ResultStreamRef streamRef = ResultStreamRef.forTask(taskKey);
+            resultStreamWriter.write(streamRef, (StreamedResult) result);
+            result = streamRef;
         }
+        taskCompletionBatcher.add(TaskCompletion.success(taskKey, result)
+                .withProcessingTime(processingStartDate, processingNanos));
     }
 
 }
@@ -0,0 +1,24 @@
+package ro.fortsoft.hztask.agent.processor;
+
+import ro.fortsoft.hztask.common.task.Task;
+
+import java.io.Serializable;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Processor for tasks which do their work asynchronously, like requests made with a non blocking
+ * HTTP client. No thread is held while waiting for the result, but the task still counts
+ * against the maximum running tasks of the Agent until the returned stage completes
+ *
+ * @author Serban Balamaci
+ */
+public interface AsyncTaskProcessor<R extends Serializable, T extends Task> {
+
+    /**
+     * Start the processing of the task, it should not block
+     * @param task Task that holds the data
+     * @return stage completing with the processing result or exceptionally if the processing failed
+     */
+    public CompletionStage<R> process(T task);
+
+}
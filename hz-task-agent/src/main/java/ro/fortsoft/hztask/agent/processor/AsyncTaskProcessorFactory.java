@@ -0,0 +1,10 @@
+package ro.fortsoft.hztask.agent.processor;
+
+/**
+ * @author Serban Balamaci
+ */
+public interface AsyncTaskProcessorFactory {
+
+    public AsyncTaskProcessor getObject();
+
+}
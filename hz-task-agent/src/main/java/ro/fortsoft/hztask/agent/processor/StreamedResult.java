@@ -0,0 +1,27 @@
+package ro.fortsoft.hztask.agent.processor;
+
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Result of a processor too large to be sent to the Master in one piece, like a downloaded page body.
+ * Returned by the processor instead of the result itself, it's written in chunks after the task is
+ * reported finished, and the Master's {@link ro.fortsoft.hztask.common.task.Task} completion handler
+ * receives it as an {@link java.io.InputStream}.
+ *
+ * Only a bounded window of chunks is held between the Agent and the Master, so the whole result
+ * should not be kept in memory by the implementation either, but read from where it's stored.
+ * It's never serialized itself.
+ *
+ * @author Serban Balamaci
+ */
+public abstract class StreamedResult implements Serializable {
+
+    /**
+     * Writes the result, called once from a separate thread, the stream is closed afterwards
+     * @param out stream of the result to the Master, blocks while the Master is behind reading it
+     * @throws Exception failing the stream, the Master's read fails with an IOException
+     */
+    public abstract void writeTo(OutputStream out) throws Exception;
+
+}
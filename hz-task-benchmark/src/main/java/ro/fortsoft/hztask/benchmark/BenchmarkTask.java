@@ -0,0 +1,41 @@
+package ro.fortsoft.hztask.benchmark;
+
+import ro.fortsoft.hztask.common.task.Task;
+
+/**
+ * Task with the fields of a typical crawling task, java serialized
+ *
+ * @author Serban Balamaci
+ */
+public class BenchmarkTask extends Task<String, String> {
+
+    public static final String SAMPLE_URL = "http://www.example.com/some/path/page-12345.html";
+
+    private String url;
+
+    private int depth;
+
+    public BenchmarkTask() {
+    }
+
+    public BenchmarkTask(String url, int depth) {
+        this.url = url;
+        this.depth = depth;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void setDepth(int depth) {
+        this.depth = depth;
+    }
+}
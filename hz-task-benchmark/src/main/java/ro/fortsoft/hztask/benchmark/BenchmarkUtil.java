@@ -0,0 +1,38 @@
+package ro.fortsoft.hztask.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+
+/**
+ * @author Serban Balamaci
+ */
+public class BenchmarkUtil {
+
+    /**
+     * @return config of a member not joining any cluster and not logging
+     */
+    public static Config standaloneConfig() {
+        Config config = new Config();
+        config.setProperty("hazelcast.logging.type", "none");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        JoinConfig joinConfig = config.getNetworkConfig().getJoin();
+        joinConfig.getMulticastConfig().setEnabled(false);
+        joinConfig.getTcpIpConfig().setEnabled(false);
+        return config;
+    }
+
+    /**
+     * Runs the operation for the warmup and then for the measured rounds
+     * @return the average time of an operation in the measured rounds, in microseconds
+     */
+    public static double averageMicros(int warmupRounds, int rounds, Runnable operation) {
+        for(int i = 0; i < warmupRounds; i++) {
+            operation.run();
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < rounds; i++) {
+            operation.run();
+        }
+        return (System.nanoTime() - start) / 1000.0 / rounds;
+    }
+}
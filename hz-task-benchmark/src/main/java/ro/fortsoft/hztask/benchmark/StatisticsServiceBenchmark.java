@@ -0,0 +1,92 @@
+package ro.fortsoft.hztask.benchmark;
+
+import ro.fortsoft.hztask.master.statistics.IStatisticsService;
+import ro.fortsoft.hztask.master.statistics.adder.LongAdderStatisticsService;
+import ro.fortsoft.hztask.master.statistics.codahale.CodahaleStatisticsService;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and allocation of the statistics services, with threads reporting finished tasks and
+ * reading the per agent counters like the routing does.
+ *
+ * Usage: StatisticsServiceBenchmark [threads], default 4
+ *
+ * @author Serban Balamaci
+ */
+public class StatisticsServiceBenchmark {
+
+    private static final int AGENTS = 20;
+    private static final int TASK_TYPES = 10;
+
+    private static final int OPERATIONS_PER_THREAD = 2000000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length == 0 ? 4 : Integer.parseInt(args[0]);
+
+        System.out.println("service\tthreads\tops/s\tbytes allocated/op");
+        for(int round = 0; round < 2; round++) { //the first round is the warmup
+            boolean print = round == 1;
+            run(new CodahaleStatisticsService(), "codahale", threads, print);
+            run(new LongAdderStatisticsService(), "longadder", threads, print);
+        }
+    }
+
+    private static void run(final IStatisticsService statisticsService, String name, int threads, boolean print)
+            throws InterruptedException {
+        final String[] agentUuids = new String[AGENTS];
+        for(int i = 0; i < AGENTS; i++) {
+            agentUuids[i] = "00000000-0000-0000-0000-0000000000" + (10 + i);
+        }
+        final String[] taskTypes = new String[TASK_TYPES];
+        for(int i = 0; i < TASK_TYPES; i++) {
+            taskTypes[i] = "ro.fortsoft.crawler.task.CrawlTask" + i;
+        }
+
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final AtomicLong allocatedBytes = new AtomicLong();
+
+        List<Thread> workers = new ArrayList<>();
+        for(int t = 0; t < threads; t++) {
+            final int offset = t;
+            workers.add(new Thread() {
+                @Override
+                public void run() {
+                    long allocatedBefore = threadMXBean.getThreadAllocatedBytes(getId());
+                    long sink = 0;
+                    //every 4 operations: an increment and the 3 reads of a routing decision
+                    for(int i = 0; i < OPERATIONS_PER_THREAD / 4; i++) {
+                        String agentUuid = agentUuids[(i + offset) % AGENTS];
+                        statisticsService.incTaskFinishedCounter(taskTypes[i % TASK_TYPES], agentUuid);
+                        sink += statisticsService.getSubmittedTasks(agentUuid)
+                                + statisticsService.getFinishedTasks(agentUuid)
+                                + statisticsService.getFailedTasks(agentUuid);
+                    }
+                    allocatedBytes.addAndGet(threadMXBean.getThreadAllocatedBytes(getId()) - allocatedBefore);
+                    if(sink == 42) {
+                        System.out.print("");
+                    }
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for(Thread worker : workers) {
+            worker.start();
+        }
+        for(Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - start;
+
+        long operations = (long) OPERATIONS_PER_THREAD * threads;
+        if(print) {
+            System.out.printf("%s\t%d\t%.0f\t%.1f%n", name, threads, operations * 1e9 / nanos,
+                    (double) allocatedBytes.get() / operations);
+        }
+    }
+}
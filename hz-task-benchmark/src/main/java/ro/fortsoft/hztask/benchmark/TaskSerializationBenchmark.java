@@ -0,0 +1,75 @@
+package ro.fortsoft.hztask.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Data;
+import ro.fortsoft.hztask.common.task.CompactSerializableTask;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.serialization.SerializationConfigUtil;
+
+import java.io.IOException;
+
+/**
+ * Size of the serialized tasks and round trips(serialization and deserialization) per second,
+ * for a task java serialized by the TaskStreamSerializer fallback and the same task implementing
+ * {@link CompactSerializableTask}
+ *
+ * @author Serban Balamaci
+ */
+public class TaskSerializationBenchmark {
+
+    private static final int ROUND_TRIPS = 200000;
+
+    public static void main(String[] args) {
+        Config config = new Config();
+        SerializationConfigUtil.addSerializationConfig(config);
+        SerializationService serializationService = new DefaultSerializationServiceBuilder()
+                .setConfig(config.getSerializationConfig()).build();
+
+        System.out.println("task\tsize(bytes)\tround trips/s");
+        run(serializationService, "java serialized", new BenchmarkTask(BenchmarkTask.SAMPLE_URL, 3));
+        run(serializationService, "compact", new CompactBenchmarkTask(BenchmarkTask.SAMPLE_URL, 3));
+
+        serializationService.destroy();
+    }
+
+    private static void run(final SerializationService serializationService, String name, final Task task) {
+        task.setClusterInstanceUuid("5a3c2f9e-2b1d-4c7a-9e2f-1d3c5b7a9e0f");
+        Data data = serializationService.toData(task);
+
+        double micros = BenchmarkUtil.averageMicros(2, 3, new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < ROUND_TRIPS; i++) {
+                    serializationService.toObject(serializationService.toData(task));
+                }
+            }
+        });
+        System.out.printf("%s\t%d\t%.0f%n", name, data.totalSize(), ROUND_TRIPS / micros * 1000000);
+    }
+
+    public static class CompactBenchmarkTask extends BenchmarkTask implements CompactSerializableTask {
+
+        public CompactBenchmarkTask() {
+        }
+
+        public CompactBenchmarkTask(String url, int depth) {
+            super(url, depth);
+        }
+
+        @Override
+        public void writeTaskData(ObjectDataOutput out) throws IOException {
+            out.writeUTF(getUrl());
+            out.writeInt(getDepth());
+        }
+
+        @Override
+        public void readTaskData(ObjectDataInput in) throws IOException {
+            setUrl(in.readUTF());
+            setDepth(in.readInt());
+        }
+    }
+}
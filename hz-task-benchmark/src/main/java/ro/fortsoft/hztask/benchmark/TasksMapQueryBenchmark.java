@@ -0,0 +1,123 @@
+package ro.fortsoft.hztask.benchmark;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.PagingPredicate;
+import com.hazelcast.query.Predicate;
+import com.hazelcast.query.Predicates;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.TasksMapConfigUtil;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.comparator.PriorityAndOldestTaskComparator;
+import ro.fortsoft.hztask.entryprocessor.GetTaskOrderingEntryProcessor;
+import ro.fortsoft.hztask.serialization.SerializationConfigUtil;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Times the dispatch queries on the tasks map, with and without the indexes of {@link TasksMapConfigUtil},
+ * on a single member holding all the partitions.
+ *
+ * 90% of the tasks are unassigned, the rest spread over 20 Agents, half of them started.
+ *
+ * Usage: TasksMapQueryBenchmark [number of tasks...], default 10000 100000
+ *
+ * @author Serban Balamaci
+ */
+public class TasksMapQueryBenchmark {
+
+    private static final String UNASSIGNED = "-1";
+
+    private static final int AGENTS = 20;
+
+    private static final int PUT_BATCH_SIZE = 10000;
+
+    public static void main(String[] args) {
+        int[] sizes = args.length == 0 ? new int[] {10000, 100000} : new int[args.length];
+        for(int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+
+        System.out.println("tasks\tindexed\tagent assigned page(us)\tagent tasks keys(us)\tunassigned orderings(us)");
+        try {
+            for(int size : sizes) {
+                run(size, false);
+                run(size, true);
+            }
+        } finally {
+            Hazelcast.shutdownAll();
+        }
+    }
+
+    private static void run(int size, boolean indexed) {
+        Config config = BenchmarkUtil.standaloneConfig();
+        SerializationConfigUtil.addSerializationConfig(config);
+        if(indexed) {
+            TasksMapConfigUtil.addTasksMapIndexes(config);
+        }
+        HazelcastInstance hzInstance = Hazelcast.newHazelcastInstance(config);
+        final IMap<TaskKey, Task> tasks = hzInstance.getMap(HzKeysConstants.TASKS_MAP);
+        populate(tasks, size);
+
+        final String agentUuid = agentUuid(7);
+        final Predicate assignedNotStarted = Predicates.and(
+                Predicates.equal(TasksMapConfigUtil.CLUSTER_INSTANCE_UUID_ATTRIBUTE, agentUuid),
+                Predicates.equal(TasksMapConfigUtil.STARTED_DATE_ATTRIBUTE, 0L));
+        final Predicate agentTasks = Predicates.equal(TasksMapConfigUtil.CLUSTER_INSTANCE_UUID_ATTRIBUTE, agentUuid);
+        final Predicate unassigned = Predicates.equal(TasksMapConfigUtil.CLUSTER_INSTANCE_UUID_ATTRIBUTE,
+                UNASSIGNED);
+
+        double pageMicros = BenchmarkUtil.averageMicros(5, 20, new Runnable() {
+            @Override
+            public void run() {
+                tasks.entrySet(new PagingPredicate(assignedNotStarted, new PriorityAndOldestTaskComparator(), 20));
+            }
+        });
+        double keysMicros = BenchmarkUtil.averageMicros(5, 20, new Runnable() {
+            @Override
+            public void run() {
+                tasks.keySet(agentTasks);
+            }
+        });
+        double orderingsMicros = BenchmarkUtil.averageMicros(1, 3, new Runnable() {
+            @Override
+            public void run() {
+                tasks.executeOnEntries(new GetTaskOrderingEntryProcessor(), unassigned);
+            }
+        });
+        System.out.printf("%d\t%s\t%.0f\t%.0f\t%.0f%n", size, indexed, pageMicros, keysMicros, orderingsMicros);
+
+        hzInstance.shutdown();
+    }
+
+    private static void populate(IMap<TaskKey, Task> tasks, int size) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<TaskKey, Task> batch = new HashMap<>();
+        for(int i = 0; i < size; i++) {
+            Task task = new BenchmarkTask("http://www.example.com/page-" + i + ".html", random.nextInt(5));
+            task.setInternalCounter(i);
+            task.setPriority(random.nextInt(3));
+            if(random.nextInt(10) == 0) {
+                task.setClusterInstanceUuid(agentUuid(random.nextInt(AGENTS)));
+                task.setStartedDate(random.nextBoolean() ? System.currentTimeMillis() : 0);
+            } else {
+                task.setClusterInstanceUuid(UNASSIGNED);
+            }
+            batch.put(task.getTaskKey(), task);
+            if(batch.size() == PUT_BATCH_SIZE) {
+                tasks.putAll(batch);
+                batch.clear();
+            }
+        }
+        tasks.putAll(batch);
+    }
+
+    private static String agentUuid(int agent) {
+        return "00000000-0000-0000-0000-0000000000" + (10 + agent);
+    }
+}
@@ -1,5 +1,9 @@
 package ro.fortsoft.hztask.cluster;
 
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.Collection;
+
 /**
  * Interface through which the Master by sending AbstractAgentOps to the ClusterAgent gets a reference
  * to the clusterMasterService which is exposed on the ClusterMaster and can call the methods exposed
@@ -15,6 +19,18 @@ public interface IClusterAgentService {
 
     public void startWork();
 
+    /**
+     * Called by the Master right after it assigned tasks to this agent
+     * @param taskKeys keys of the newly assigned tasks
+     */
+    public void tasksAssigned(Collection<TaskKey> taskKeys);
+
+    /**
+     * Called by the Master after it took back the tasks because their leases expired
+     * @param taskKeys keys of the tasks to drop, and cancel if running
+     */
+    public void cancelTasks(Collection<TaskKey> taskKeys);
+
     public void shutdown();
 
     public void outputDebugStatistics();
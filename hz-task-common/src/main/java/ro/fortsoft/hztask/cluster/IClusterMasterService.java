@@ -1,8 +1,10 @@
 package ro.fortsoft.hztask.cluster;
 
+import ro.fortsoft.hztask.common.task.TaskCompletion;
 import ro.fortsoft.hztask.common.task.TaskKey;
 
 import java.io.Serializable;
+import java.util.List;
 
 /**
  * Interface through which the Agents, by sending AbstractMasterOps back to the Master get a reference
@@ -29,4 +31,19 @@ public interface IClusterMasterService {
      */
     void handleFailedTask(TaskKey taskKey, Throwable exception, String agentUuid);
 
+    /**
+     * Method called by the agent to handle a batch of finished tasks, successful or failed
+     * @param completions the outcome of the finished tasks
+     * @param agentUuid the agent uuid that finished the tasks
+     * @param agentCapacity the number of tasks the agent can run at once
+     */
+    void handleCompletedTasks(List<TaskCompletion> completions, String agentUuid, int agentCapacity);
+
+    /**
+     * Method called periodically by the agent to keep its leases on the tasks it holds
+     * @param taskKeys keys of the tasks assigned to the agent, running or waiting to be started
+     * @param agentUuid the agent uuid
+     */
+    void renewTaskLeases(List<TaskKey> taskKeys, String agentUuid);
+
 }
@@ -6,6 +6,7 @@ package ro.fortsoft.hztask.common;
 public class HzKeysConstants {
 
     public static final String AGENT_NAME_PROPERTY = "ro.fortsoft.hztask.name";
+    public static final String AGENT_CAPACITY_PROPERTY = "ro.fortsoft.hztask.capacity";
 
     public static final String USER_CONTEXT_MEMBER_TYPE = "ro.fortsoft.member_type";
     public static final String USER_CONTEXT_CLUSTER_MASTER_SERVICE = "ro.fortsoft.clusterMasterService";
@@ -15,6 +16,8 @@ public class HzKeysConstants {
     public static final String EXECUTOR_SERVICE_COMS = "ro.fortsoft.coms";
     public static final String EXECUTOR_SERVICE_FINISHED_TASKS = "ro.fortsoft.coms.finishedTasks";
     public static final String TASKS_MAP = "ro.fortsoft.tasks";
+    public static final String SCHEDULED_TASKS_MAP = "ro.fortsoft.scheduledTasks";
+    public static final String DEAD_LETTER_TASKS_MAP = "ro.fortsoft.deadLetterTasks";
 
 
 
@@ -6,6 +6,8 @@ package ro.fortsoft.hztask.common;
 public enum MemberType {
 
     MASTER,
+    /** a Master waiting to take over if the active Master leaves the cluster **/
+    STANDBY_MASTER,
     AGENT
 
 }
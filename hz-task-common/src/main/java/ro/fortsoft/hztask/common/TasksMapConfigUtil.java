@@ -0,0 +1,45 @@
+package ro.fortsoft.hztask.common;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.MapIndexConfig;
+
+/**
+ * Declares the indexes on the attributes of the tasks map that the dispatch queries filter and sort on.
+ * Indexes are kept by each member for its own partitions, so this needs to be applied on the config
+ * of every cluster member
+ *
+ * @author Serban Balamaci
+ */
+public class TasksMapConfigUtil {
+
+    public static final String CLUSTER_INSTANCE_UUID_ATTRIBUTE = "clusterInstanceUuid";
+    public static final String INTERNAL_COUNTER_ATTRIBUTE = "internalCounter";
+    public static final String PRIORITY_ATTRIBUTE = "priority";
+    /** only queried together with the clusterInstanceUuid, no index of its own **/
+    public static final String STARTED_DATE_ATTRIBUTE = "startedDate";
+    /** indexed by the Master only when deduplicating the submitted tasks **/
+    public static final String DEDUP_KEY_ATTRIBUTE = "dedupKey";
+
+    public static Config addTasksMapIndexes(Config config) {
+        MapConfig tasksMapConfig = config.getMapConfig(HzKeysConstants.TASKS_MAP);
+
+        //equality only, a hash index is enough
+        addIndexIfMissing(tasksMapConfig, CLUSTER_INSTANCE_UUID_ATTRIBUTE, false);
+        //range queries and sorting need sorted indexes
+        addIndexIfMissing(tasksMapConfig, INTERNAL_COUNTER_ATTRIBUTE, true);
+        addIndexIfMissing(tasksMapConfig, PRIORITY_ATTRIBUTE, true);
+
+        return config;
+    }
+
+    private static void addIndexIfMissing(MapConfig mapConfig, String attribute, boolean ordered) {
+        for(MapIndexConfig indexConfig : mapConfig.getMapIndexConfigs()) {
+            if(attribute.equals(indexConfig.getAttribute())) {
+                return;
+            }
+        }
+        mapConfig.addMapIndexConfig(new MapIndexConfig(attribute, ordered));
+    }
+
+}
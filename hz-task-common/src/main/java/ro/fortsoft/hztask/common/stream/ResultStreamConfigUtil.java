@@ -0,0 +1,37 @@
+package ro.fortsoft.hztask.common.stream;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.QueueConfig;
+
+/**
+ * Declares the queues through which the large task results are streamed from the Agents to the Master.
+ * A queue holds at most a window of chunks, so a writer gets ahead of its reader only by that much.
+ * The queue of a stream can be on any member, so this needs to be applied on the config of every
+ * cluster member
+ *
+ * @author Serban Balamaci
+ */
+public class ResultStreamConfigUtil {
+
+    public static final String QUEUE_NAME_PREFIX = "ro.fortsoft.resultStream.";
+
+    /** bytes of result sent at once **/
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /** number of chunks of a stream written and not yet read **/
+    public static final int WINDOW_CHUNKS = 16;
+
+    /** how long the writer waits for the reader to make room, and the reader for the next chunk **/
+    public static final long IDLE_TIMEOUT_MS = 60000;
+
+    public static Config addResultStreamConfig(Config config) {
+        QueueConfig queueConfig = new QueueConfig(QUEUE_NAME_PREFIX + "*");
+        queueConfig.setMaxSize(WINDOW_CHUNKS);
+        //a stream is read once and soon, losing its member fails the stream instead of copying every chunk
+        queueConfig.setBackupCount(0);
+        queueConfig.setStatisticsEnabled(false);
+        config.addQueueConfig(queueConfig);
+        return config;
+    }
+
+}
@@ -0,0 +1,72 @@
+package ro.fortsoft.hztask.common.stream;
+
+import com.google.common.base.Objects;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Reported to the Master as the result of a task in place of a large result, which is streamed
+ * separately in chunks through the named cluster queue.
+ *
+ * The queue holds byte[] chunks of the result, ended by an empty chunk, or by a String with
+ * the message of the failure if the result could not be written entirely.
+ *
+ * @author Serban Balamaci
+ */
+public class ResultStreamRef implements IdentifiedDataSerializable, Serializable {
+
+    private String queueName;
+
+    public ResultStreamRef() {
+    }
+
+    private ResultStreamRef(String queueName) {
+        this.queueName = queueName;
+    }
+
+    /**
+     * @return a new stream for the result of the task, distinct for every run of the task
+     */
+    public static ResultStreamRef forTask(TaskKey taskKey) {
+        return new ResultStreamRef(ResultStreamConfigUtil.QUEUE_NAME_PREFIX + taskKey.getTaskId() + "."
+                + UUID.randomUUID().toString());
+    }
+
+    public String getQueueName() {
+        return queueName;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(queueName);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        queueName = in.readUTF();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.RESULT_STREAM_REF;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("queueName", queueName)
+                .toString();
+    }
+}
@@ -0,0 +1,32 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+
+import java.io.IOException;
+
+/**
+ * Hook for {@link Task} subclasses to write their own fields in a compact form instead of
+ * falling back to java serialization. The fields of the base {@link Task} are handled by the framework.
+ *
+ * Implementing classes need to have a no-arg constructor.
+ *
+ * @author Serban Balamaci
+ */
+public interface CompactSerializableTask {
+
+    /**
+     * Write the fields of the task subclass
+     * @param out output
+     * @throws IOException on write failure
+     */
+    public void writeTaskData(ObjectDataOutput out) throws IOException;
+
+    /**
+     * Read the fields of the task subclass in the same order they were written
+     * @param in input
+     * @throws IOException on read failure
+     */
+    public void readTaskData(ObjectDataInput in) throws IOException;
+
+}
@@ -0,0 +1,120 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.google.common.base.Objects;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+
+/**
+ * A task submitted to run at a later date, once or repeatedly, kept in the cluster until it's due
+ *
+ * @author Serban Balamaci
+ */
+public class ScheduledTask implements IdentifiedDataSerializable {
+
+    private String scheduleId;
+
+    private Task task;
+
+    /** when the task is next due, in millis since epoch **/
+    private long dueDate;
+
+    /** for recurring tasks the time between two runs, 0 for tasks that run once **/
+    private long periodMillis;
+
+    public ScheduledTask() {
+    }
+
+    public ScheduledTask(String scheduleId, Task task, long dueDate, long periodMillis) {
+        this.scheduleId = scheduleId;
+        this.task = task;
+        this.dueDate = dueDate;
+        this.periodMillis = periodMillis;
+    }
+
+    /**
+     * @return the task to submit now that it's due, recurring tasks get a new id for every run
+     */
+    public Task createOccurrence() {
+        if(isRecurring()) {
+            task.generateId();
+            task.setCreationDate(System.currentTimeMillis());
+        }
+        return task;
+    }
+
+    /**
+     * @param now current time in millis since epoch
+     * @return the next due date of a recurring task after now, keeping to the schedule of the first run
+     */
+    public long nextDueDate(long now) {
+        long nextDueDate = dueDate + periodMillis;
+        if(nextDueDate <= now) { //runs were missed, while there was no Master
+            nextDueDate += ((now - nextDueDate) / periodMillis + 1) * periodMillis;
+        }
+        return nextDueDate;
+    }
+
+    public boolean isRecurring() {
+        return periodMillis > 0;
+    }
+
+    public String getScheduleId() {
+        return scheduleId;
+    }
+
+    public Task getTask() {
+        return task;
+    }
+
+    public long getDueDate() {
+        return dueDate;
+    }
+
+    public void setDueDate(long dueDate) {
+        this.dueDate = dueDate;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(scheduleId);
+        out.writeObject(task);
+        out.writeLong(dueDate);
+        out.writeLong(periodMillis);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        scheduleId = in.readUTF();
+        task = in.readObject();
+        dueDate = in.readLong();
+        periodMillis = in.readLong();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.SCHEDULED_TASK;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("scheduleId", scheduleId)
+                .add("task", task)
+                .add("dueDate", dueDate)
+                .add("periodMillis", periodMillis)
+                .toString();
+    }
+}
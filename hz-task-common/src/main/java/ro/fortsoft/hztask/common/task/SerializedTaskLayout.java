@@ -0,0 +1,108 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.internal.serialization.impl.HeapData;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Data;
+
+import java.io.IOException;
+
+/**
+ * Reads the priority and internal counter of a task from its serialized form, written big endian by the
+ * {@link TaskStreamSerializer} right after the task id, so the tasks are not deserialized just for sorting.
+ *
+ * The position of the serializer's output inside the Data depends on the internal layout of Hazelcast's
+ * HeapData. This was written against Hazelcast 3.6.x, and the only place relying on it is this class.
+ * {@link #verify()} checks the offsets on a serialized probe task when the member is configured, so
+ * an upgrade changing the layout fails at startup instead of silently mis-ordering the tasks.
+ *
+ * @author Serban Balamaci
+ */
+public class SerializedTaskLayout {
+
+    /** start of the serializer's output, after the Data header(partition hash and type), Hazelcast 3.6.x **/
+    private static final int PAYLOAD_OFFSET = HeapData.DATA_OFFSET;
+
+    /** after the two longs of the task id **/
+    private static final int PRIORITY_OFFSET = PAYLOAD_OFFSET + 16;
+    private static final int INTERNAL_COUNTER_OFFSET = PRIORITY_OFFSET + 4;
+
+    private static final int PROBE_PRIORITY = 0x01020304;
+    private static final long PROBE_INTERNAL_COUNTER = 0x0506070809101112L;
+
+    private static volatile boolean verified;
+
+    /**
+     * Checks the priority and internal counter are read back from a serialized probe task
+     * @throws IllegalStateException if they are not, the Hazelcast version is not supported
+     */
+    public static void verify() {
+        if(verified) {
+            return;
+        }
+        SerializationService serializationService = new DefaultSerializationServiceBuilder()
+                .setConfig(new SerializationConfig().addSerializerConfig(new SerializerConfig()
+                        .setTypeClass(Task.class)
+                        .setImplementation(new TaskStreamSerializer())))
+                .build();
+        try {
+            ProbeTask probe = new ProbeTask();
+            probe.setPriority(PROBE_PRIORITY);
+            probe.setInternalCounter(PROBE_INTERNAL_COUNTER);
+            Data data = serializationService.toData(probe);
+
+            if(! isSerializedTask(data) || readPriority(data) != PROBE_PRIORITY
+                    || readInternalCounter(data) != PROBE_INTERNAL_COUNTER) {
+                throw new IllegalStateException("The serialized form of the tasks is not the one expected, "
+                        + "sorting the tasks without deserializing them supports the Hazelcast 3.6.x layout");
+            }
+        } finally {
+            serializationService.destroy();
+        }
+        verified = true;
+    }
+
+    /**
+     * @param data serialized value
+     * @return true if data is a task serialized by the {@link TaskStreamSerializer}, which means
+     * {@link #readPriority(Data)} and {@link #readInternalCounter(Data)} can be used on it
+     */
+    public static boolean isSerializedTask(Data data) {
+        return data != null && data.getType() == TaskStreamSerializer.TYPE_ID
+                && data.totalSize() >= INTERNAL_COUNTER_OFFSET + 8;
+    }
+
+    public static int readPriority(Data data) {
+        return (int) readBigEndian(data.toByteArray(), PRIORITY_OFFSET, 4);
+    }
+
+    public static long readInternalCounter(Data data) {
+        return readBigEndian(data.toByteArray(), INTERNAL_COUNTER_OFFSET, 8);
+    }
+
+    private static long readBigEndian(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            value = (value << 8) | (bytes[i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Only written, never read
+     */
+    private static class ProbeTask extends Task<Void, Void> implements CompactSerializableTask {
+
+        @Override
+        public void writeTaskData(ObjectDataOutput out) throws IOException {
+        }
+
+        @Override
+        public void readTaskData(ObjectDataInput in) throws IOException {
+        }
+    }
+}
@@ -3,28 +3,51 @@ package ro.fortsoft.hztask.common.task;
 import com.google.common.base.Objects;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * @author sbalamaci
  */
 public abstract class Task<I, O> implements Serializable {
 
-    private final String id;
+    //the fields of the base task are all written by the TaskStreamSerializer, so they are left out
+    //when the subclass fields are written with java serialization
 
-    private String clusterInstanceUuid;
+    private transient long idMostSigBits;
+    private transient long idLeastSigBits;
 
-    private int nrOfTries;
+    private transient Object partitionKey;
+
+    private transient String clusterInstanceUuid;
+
+    private transient int nrOfTries;
 
     //higher is bigger priority
-    private int priority = 0;
+    private transient int priority = 0;
+
+    private transient long creationDate;
+
+    /** when the task was last assigned to an Agent, 0 if it was never assigned **/
+    private transient long assignedDate;
 
-    private long creationDate;
+    /** when the assigned Agent claimed the task, to process it or to hold it in its prefetch buffer,
+     * 0 if not yet claimed **/
+    private transient long startedDate;
 
-    private long internalCounter;
+    /** when the assigned Agent actually started processing the task, 0 if it didn't **/
+    private transient long processingStartedDate;
+
+    private transient long internalCounter;
+
+    /** summaries of the failed tries **/
+    private transient List<TaskFailure> failures;
 
     public Task() {
-        id = UUID.randomUUID().toString();
+        generateId();
         creationDate = System.currentTimeMillis();
     }
 
@@ -42,8 +65,63 @@ public abstract class Task<I, O> implements Serializable {
         return getClass().getName();
     }
 
+    /**
+     * Used by the Master, when deduplication is enabled, to drop the submitted tasks for which a task with
+     * the same key is still waiting or running, ex. the url for a crawling task
+     * @return the key identifying the work of the task, null if the task should not be deduplicated
+     */
+    public String getDedupKey() {
+        return null;
+    }
+
+    /**
+     * Generates a random (version 4 layout) 128 bit id. Doesn't use the SecureRandom
+     * behind UUID.randomUUID() since the id doesn't need to be unpredictable, only unique.
+     */
+    void generateId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        idMostSigBits = (random.nextLong() & ~0xF000L) | 0x4000L;
+        idLeastSigBits = (random.nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+    }
+
+    /**
+     * @return the task id in the UUID String form
+     */
     public String getId() {
-        return id;
+        return new UUID(idMostSigBits, idLeastSigBits).toString();
+    }
+
+    long getIdMostSigBits() {
+        return idMostSigBits;
+    }
+
+    long getIdLeastSigBits() {
+        return idLeastSigBits;
+    }
+
+    void setId(long idMostSigBits, long idLeastSigBits) {
+        this.idMostSigBits = idMostSigBits;
+        this.idLeastSigBits = idLeastSigBits;
+    }
+
+    /**
+     * @return the key under which the task is stored in the tasks map
+     */
+    public TaskKey getTaskKey() {
+        return new TaskKey(idMostSigBits, idLeastSigBits, partitionKey);
+    }
+
+    public Object getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * Place the task in the same partition as the given key, for ex. to have it co-located with the data
+     * it works on. Must be set before the task is submitted and must be serializable by Hazelcast.
+     * @param partitionKey key whose partition the task is placed in, null to be decided by the task id
+     */
+    public void setPartitionKey(Object partitionKey) {
+        this.partitionKey = partitionKey;
     }
 
     public String getClusterInstanceUuid() {
@@ -78,6 +156,30 @@ public abstract class Task<I, O> implements Serializable {
         this.creationDate = creationDate;
     }
 
+    public long getAssignedDate() {
+        return assignedDate;
+    }
+
+    public void setAssignedDate(long assignedDate) {
+        this.assignedDate = assignedDate;
+    }
+
+    public long getStartedDate() {
+        return startedDate;
+    }
+
+    public void setStartedDate(long startedDate) {
+        this.startedDate = startedDate;
+    }
+
+    public long getProcessingStartedDate() {
+        return processingStartedDate;
+    }
+
+    public void setProcessingStartedDate(long processingStartedDate) {
+        this.processingStartedDate = processingStartedDate;
+    }
+
     public long getInternalCounter() {
         return internalCounter;
     }
@@ -86,10 +188,28 @@ public abstract class Task<I, O> implements Serializable {
         this.internalCounter = internalCounter;
     }
 
+    /**
+     * @return summaries of the failed tries, recorded when the dead letter store is enabled on the Master
+     */
+    public List<TaskFailure> getFailures() {
+        return failures == null ? Collections.<TaskFailure>emptyList() : Collections.unmodifiableList(failures);
+    }
+
+    public void addFailure(TaskFailure failure) {
+        if(failures == null) {
+            failures = new ArrayList<>(2);
+        }
+        failures.add(failure);
+    }
+
+    public void clearFailures() {
+        failures = null;
+    }
+
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
-                .add("id", id)
+                .add("id", getId())
                 .add("nrOfTries", nrOfTries)
                 .add("priority", priority)
                 .add("creationDate", creationDate)
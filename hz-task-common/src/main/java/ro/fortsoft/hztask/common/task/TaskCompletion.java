@@ -0,0 +1,127 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.google.common.base.Objects;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of processing a task on an Agent, sent back to the Master
+ *
+ * @author Serban Balamaci
+ */
+public class TaskCompletion implements IdentifiedDataSerializable {
+
+    private TaskKey taskKey;
+
+    private Serializable result;
+
+    private Throwable exception;
+
+    /** when the Agent started processing the task, in millis since epoch **/
+    private long processingStartDate;
+
+    /** how long the processing of the task took on the Agent **/
+    private long processingNanos;
+
+    public TaskCompletion() {
+    }
+
+    private TaskCompletion(TaskKey taskKey, Serializable result, Throwable exception) {
+        this.taskKey = taskKey;
+        this.result = result;
+        this.exception = exception;
+    }
+
+    public static TaskCompletion success(TaskKey taskKey, Serializable result) {
+        return new TaskCompletion(taskKey, result, null);
+    }
+
+    public static TaskCompletion failure(TaskKey taskKey, Throwable exception) {
+        return new TaskCompletion(taskKey, null, exception);
+    }
+
+    public TaskKey getTaskKey() {
+        return taskKey;
+    }
+
+    public Serializable getResult() {
+        return result;
+    }
+
+    public Throwable getException() {
+        return exception;
+    }
+
+    public boolean isFailed() {
+        return exception != null;
+    }
+
+    public long getProcessingStartDate() {
+        return processingStartDate;
+    }
+
+    public long getProcessingNanos() {
+        return processingNanos;
+    }
+
+    /**
+     * @return when the Agent finished processing the task, in millis since epoch
+     */
+    public long getProcessingEndDate() {
+        return processingStartDate + TimeUnit.NANOSECONDS.toMillis(processingNanos);
+    }
+
+    /**
+     * @param processingStartDate when the Agent started processing the task, in millis since epoch
+     * @param processingNanos how long the processing took
+     * @return this
+     */
+    public TaskCompletion withProcessingTime(long processingStartDate, long processingNanos) {
+        this.processingStartDate = processingStartDate;
+        this.processingNanos = processingNanos;
+        return this;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        taskKey.writeData(out);
+        out.writeObject(result);
+        out.writeObject(exception);
+        out.writeLong(processingStartDate);
+        out.writeLong(processingNanos);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        taskKey = new TaskKey();
+        taskKey.readData(in);
+        result = in.readObject();
+        exception = in.readObject();
+        processingStartDate = in.readLong();
+        processingNanos = in.readLong();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.TASK_COMPLETION;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("taskKey", taskKey)
+                .add("failed", isFailed())
+                .toString();
+    }
+}
@@ -0,0 +1,91 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.google.common.base.Objects;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+
+/**
+ * The fields of a task the Master needs for rebuilding its dispatch state, without the task data
+ *
+ * @author Serban Balamaci
+ */
+public class TaskDispatchState implements IdentifiedDataSerializable {
+
+    private String clusterInstanceUuid;
+
+    private String taskType;
+
+    private int priority;
+
+    private long internalCounter;
+
+    public TaskDispatchState() {
+    }
+
+    public TaskDispatchState(Task task) {
+        this(task.getClusterInstanceUuid(), task.getTaskType(), task.getPriority(), task.getInternalCounter());
+    }
+
+    public TaskDispatchState(String clusterInstanceUuid, String taskType, int priority, long internalCounter) {
+        this.clusterInstanceUuid = clusterInstanceUuid;
+        this.taskType = taskType;
+        this.priority = priority;
+        this.internalCounter = internalCounter;
+    }
+
+    public String getClusterInstanceUuid() {
+        return clusterInstanceUuid;
+    }
+
+    public String getTaskType() {
+        return taskType;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getInternalCounter() {
+        return internalCounter;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(clusterInstanceUuid);
+        out.writeUTF(taskType);
+        out.writeInt(priority);
+        out.writeLong(internalCounter);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        clusterInstanceUuid = in.readUTF();
+        taskType = in.readUTF();
+        priority = in.readInt();
+        internalCounter = in.readLong();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.TASK_DISPATCH_STATE;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("clusterInstanceUuid", clusterInstanceUuid)
+                .add("taskType", taskType)
+                .add("priority", priority)
+                .add("internalCounter", internalCounter)
+                .toString();
+    }
+}
@@ -0,0 +1,135 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Compact summary of a failed try of a task, kept with the task instead of the whole exception.
+ * A run is lost when the task was taken back while it was running, because its Agent left or
+ * stopped renewing its lease(hung, or the processing crashed the Agent).
+ *
+ * @author Serban Balamaci
+ */
+public class TaskFailure implements IdentifiedDataSerializable, Serializable {
+
+    private static final int MAX_MESSAGE_LENGTH = 200;
+
+    private long date;
+
+    private String agentUuid;
+
+    /** class of the root cause of the failure, empty for a lost run **/
+    private String exceptionClass;
+
+    private String message;
+
+    public TaskFailure() {
+    }
+
+    private TaskFailure(String agentUuid, String exceptionClass, String message) {
+        this.date = System.currentTimeMillis();
+        this.agentUuid = agentUuid == null ? "" : agentUuid;
+        this.exceptionClass = exceptionClass;
+        this.message = message == null ? "" : truncate(message);
+    }
+
+    /**
+     * @param agentUuid Agent that reported the failure
+     * @param exception the failure
+     */
+    public static TaskFailure failed(String agentUuid, Throwable exception) {
+        if(exception == null) {
+            return new TaskFailure(agentUuid, Throwable.class.getName(), "");
+        }
+        Throwable rootCause = Throwables.getRootCause(exception);
+        return new TaskFailure(agentUuid, rootCause.getClass().getName(), rootCause.getMessage());
+    }
+
+    /**
+     * @param agentUuid Agent the task was taken back from
+     */
+    public static TaskFailure lostRun(String agentUuid) {
+        return new TaskFailure(agentUuid, "", "Task taken back while running");
+    }
+
+    /**
+     * @return the number of lost runs among the failures
+     */
+    public static int countLostRuns(List<TaskFailure> failures) {
+        int lostRuns = 0;
+        for(TaskFailure failure : failures) {
+            if(failure.isLostRun()) {
+                lostRuns++;
+            }
+        }
+        return lostRuns;
+    }
+
+    private static String truncate(String message) {
+        return message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+    }
+
+    public boolean isLostRun() {
+        return exceptionClass.isEmpty();
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public String getAgentUuid() {
+        return agentUuid;
+    }
+
+    public String getExceptionClass() {
+        return exceptionClass;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeLong(date);
+        out.writeUTF(agentUuid);
+        out.writeUTF(exceptionClass);
+        out.writeUTF(message);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        date = in.readLong();
+        agentUuid = in.readUTF();
+        exceptionClass = in.readUTF();
+        message = in.readUTF();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.TASK_FAILURE;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("date", date)
+                .add("agentUuid", agentUuid)
+                .add("exceptionClass", exceptionClass)
+                .add("message", message)
+                .toString();
+    }
+}
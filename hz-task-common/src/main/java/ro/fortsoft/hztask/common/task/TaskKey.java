@@ -1,24 +1,105 @@
 package ro.fortsoft.hztask.common.task;
 
 import com.google.common.base.Objects;
+import com.hazelcast.core.PartitionAware;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
 
-import java.io.Serializable;
+import java.io.IOException;
+import java.util.UUID;
 
 /**
- * Key that references Task in the distributed Hazelcast Map of {@link Task}
+ * Key that references Task in the distributed Hazelcast Map of {@link Task}.
+ * The task id is kept as the two longs of a 128 bit id instead of its String form,
+ * with an optional partition key that makes Hazelcast place the task in the partition
+ * of that key instead of the partition given by the task id.
+ *
+ * Since the partition key is part of the key in the map, keys should be obtained
+ * from {@link Task#getTaskKey()} or from the map and not rebuilt from the task id only.
  *
  * @author Serban Balamaci
  */
-public class TaskKey implements Serializable {
+public class TaskKey implements IdentifiedDataSerializable, PartitionAware<Object> {
+
+    private long mostSigBits;
+    private long leastSigBits;
+
+    private Object partitionKey;
+
+    public TaskKey() {
+    }
+
+    public TaskKey(long mostSigBits, long leastSigBits) {
+        this(mostSigBits, leastSigBits, null);
+    }
 
-    private final String taskId;
+    public TaskKey(long mostSigBits, long leastSigBits, Object partitionKey) {
+        this.mostSigBits = mostSigBits;
+        this.leastSigBits = leastSigBits;
+        this.partitionKey = partitionKey;
+    }
 
+    /**
+     * @param taskId task id in the UUID String form as returned by {@link #getTaskId()}
+     */
     public TaskKey(String taskId) {
-        this.taskId = taskId;
+        UUID uuid = UUID.fromString(taskId);
+        this.mostSigBits = uuid.getMostSignificantBits();
+        this.leastSigBits = uuid.getLeastSignificantBits();
     }
 
+    /**
+     * @return the task id in the UUID String form, meant for display
+     */
     public String getTaskId() {
-        return taskId;
+        return new UUID(mostSigBits, leastSigBits).toString();
+    }
+
+    public long getMostSigBits() {
+        return mostSigBits;
+    }
+
+    public long getLeastSigBits() {
+        return leastSigBits;
+    }
+
+    /**
+     * @return the key whose partition the task is placed in, or null if the task id decides the partition
+     */
+    @Override
+    public Object getPartitionKey() {
+        return partitionKey;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeLong(mostSigBits);
+        out.writeLong(leastSigBits);
+        out.writeBoolean(partitionKey != null);
+        if(partitionKey != null) {
+            out.writeObject(partitionKey);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        mostSigBits = in.readLong();
+        leastSigBits = in.readLong();
+        if(in.readBoolean()) {
+            partitionKey = in.readObject();
+        }
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.TASK_KEY;
     }
 
     @Override
@@ -28,20 +109,23 @@ public class TaskKey implements Serializable {
 
         TaskKey taskKey = (TaskKey) o;
 
-        if (!taskId.equals(taskKey.taskId)) return false;
+        if (mostSigBits != taskKey.mostSigBits) return false;
+        if (leastSigBits != taskKey.leastSigBits) return false;
 
-        return true;
+        return Objects.equal(partitionKey, taskKey.partitionKey);
     }
 
     @Override
     public int hashCode() {
-        return taskId.hashCode();
+        long hilo = mostSigBits ^ leastSigBits;
+        return ((int) (hilo >> 32)) ^ (int) hilo;
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
-                .add("taskId", taskId)
+                .add("taskId", getTaskId())
+                .add("partitionKey", partitionKey)
                 .toString();
     }
 }
@@ -0,0 +1,165 @@
+package ro.fortsoft.hztask.common.task;
+
+import com.hazelcast.nio.ClassLoaderUtil;
+import com.hazelcast.nio.IOUtil;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.HazelcastSerializationException;
+import com.hazelcast.nio.serialization.StreamSerializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Serializer registered for all the {@link Task} subclasses. The fields of the base {@link Task}
+ * are written in a compact binary form followed by the subclass fields which are written by the
+ * {@link CompactSerializableTask} hook if the task implements it, or else by java serialization.
+ *
+ * The priority and internal counter are always written big endian at fixed offsets at the start of the
+ * header, so they can be read from the serialized form without deserializing the task
+ * (see {@link SerializedTaskLayout}).
+ *
+ * @author Serban Balamaci
+ */
+public class TaskStreamSerializer implements StreamSerializer<Task> {
+
+    public static final int TYPE_ID = 1701;
+
+    private static final byte COMPACT_TASK_DATA = 1;
+    private static final byte JAVA_SERIALIZED_TASK = 2;
+
+    @Override
+    public void write(ObjectDataOutput out, Task task) throws IOException {
+        writeHeader(out, task);
+
+        if (task instanceof CompactSerializableTask) {
+            out.writeByte(COMPACT_TASK_DATA);
+            out.writeUTF(task.getClass().getName());
+            ((CompactSerializableTask) task).writeTaskData(out);
+        } else {
+            out.writeByte(JAVA_SERIALIZED_TASK);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                objectOut.writeObject(task);
+            }
+            out.writeByteArray(bytes.toByteArray());
+        }
+    }
+
+    @Override
+    public Task read(ObjectDataInput in) throws IOException {
+        long idMostSigBits = in.readLong();
+        long idLeastSigBits = in.readLong();
+        int priority = bigEndian(in.getByteOrder(), in.readInt());
+        long internalCounter = bigEndian(in.getByteOrder(), in.readLong());
+        int nrOfTries = in.readInt();
+        long creationDate = in.readLong();
+        long assignedDate = in.readLong();
+        long startedDate = in.readLong();
+        long processingStartedDate = in.readLong();
+        String clusterInstanceUuid = in.readUTF();
+        Object partitionKey = in.readObject();
+        List<TaskFailure> failures = readFailures(in);
+
+        Task task;
+        byte format = in.readByte();
+        if (format == COMPACT_TASK_DATA) {
+            task = newTaskInstance(in.getClassLoader(), in.readUTF());
+            ((CompactSerializableTask) task).readTaskData(in);
+        } else {
+            task = readJavaSerializedTask(in);
+        }
+
+        task.setId(idMostSigBits, idLeastSigBits);
+        task.setPartitionKey(partitionKey);
+        task.setClusterInstanceUuid(clusterInstanceUuid.isEmpty() ? null : clusterInstanceUuid);
+        task.setNrOfTries(nrOfTries);
+        task.setPriority(priority);
+        task.setCreationDate(creationDate);
+        task.setAssignedDate(assignedDate);
+        task.setStartedDate(startedDate);
+        task.setProcessingStartedDate(processingStartedDate);
+        task.setInternalCounter(internalCounter);
+        for(TaskFailure failure : failures) {
+            task.addFailure(failure);
+        }
+        return task;
+    }
+
+    private void writeHeader(ObjectDataOutput out, Task task) throws IOException {
+        out.writeLong(task.getIdMostSigBits());
+        out.writeLong(task.getIdLeastSigBits());
+        out.writeInt(bigEndian(out.getByteOrder(), task.getPriority()));
+        out.writeLong(bigEndian(out.getByteOrder(), task.getInternalCounter()));
+        out.writeInt(task.getNrOfTries());
+        out.writeLong(task.getCreationDate());
+        out.writeLong(task.getAssignedDate());
+        out.writeLong(task.getStartedDate());
+        out.writeLong(task.getProcessingStartedDate());
+        out.writeUTF(task.getClusterInstanceUuid() == null ? "" : task.getClusterInstanceUuid());
+        out.writeObject(task.getPartitionKey());
+
+        List<TaskFailure> failures = task.getFailures();
+        out.writeInt(failures.size());
+        for(TaskFailure failure : failures) {
+            failure.writeData(out);
+        }
+    }
+
+    private List<TaskFailure> readFailures(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        if(size == 0) {
+            return Collections.emptyList();
+        }
+        List<TaskFailure> failures = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            TaskFailure failure = new TaskFailure();
+            failure.readData(in);
+            failures.add(failure);
+        }
+        return failures;
+    }
+
+    private static int bigEndian(ByteOrder byteOrder, int value) {
+        return byteOrder == ByteOrder.BIG_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    private static long bigEndian(ByteOrder byteOrder, long value) {
+        return byteOrder == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value);
+    }
+
+    private Task newTaskInstance(ClassLoader classLoader, String className) {
+        try {
+            return ClassLoaderUtil.newInstance(classLoader, className);
+        } catch (Exception e) {
+            throw new HazelcastSerializationException("Could not instantiate task " + className +
+                    ", a no-arg constructor is required", e);
+        }
+    }
+
+    private Task readJavaSerializedTask(ObjectDataInput in) throws IOException {
+        byte[] bytes = in.readByteArray();
+        try (ObjectInputStream objectIn = IOUtil.newObjectInputStream(in.getClassLoader(),
+                new ByteArrayInputStream(bytes))) {
+            return (Task) objectIn.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new HazelcastSerializationException(e);
+        }
+    }
+
+    @Override
+    public int getTypeId() {
+        return TYPE_ID;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
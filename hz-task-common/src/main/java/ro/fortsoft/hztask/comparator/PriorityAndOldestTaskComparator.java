@@ -1,25 +1,92 @@
 package ro.fortsoft.hztask.comparator;
 
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.Data;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import com.hazelcast.query.impl.QueryableEntry;
+import ro.fortsoft.hztask.common.task.SerializedTaskLayout;
 import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
 
-import java.io.Serializable;
+import java.io.IOException;
 import java.util.Comparator;
 import java.util.Map;
 
 /**
+ * Orders tasks with the higher priority first and then the oldest (lower internal counter) first.
+ *
+ * When sorting the query results on the members that own the entries, the priority and internal counter
+ * are read from the serialized task through {@link SerializedTaskLayout}, so the tasks are not deserialized
+ * just for sorting. Entries which are not in the serialized form fall back to the deserialized task.
+ *
+ * Paged queries using it must fetch the entries or the values. A keySet query is sorted only within the page
+ * of each member, the caller merging the pages has no values to sort on(Hazelcast 3.6).
+ *
  * @author Serban Balamaci
  */
-public class PriorityAndOldestTaskComparator implements Comparator<Map.Entry>, Serializable {
+public class PriorityAndOldestTaskComparator implements Comparator<Map.Entry>, IdentifiedDataSerializable {
 
     @Override
     public int compare(Map.Entry e1, Map.Entry e2) {
-        Task task1 = (Task) e1.getValue();
-        Task task2 = (Task) e2.getValue();
+        Object task1 = orderingSource(e1);
+        Object task2 = orderingSource(e2);
+        if(task1 == null || task2 == null) { //no value to sort on, keep the order the member sorted them in
+            return Boolean.compare(task1 == null, task2 == null);
+        }
 
-        if(task1.getPriority() == task2.getPriority()) {
-            return task1.getInternalCounter() <= task2.getInternalCounter() ? -1 : 1;
+        int priority1 = priority(task1);
+        int priority2 = priority(task2);
+        if(priority1 != priority2) {
+            return priority1 > priority2 ? -1 : 1;
+        }
+        return Long.compare(internalCounter(task1), internalCounter(task2));
+    }
+
+    /**
+     * On the members owning the entries the values are at hand. On the caller merging the members' pages
+     * the rows hold the value in the serialized form, or no value at all for a keySet query, as Hazelcast 3.6
+     * does not fetch the values for it
+     * @return the serialized task, the task, or null if the entry has no value
+     */
+    private static Object orderingSource(Map.Entry entry) {
+        if(entry instanceof QueryableEntry) {
+            Data data = ((QueryableEntry) entry).getValueData();
+            if(SerializedTaskLayout.isSerializedTask(data)) {
+                return data;
+            }
+        }
+        Object value = entry.getValue();
+        if(value instanceof Data) {
+            return SerializedTaskLayout.isSerializedTask((Data) value) ? value : null;
         }
+        return value;
+    }
+
+    private static int priority(Object task) {
+        return task instanceof Data ? SerializedTaskLayout.readPriority((Data) task) : ((Task) task).getPriority();
+    }
+
+    private static long internalCounter(Object task) {
+        return task instanceof Data ? SerializedTaskLayout.readInternalCounter((Data) task) :
+                ((Task) task).getInternalCounter();
+    }
 
-        return task1.getPriority() < task2.getPriority() ? -1 : 1;
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.PRIORITY_AND_OLDEST_TASK_COMPARATOR;
     }
 }
@@ -0,0 +1,76 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.ScheduledTask;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Used by the Master after submitting the due scheduled tasks, removes the tasks that run once and moves
+ * the recurring ones to their next due date. A task which is not due(scheduled again in the meantime, with
+ * its own timer) is left alone.
+ *
+ * @author Serban Balamaci
+ */
+public class AdvanceScheduledTaskEntryProcessor extends AbstractEntryProcessor<String, ScheduledTask>
+        implements IdentifiedDataSerializable {
+
+    private long now;
+
+    public AdvanceScheduledTaskEntryProcessor() {
+    }
+
+    /**
+     * @param now the time the tasks were submitted at, in millis since epoch
+     */
+    public AdvanceScheduledTaskEntryProcessor(long now) {
+        this.now = now;
+    }
+
+    /**
+     * @return the next due date of a recurring task, null if the task was removed or left alone
+     */
+    @Override
+    public Object process(Map.Entry<String, ScheduledTask> entry) {
+        ScheduledTask scheduledTask = entry.getValue();
+        if(scheduledTask == null) {
+            return null;
+        }
+        if(scheduledTask.getDueDate() > now) {
+            return null;
+        }
+        if(! scheduledTask.isRecurring()) {
+            entry.setValue(null);
+            return null;
+        }
+        scheduledTask.setDueDate(scheduledTask.nextDueDate(now));
+        entry.setValue(scheduledTask);
+
+        return scheduledTask.getDueDate();
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeLong(now);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        now = in.readLong();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.ADVANCE_SCHEDULED_TASK_ENTRY_PROCESSOR;
+    }
+}
@@ -0,0 +1,92 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Used by an Agent to mark the task as started right before processing it. The claim only succeeds if the
+ * task is still assigned to the Agent and was not started, and since entry processors on the same key
+ * run one after another on the partition thread, it can't interleave with
+ * {@link StealTaskEntryProcessor}: the task is either stolen or started, never both.
+ * The Agent can exclude the task types it has no room for, such tasks are left assigned to it and unclaimed.
+ *
+ * @author Serban Balamaci
+ */
+public class ClaimTaskEntryProcessor extends AbstractEntryProcessor<TaskKey, Task>
+        implements IdentifiedDataSerializable {
+
+    private String agentUuid;
+
+    private Set<String> excludedTaskTypes = Collections.emptySet();
+
+    public ClaimTaskEntryProcessor() {
+    }
+
+    public ClaimTaskEntryProcessor(String agentUuid) {
+        this.agentUuid = agentUuid;
+    }
+
+    public ClaimTaskEntryProcessor(String agentUuid, Set<String> excludedTaskTypes) {
+        this.agentUuid = agentUuid;
+        this.excludedTaskTypes = excludedTaskTypes;
+    }
+
+    /**
+     * @return the claimed task, the task type if the task is of an excluded type, null if the task is gone,
+     * assigned elsewhere or already started
+     */
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null || task.getStartedDate() != 0 || ! agentUuid.equals(task.getClusterInstanceUuid())) {
+            return null;
+        }
+        if(excludedTaskTypes.contains(task.getTaskType())) {
+            return task.getTaskType();
+        }
+        task.setStartedDate(System.currentTimeMillis());
+        entry.setValue(task);
+
+        return task;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+        out.writeInt(excludedTaskTypes.size());
+        for(String taskType : excludedTaskTypes) {
+            out.writeUTF(taskType);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+        int excludedCount = in.readInt();
+        excludedTaskTypes = new HashSet<>(excludedCount);
+        for(int i = 0; i < excludedCount; i++) {
+            excludedTaskTypes.add(in.readUTF());
+        }
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.CLAIM_TASK_ENTRY_PROCESSOR;
+    }
+}
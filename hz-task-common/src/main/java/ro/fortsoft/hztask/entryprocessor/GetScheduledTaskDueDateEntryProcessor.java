@@ -0,0 +1,54 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.ScheduledTask;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Read only processor returning the due date of the scheduled task, so the Master can load the pending
+ * schedules without transferring the tasks
+ *
+ * @author Serban Balamaci
+ */
+public class GetScheduledTaskDueDateEntryProcessor implements EntryProcessor<String, ScheduledTask>,
+        IdentifiedDataSerializable {
+
+    @Override
+    public Object process(Map.Entry<String, ScheduledTask> entry) {
+        ScheduledTask scheduledTask = entry.getValue();
+        if(scheduledTask == null) {
+            return null;
+        }
+        return scheduledTask.getDueDate();
+    }
+
+    @Override
+    public EntryBackupProcessor<String, ScheduledTask> getBackupProcessor() {
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.GET_SCHEDULED_TASK_DUE_DATE_ENTRY_PROCESSOR;
+    }
+}
@@ -0,0 +1,54 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Read only processor returning just the dedup key of the task, null if it has none, used by the Master
+ * to remember the dedup keys of the tasks already present when it starts or takes over
+ *
+ * @author Serban Balamaci
+ */
+public class GetTaskDedupKeyEntryProcessor implements EntryProcessor<TaskKey, Task>, IdentifiedDataSerializable {
+
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null) {
+            return null;
+        }
+        return task.getDedupKey();
+    }
+
+    @Override
+    public EntryBackupProcessor<TaskKey, Task> getBackupProcessor() {
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.GET_TASK_DEDUP_KEY_ENTRY_PROCESSOR;
+    }
+}
@@ -0,0 +1,55 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.EntryBackupProcessor;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Read only processor returning just the priority and internal counter of the task as
+ * a long[] {priority, internalCounter}, so the whole tasks don't need to be sent to the Master
+ * when it's rebuilding the ordering of the unassigned tasks
+ *
+ * @author Serban Balamaci
+ */
+public class GetTaskOrderingEntryProcessor implements EntryProcessor<TaskKey, Task>, IdentifiedDataSerializable {
+
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null) {
+            return null;
+        }
+        return new long[] {task.getPriority(), task.getInternalCounter()};
+    }
+
+    @Override
+    public EntryBackupProcessor<TaskKey, Task> getBackupProcessor() {
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.GET_TASK_ORDERING_ENTRY_PROCESSOR;
+    }
+}
@@ -0,0 +1,68 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Used by an Agent to record that it started processing a task it claimed, when the task left
+ * its prefetch buffer. Only the tasks that got this far count a lost run when they are taken back,
+ * a task taken back while still waiting in the prefetch buffer never ran.
+ * Only succeeds if the task is still assigned to the Agent and claimed by it.
+ *
+ * @author Serban Balamaci
+ */
+public class ProcessingStartedEntryProcessor extends AbstractEntryProcessor<TaskKey, Task>
+        implements IdentifiedDataSerializable {
+
+    private String agentUuid;
+
+    public ProcessingStartedEntryProcessor() {
+    }
+
+    public ProcessingStartedEntryProcessor(String agentUuid) {
+        this.agentUuid = agentUuid;
+    }
+
+    /**
+     * @return true if the start was recorded
+     */
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null || task.getStartedDate() == 0 || ! agentUuid.equals(task.getClusterInstanceUuid())) {
+            return false;
+        }
+        task.setProcessingStartedDate(System.currentTimeMillis());
+        entry.setValue(task);
+
+        return true;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.PROCESSING_STARTED_ENTRY_PROCESSOR;
+    }
+}
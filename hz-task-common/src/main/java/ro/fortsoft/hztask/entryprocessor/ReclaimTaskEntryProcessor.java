@@ -0,0 +1,118 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskDispatchState;
+import ro.fortsoft.hztask.common.task.TaskFailure;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Used by the Master to take back a task, started or not, from an Agent whose lease on it expired.
+ * Only succeeds if the task is still assigned to that Agent, so a task finished or moved
+ * in the meantime is left alone.
+ * If given a lost run to record, a task taken back while running gets it recorded, and is removed
+ * once it has lost too many runs, to be put in the dead letter store. A task claimed into the prefetch buffer
+ * of the Agent but not yet started didn't run, so it doesn't count a lost run.
+ *
+ * @author Serban Balamaci
+ */
+public class ReclaimTaskEntryProcessor extends AbstractEntryProcessor<TaskKey, Task>
+        implements IdentifiedDataSerializable {
+
+    private String agentUuid;
+    private String unassignedUuid;
+
+    /** recorded on the started tasks, null if not kept **/
+    private TaskFailure lostRun;
+
+    private int maxLostRuns;
+
+    public ReclaimTaskEntryProcessor() {
+    }
+
+    /**
+     * @param agentUuid Agent to take the task from
+     * @param unassignedUuid the uuid marking unassigned tasks
+     */
+    public ReclaimTaskEntryProcessor(String agentUuid, String unassignedUuid) {
+        this.agentUuid = agentUuid;
+        this.unassignedUuid = unassignedUuid;
+    }
+
+    /**
+     * @param agentUuid Agent to take the task from
+     * @param unassignedUuid the uuid marking unassigned tasks
+     * @param lostRun recorded on the tasks that were running
+     * @param maxLostRuns number of lost runs after which the task is removed
+     */
+    public ReclaimTaskEntryProcessor(String agentUuid, String unassignedUuid, TaskFailure lostRun,
+                                     int maxLostRuns) {
+        this(agentUuid, unassignedUuid);
+        this.lostRun = lostRun;
+        this.maxLostRuns = maxLostRuns;
+    }
+
+    /**
+     * @return the dispatch state of the reclaimed task, the task itself if it was removed for losing
+     * too many runs, null if the task could not be reclaimed
+     */
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null || ! agentUuid.equals(task.getClusterInstanceUuid())) {
+            return null;
+        }
+        if(lostRun != null && task.getProcessingStartedDate() > 0) {
+            task.addFailure(lostRun);
+            if(TaskFailure.countLostRuns(task.getFailures()) >= maxLostRuns) {
+                entry.setValue(null);
+                return task;
+            }
+        }
+        task.setClusterInstanceUuid(unassignedUuid);
+        task.setStartedDate(0);
+        task.setProcessingStartedDate(0);
+        entry.setValue(task);
+
+        return new TaskDispatchState(task);
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+        out.writeUTF(unassignedUuid);
+        out.writeBoolean(lostRun != null);
+        if(lostRun != null) {
+            lostRun.writeData(out);
+            out.writeInt(maxLostRuns);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+        unassignedUuid = in.readUTF();
+        if(in.readBoolean()) {
+            lostRun = new TaskFailure();
+            lostRun.readData(in);
+            maxLostRuns = in.readInt();
+        }
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.RECLAIM_TASK_ENTRY_PROCESSOR;
+    }
+}
@@ -0,0 +1,71 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Removes the task from the tasks map returning the removed task, used with
+ * {@link com.hazelcast.core.IMap#executeOnKeys} for removing many tasks in one call.
+ * When created for an Agent, the task is removed only if it is still assigned to that Agent, so a late
+ * completion from an Agent the task was taken back from doesn't remove it from under the new one.
+ *
+ * @author Serban Balamaci
+ */
+public class RemoveTaskEntryProcessor extends AbstractEntryProcessor<TaskKey, Task>
+        implements IdentifiedDataSerializable {
+
+    /** the Agent the task must be assigned to, null to remove it regardless **/
+    private String agentUuid;
+
+    public RemoveTaskEntryProcessor() {
+    }
+
+    /**
+     * @param agentUuid Agent that reported the task as finished
+     */
+    public RemoveTaskEntryProcessor(String agentUuid) {
+        this.agentUuid = agentUuid;
+    }
+
+    /**
+     * @return the removed task, null if it was not found or it is no longer assigned to the Agent
+     */
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null || (agentUuid != null && ! agentUuid.equals(task.getClusterInstanceUuid()))) {
+            return null;
+        }
+        entry.setValue(null);
+
+        return task;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.REMOVE_TASK_ENTRY_PROCESSOR;
+    }
+}
@@ -0,0 +1,112 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskDispatchState;
+import ro.fortsoft.hztask.common.task.TaskFailure;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Used by the Master to put back a failed task for another try. Counts the try, records the summary
+ * of the failure if there's one and unassigns the task, only if it is still assigned to the Agent
+ * that reported the failure.
+ *
+ * @author Serban Balamaci
+ */
+public class RetryTaskEntryProcessor extends AbstractEntryProcessor<TaskKey, Task>
+        implements IdentifiedDataSerializable {
+
+    private String agentUuid;
+    private String unassignedUuid;
+
+    /** task id -> summary of the failure to record on the task, empty when not kept **/
+    private Map<String, TaskFailure> failures = Collections.emptyMap();
+
+    public RetryTaskEntryProcessor() {
+    }
+
+    /**
+     * @param agentUuid Agent that reported the failure
+     * @param unassignedUuid the uuid marking unassigned tasks
+     */
+    public RetryTaskEntryProcessor(String agentUuid, String unassignedUuid) {
+        this.agentUuid = agentUuid;
+        this.unassignedUuid = unassignedUuid;
+    }
+
+    /**
+     * @param agentUuid Agent that reported the failures
+     * @param unassignedUuid the uuid marking unassigned tasks
+     * @param failures task id -> summary of the failure to record on the task
+     */
+    public RetryTaskEntryProcessor(String agentUuid, String unassignedUuid, Map<String, TaskFailure> failures) {
+        this(agentUuid, unassignedUuid);
+        this.failures = failures;
+    }
+
+    /**
+     * @return the dispatch state of the task, null if it is no longer assigned to the Agent
+     */
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null || ! agentUuid.equals(task.getClusterInstanceUuid())) {
+            return null;
+        }
+        task.setNrOfTries(task.getNrOfTries() + 1);
+        TaskFailure failure = failures.get(entry.getKey().getTaskId());
+        if(failure != null) {
+            task.addFailure(failure);
+        }
+        task.setClusterInstanceUuid(unassignedUuid);
+        task.setStartedDate(0);
+        task.setProcessingStartedDate(0);
+        entry.setValue(task);
+
+        return new TaskDispatchState(task);
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+        out.writeUTF(unassignedUuid);
+        out.writeInt(failures.size());
+        for(Map.Entry<String, TaskFailure> failure : failures.entrySet()) {
+            out.writeUTF(failure.getKey());
+            failure.getValue().writeData(out);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+        unassignedUuid = in.readUTF();
+        int size = in.readInt();
+        failures = new HashMap<>(size * 2);
+        for(int i = 0; i < size; i++) {
+            String taskId = in.readUTF();
+            TaskFailure failure = new TaskFailure();
+            failure.readData(in);
+            failures.put(taskId, failure);
+        }
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.RETRY_TASK_ENTRY_PROCESSOR;
+    }
+}
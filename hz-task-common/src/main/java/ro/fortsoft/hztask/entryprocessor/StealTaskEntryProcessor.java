@@ -0,0 +1,72 @@
+package ro.fortsoft.hztask.entryprocessor;
+
+import com.hazelcast.map.AbstractEntryProcessor;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Used by the Master to move a task that was assigned but not yet started from one Agent to another.
+ * Only succeeds if the task is still assigned to the Agent it's stolen from and was not claimed
+ * by it with {@link ClaimTaskEntryProcessor}.
+ *
+ * @author Serban Balamaci
+ */
+public class StealTaskEntryProcessor extends AbstractEntryProcessor<TaskKey, Task>
+        implements IdentifiedDataSerializable {
+
+    private String fromAgentUuid;
+    private String toAgentUuid;
+
+    public StealTaskEntryProcessor() {
+    }
+
+    public StealTaskEntryProcessor(String fromAgentUuid, String toAgentUuid) {
+        this.fromAgentUuid = fromAgentUuid;
+        this.toAgentUuid = toAgentUuid;
+    }
+
+    /**
+     * @return the task type of the stolen task, null if the task could not be stolen
+     */
+    @Override
+    public Object process(Map.Entry<TaskKey, Task> entry) {
+        Task task = entry.getValue();
+        if(task == null || task.getStartedDate() != 0 || ! fromAgentUuid.equals(task.getClusterInstanceUuid())) {
+            return null;
+        }
+        task.setClusterInstanceUuid(toAgentUuid);
+        task.setAssignedDate(System.currentTimeMillis());
+        entry.setValue(task);
+
+        return task.getTaskType();
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(fromAgentUuid);
+        out.writeUTF(toAgentUuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        fromAgentUuid = in.readUTF();
+        toAgentUuid = in.readUTF();
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.STEAL_TASK_ENTRY_PROCESSOR;
+    }
+}
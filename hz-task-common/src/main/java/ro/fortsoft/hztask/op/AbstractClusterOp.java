@@ -2,14 +2,24 @@ package ro.fortsoft.hztask.op;
 
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
 
-import java.io.Serializable;
+import java.io.IOException;
 import java.util.concurrent.Callable;
 
 /**
+ * Base class for the messages exchanged between the cluster members. Ops are serialized as
+ * {@link IdentifiedDataSerializable}, those that carry data need to override
+ * {@link #writeData(ObjectDataOutput)} and {@link #readData(ObjectDataInput)} and need a no-arg constructor
+ * to be registered in {@link HzTaskDataSerializableFactory}.
+ *
  * @author Serban Balamaci
  */
-public abstract class AbstractClusterOp<T> implements Serializable, HazelcastInstanceAware, Callable<T> {
+public abstract class AbstractClusterOp<T> implements IdentifiedDataSerializable, HazelcastInstanceAware,
+        Callable<T> {
 
     private transient HazelcastInstance hzInstance;
 
@@ -22,4 +32,17 @@ public abstract class AbstractClusterOp<T> implements Serializable, HazelcastIns
         return hzInstance;
     }
 
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+    }
+
+    @Override
+    public int getFactoryId() {
+        return HzTaskDataSerializableFactory.FACTORY_ID;
+    }
+
 }
@@ -2,6 +2,7 @@ package ro.fortsoft.hztask.op;
 
 import ro.fortsoft.hztask.common.HzKeysConstants;
 import ro.fortsoft.hztask.common.MemberType;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
 
 /**
  * @author Serban Balamaci
@@ -13,4 +14,9 @@ public class GetMemberTypeClusterOp extends AbstractClusterOp<MemberType> {
         return (MemberType) getHzInstance().getUserContext().
                 get(HzKeysConstants.USER_CONTEXT_MEMBER_TYPE);
     }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.GET_MEMBER_TYPE_OP;
+    }
 }
@@ -1,16 +1,24 @@
 package ro.fortsoft.hztask.op;
 
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
 import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.op.master.AbstractMasterOp;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
 
 /**
  * @author Serban Balamaci
  */
 public class NotifyMasterTaskFailedOp extends AbstractMasterOp {
 
-    private final TaskKey id;
-    private final Throwable exception;
-    private final String agentUuid;
+    private TaskKey id;
+    private Throwable exception;
+    private String agentUuid;
+
+    public NotifyMasterTaskFailedOp() {
+    }
 
     public NotifyMasterTaskFailedOp(TaskKey id, Throwable exception, String agentUuid) {
         this.id = id;
@@ -23,4 +31,24 @@ public class NotifyMasterTaskFailedOp extends AbstractMasterOp {
         getClusterMasterService().handleFailedTask(id, exception, agentUuid);
         return null;
     }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        id.writeData(out);
+        out.writeObject(exception);
+        out.writeUTF(agentUuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        id = new TaskKey();
+        id.readData(in);
+        exception = in.readObject();
+        agentUuid = in.readUTF();
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.NOTIFY_MASTER_TASK_FAILED_OP;
+    }
 }
@@ -1,8 +1,12 @@
 package ro.fortsoft.hztask.op;
 
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
 import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.op.master.AbstractMasterOp;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
 
+import java.io.IOException;
 import java.io.Serializable;
 
 /**
@@ -10,9 +14,12 @@ import java.io.Serializable;
  */
 public class NotifyMasterTaskFinishedOp extends AbstractMasterOp {
 
-    private final TaskKey id;
-    private final Serializable response;
-    private final String agentUuid;
+    private TaskKey id;
+    private Serializable response;
+    private String agentUuid;
+
+    public NotifyMasterTaskFinishedOp() {
+    }
 
     public NotifyMasterTaskFinishedOp(TaskKey id, Serializable response, String agentUuid) {
         this.id = id;
@@ -26,4 +33,24 @@ public class NotifyMasterTaskFinishedOp extends AbstractMasterOp {
         getClusterMasterService().handleFinishedTask(id, response, agentUuid);
         return null;
     }
-}
\ No newline at end of file
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        id.writeData(out);
+        out.writeObject(response);
+        out.writeUTF(agentUuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        id = new TaskKey();
+        id.readData(in);
+        response = in.readObject();
+        agentUuid = in.readUTF();
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.NOTIFY_MASTER_TASK_FINISHED_OP;
+    }
+}
@@ -0,0 +1,69 @@
+package ro.fortsoft.hztask.op;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import ro.fortsoft.hztask.common.task.TaskCompletion;
+import ro.fortsoft.hztask.op.master.AbstractMasterOp;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Notifies the Master of a batch of finished(successful or failed) tasks
+ *
+ * @author Serban Balamaci
+ */
+public class NotifyMasterTasksCompletedBatchOp extends AbstractMasterOp {
+
+    private ArrayList<TaskCompletion> completions;
+    private String agentUuid;
+
+    /** the Agent refreshes its advertised capacity with every batch **/
+    private int agentCapacity;
+
+    public NotifyMasterTasksCompletedBatchOp() {
+    }
+
+    public NotifyMasterTasksCompletedBatchOp(Collection<TaskCompletion> completions, String agentUuid,
+                                             int agentCapacity) {
+        this.completions = new ArrayList<>(completions);
+        this.agentUuid = agentUuid;
+        this.agentCapacity = agentCapacity;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        getClusterMasterService().handleCompletedTasks(completions, agentUuid, agentCapacity);
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+        out.writeInt(agentCapacity);
+        out.writeInt(completions.size());
+        for (TaskCompletion completion : completions) {
+            completion.writeData(out);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+        agentCapacity = in.readInt();
+        int size = in.readInt();
+        completions = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TaskCompletion completion = new TaskCompletion();
+            completion.readData(in);
+            completions.add(completion);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.NOTIFY_MASTER_TASKS_COMPLETED_BATCH_OP;
+    }
+}
@@ -0,0 +1,62 @@
+package ro.fortsoft.hztask.op;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.op.master.AbstractMasterOp;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Renews the Agent's leases on all the tasks it holds
+ *
+ * @author Serban Balamaci
+ */
+public class RenewTaskLeasesOp extends AbstractMasterOp {
+
+    private ArrayList<TaskKey> taskKeys;
+    private String agentUuid;
+
+    public RenewTaskLeasesOp() {
+    }
+
+    public RenewTaskLeasesOp(Collection<TaskKey> taskKeys, String agentUuid) {
+        this.taskKeys = new ArrayList<>(taskKeys);
+        this.agentUuid = agentUuid;
+    }
+
+    @Override
+    public Void call() throws Exception {
+        getClusterMasterService().renewTaskLeases(taskKeys, agentUuid);
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(agentUuid);
+        out.writeInt(taskKeys.size());
+        for (TaskKey taskKey : taskKeys) {
+            taskKey.writeData(out);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        agentUuid = in.readUTF();
+        int size = in.readInt();
+        taskKeys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TaskKey taskKey = new TaskKey();
+            taskKey.readData(in);
+            taskKeys.add(taskKey);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.RENEW_TASK_LEASES_OP;
+    }
+}
@@ -2,6 +2,11 @@ package ro.fortsoft.hztask.op.agent;
 
 
 import com.hazelcast.core.Member;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
 
 /**
  * @author Serban Balamaci
@@ -10,6 +15,9 @@ public class AnnounceMasterAndSignalStartWorkOp extends AbstractAgentOp<Boolean>
 
     private String masterUuid;
 
+    public AnnounceMasterAndSignalStartWorkOp() {
+    }
+
     public AnnounceMasterAndSignalStartWorkOp(Member master) {
         this.masterUuid = master.getUuid();
     }
@@ -23,4 +31,19 @@ public class AnnounceMasterAndSignalStartWorkOp extends AbstractAgentOp<Boolean>
         }
         return Boolean.FALSE;
     }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(masterUuid);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        masterUuid = in.readUTF();
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.ANNOUNCE_MASTER_OP;
+    }
 }
@@ -1,6 +1,7 @@
 package ro.fortsoft.hztask.op.agent;
 
 import ro.fortsoft.hztask.cluster.IClusterAgentService;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
 
 /**
  * @author Serban Balamaci
@@ -13,4 +14,8 @@ public class AskAgentReadyOp extends AbstractAgentOp<Boolean> {
         return clusterAgentService != null;
     }
 
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.ASK_AGENT_READY_OP;
+    }
 }
@@ -0,0 +1,58 @@
+package ro.fortsoft.hztask.op.agent;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Message telling the agent to drop the tasks the Master took back from it because their leases
+ * expired, the running ones are cancelled
+ *
+ * @author Serban Balamaci
+ */
+public class CancelTasksOp extends AbstractAgentOp<Void> {
+
+    private ArrayList<TaskKey> taskKeys;
+
+    public CancelTasksOp() {
+    }
+
+    public CancelTasksOp(Collection<TaskKey> taskKeys) {
+        this.taskKeys = new ArrayList<>(taskKeys);
+    }
+
+    @Override
+    public Void call() throws Exception {
+        getClusterAgentService().cancelTasks(taskKeys);
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(taskKeys.size());
+        for (TaskKey taskKey : taskKeys) {
+            taskKey.writeData(out);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        taskKeys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TaskKey taskKey = new TaskKey();
+            taskKey.readData(in);
+            taskKeys.add(taskKey);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.CANCEL_TASKS_OP;
+    }
+}
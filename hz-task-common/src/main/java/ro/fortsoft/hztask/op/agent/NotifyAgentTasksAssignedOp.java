@@ -0,0 +1,58 @@
+package ro.fortsoft.hztask.op.agent;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Message that pushes to the agent the keys of the tasks that the Master just assigned to it,
+ * so it does not have to wait for scanning the tasks map
+ *
+ * @author Serban Balamaci
+ */
+public class NotifyAgentTasksAssignedOp extends AbstractAgentOp<Void> {
+
+    private ArrayList<TaskKey> taskKeys;
+
+    public NotifyAgentTasksAssignedOp() {
+    }
+
+    public NotifyAgentTasksAssignedOp(Collection<TaskKey> taskKeys) {
+        this.taskKeys = new ArrayList<>(taskKeys);
+    }
+
+    @Override
+    public Void call() throws Exception {
+        getClusterAgentService().tasksAssigned(taskKeys);
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(taskKeys.size());
+        for (TaskKey taskKey : taskKeys) {
+            taskKey.writeData(out);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        int size = in.readInt();
+        taskKeys = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            TaskKey taskKey = new TaskKey();
+            taskKey.readData(in);
+            taskKeys.add(taskKey);
+        }
+    }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.NOTIFY_AGENT_TASKS_ASSIGNED_OP;
+    }
+}
@@ -1,5 +1,7 @@
 package ro.fortsoft.hztask.op.agent;
 
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
 /**
  * Message that signals the agent to output debug statistics
  *
@@ -12,4 +14,9 @@ public class OutputDebugStatsOp extends AbstractAgentOp<Void> {
         getClusterAgentService().outputDebugStatistics();
         return null;
     }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.OUTPUT_DEBUG_STATS_OP;
+    }
 }
@@ -1,5 +1,7 @@
 package ro.fortsoft.hztask.op.agent;
 
+import ro.fortsoft.hztask.serialization.HzTaskDataSerializableFactory;
+
 /**
  * Message that signals the agent to shutdown
  *
@@ -12,4 +14,9 @@ public class ShutdownAgentOp extends AbstractAgentOp<Void> {
         getClusterAgentService().shutdown();
         return null;
     }
+
+    @Override
+    public int getId() {
+        return HzTaskDataSerializableFactory.SHUTDOWN_AGENT_OP;
+    }
 }
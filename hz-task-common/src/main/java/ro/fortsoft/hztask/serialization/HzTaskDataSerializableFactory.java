@@ -0,0 +1,117 @@
+package ro.fortsoft.hztask.serialization;
+
+import com.hazelcast.nio.serialization.DataSerializableFactory;
+import com.hazelcast.nio.serialization.IdentifiedDataSerializable;
+import ro.fortsoft.hztask.common.stream.ResultStreamRef;
+import ro.fortsoft.hztask.common.task.ScheduledTask;
+import ro.fortsoft.hztask.common.task.TaskCompletion;
+import ro.fortsoft.hztask.common.task.TaskDispatchState;
+import ro.fortsoft.hztask.common.task.TaskFailure;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.comparator.PriorityAndOldestTaskComparator;
+import ro.fortsoft.hztask.entryprocessor.AdvanceScheduledTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.ClaimTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.GetScheduledTaskDueDateEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.GetTaskDedupKeyEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.GetTaskDispatchStateEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.GetTaskOrderingEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.ProcessingStartedEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.ReclaimTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.RemoveTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.RetryTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.StealTaskEntryProcessor;
+import ro.fortsoft.hztask.op.GetMemberTypeClusterOp;
+import ro.fortsoft.hztask.op.NotifyMasterTaskFailedOp;
+import ro.fortsoft.hztask.op.NotifyMasterTaskFinishedOp;
+import ro.fortsoft.hztask.op.NotifyMasterTasksCompletedBatchOp;
+import ro.fortsoft.hztask.op.RenewTaskLeasesOp;
+import ro.fortsoft.hztask.op.agent.AnnounceMasterAndSignalStartWorkOp;
+import ro.fortsoft.hztask.op.agent.AskAgentReadyOp;
+import ro.fortsoft.hztask.op.agent.CancelTasksOp;
+import ro.fortsoft.hztask.op.agent.NotifyAgentTasksAssignedOp;
+import ro.fortsoft.hztask.op.agent.OutputDebugStatsOp;
+import ro.fortsoft.hztask.op.agent.ShutdownAgentOp;
+
+/**
+ * Factory for the framework's own {@link IdentifiedDataSerializable} types, which are serialized
+ * without the class descriptors of java serialization
+ *
+ * @author Serban Balamaci
+ */
+public class HzTaskDataSerializableFactory implements DataSerializableFactory {
+
+    public static final int FACTORY_ID = 1701;
+
+    public static final int TASK_KEY = 1;
+    public static final int TASK_COMPLETION = 2;
+    public static final int PRIORITY_AND_OLDEST_TASK_COMPARATOR = 3;
+    public static final int REMOVE_TASK_ENTRY_PROCESSOR = 4;
+    public static final int GET_TASK_ORDERING_ENTRY_PROCESSOR = 5;
+    public static final int CLAIM_TASK_ENTRY_PROCESSOR = 6;
+    public static final int STEAL_TASK_ENTRY_PROCESSOR = 7;
+    public static final int TASK_DISPATCH_STATE = 8;
+    public static final int GET_TASK_DISPATCH_STATE_ENTRY_PROCESSOR = 9;
+
+    public static final int GET_MEMBER_TYPE_OP = 10;
+    public static final int NOTIFY_MASTER_TASK_FINISHED_OP = 11;
+    public static final int NOTIFY_MASTER_TASK_FAILED_OP = 12;
+    public static final int NOTIFY_MASTER_TASKS_COMPLETED_BATCH_OP = 13;
+    public static final int RENEW_TASK_LEASES_OP = 14;
+
+    public static final int ASK_AGENT_READY_OP = 20;
+    public static final int ANNOUNCE_MASTER_OP = 21;
+    public static final int SHUTDOWN_AGENT_OP = 22;
+    public static final int OUTPUT_DEBUG_STATS_OP = 23;
+    public static final int NOTIFY_AGENT_TASKS_ASSIGNED_OP = 24;
+    public static final int CANCEL_TASKS_OP = 25;
+
+    public static final int RECLAIM_TASK_ENTRY_PROCESSOR = 30;
+    public static final int RETRY_TASK_ENTRY_PROCESSOR = 31;
+    public static final int SCHEDULED_TASK = 32;
+    public static final int GET_SCHEDULED_TASK_DUE_DATE_ENTRY_PROCESSOR = 33;
+    public static final int ADVANCE_SCHEDULED_TASK_ENTRY_PROCESSOR = 34;
+    public static final int TASK_FAILURE = 35;
+    public static final int RESULT_STREAM_REF = 36;
+    public static final int PROCESSING_STARTED_ENTRY_PROCESSOR = 37;
+    public static final int GET_TASK_DEDUP_KEY_ENTRY_PROCESSOR = 38;
+
+    @Override
+    public IdentifiedDataSerializable create(int typeId) {
+        switch (typeId) {
+            case TASK_KEY: return new TaskKey();
+            case TASK_COMPLETION: return new TaskCompletion();
+            case PRIORITY_AND_OLDEST_TASK_COMPARATOR: return new PriorityAndOldestTaskComparator();
+            case REMOVE_TASK_ENTRY_PROCESSOR: return new RemoveTaskEntryProcessor();
+            case GET_TASK_ORDERING_ENTRY_PROCESSOR: return new GetTaskOrderingEntryProcessor();
+            case CLAIM_TASK_ENTRY_PROCESSOR: return new ClaimTaskEntryProcessor();
+            case STEAL_TASK_ENTRY_PROCESSOR: return new StealTaskEntryProcessor();
+            case TASK_DISPATCH_STATE: return new TaskDispatchState();
+            case GET_TASK_DISPATCH_STATE_ENTRY_PROCESSOR: return new GetTaskDispatchStateEntryProcessor();
+
+            case GET_MEMBER_TYPE_OP: return new GetMemberTypeClusterOp();
+            case NOTIFY_MASTER_TASK_FINISHED_OP: return new NotifyMasterTaskFinishedOp();
+            case NOTIFY_MASTER_TASK_FAILED_OP: return new NotifyMasterTaskFailedOp();
+            case NOTIFY_MASTER_TASKS_COMPLETED_BATCH_OP: return new NotifyMasterTasksCompletedBatchOp();
+            case RENEW_TASK_LEASES_OP: return new RenewTaskLeasesOp();
+
+            case ASK_AGENT_READY_OP: return new AskAgentReadyOp();
+            case ANNOUNCE_MASTER_OP: return new AnnounceMasterAndSignalStartWorkOp();
+            case SHUTDOWN_AGENT_OP: return new ShutdownAgentOp();
+            case OUTPUT_DEBUG_STATS_OP: return new OutputDebugStatsOp();
+            case NOTIFY_AGENT_TASKS_ASSIGNED_OP: return new NotifyAgentTasksAssignedOp();
+            case CANCEL_TASKS_OP: return new CancelTasksOp();
+
+            case RECLAIM_TASK_ENTRY_PROCESSOR: return new ReclaimTaskEntryProcessor();
+            case RETRY_TASK_ENTRY_PROCESSOR: return new RetryTaskEntryProcessor();
+            case SCHEDULED_TASK: return new ScheduledTask();
+            case GET_SCHEDULED_TASK_DUE_DATE_ENTRY_PROCESSOR: return new GetScheduledTaskDueDateEntryProcessor();
+            case ADVANCE_SCHEDULED_TASK_ENTRY_PROCESSOR: return new AdvanceScheduledTaskEntryProcessor();
+            case TASK_FAILURE: return new TaskFailure();
+            case RESULT_STREAM_REF: return new ResultStreamRef();
+            case PROCESSING_STARTED_ENTRY_PROCESSOR: return new ProcessingStartedEntryProcessor();
+            case GET_TASK_DEDUP_KEY_ENTRY_PROCESSOR: return new GetTaskDedupKeyEntryProcessor();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package ro.fortsoft.hztask.serialization;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.SerializationConfig;
+import com.hazelcast.config.SerializerConfig;
+import ro.fortsoft.hztask.common.task.SerializedTaskLayout;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskStreamSerializer;
+
+/**
+ * Registers the framework's serializers, needs to be applied on the config of every cluster member
+ *
+ * @author Serban Balamaci
+ */
+public class SerializationConfigUtil {
+
+    public static Config addSerializationConfig(Config config) {
+        //the tasks are sorted on their serialized form, fail now if it's not the one expected
+        SerializedTaskLayout.verify();
+
+        SerializationConfig serializationConfig = config.getSerializationConfig();
+
+        serializationConfig.addDataSerializableFactory(HzTaskDataSerializableFactory.FACTORY_ID,
+                new HzTaskDataSerializableFactory());
+        serializationConfig.addSerializerConfig(new SerializerConfig()
+                .setTypeClass(Task.class)
+                .setImplementation(new TaskStreamSerializer()));
+
+        return config;
+    }
+
+}
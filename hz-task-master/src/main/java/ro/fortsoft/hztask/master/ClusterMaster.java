@@ -5,33 +5,45 @@ import com.hazelcast.config.Config;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.Member;
+import org.HdrHistogram.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.hztask.common.HzKeysConstants;
 import ro.fortsoft.hztask.common.MemberType;
 import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.master.dedup.RecentKeysFilter;
 import ro.fortsoft.hztask.master.event.membership.AgentMembershipSubscriber;
+import ro.fortsoft.hztask.master.event.membership.MasterLeftSubscriber;
 import ro.fortsoft.hztask.master.listener.ClusterMembershipListener;
+import ro.fortsoft.hztask.master.listener.StandbyMembershipListener;
 import ro.fortsoft.hztask.master.router.BalancedWorkloadRoutingStrategy;
 import ro.fortsoft.hztask.master.router.RoundRobinRoutingStrategy;
 import ro.fortsoft.hztask.master.router.RoutingStrategy;
 import ro.fortsoft.hztask.master.service.ClusterDistributionService;
 import ro.fortsoft.hztask.master.service.CommunicationService;
+import ro.fortsoft.hztask.master.service.DeadLetterService;
+import ro.fortsoft.hztask.master.service.ScheduledTasksService;
 import ro.fortsoft.hztask.master.service.TaskCompletionHandlerProvider;
+import ro.fortsoft.hztask.master.service.TaskLeaseKeeper;
 import ro.fortsoft.hztask.master.statistics.IStatisticsService;
 import ro.fortsoft.hztask.master.statistics.TaskTransition;
 import ro.fortsoft.hztask.master.statistics.TaskTransitionLogKeeper;
-import ro.fortsoft.hztask.master.statistics.codahale.CodahaleStatisticsService;
+import ro.fortsoft.hztask.master.statistics.adder.LongAdderStatisticsService;
+import ro.fortsoft.hztask.master.statistics.latency.LatencyPhase;
+import ro.fortsoft.hztask.master.statistics.latency.TaskLatencyTracker;
 import ro.fortsoft.hztask.master.topology.HazelcastTopologyService;
 import ro.fortsoft.hztask.master.util.ConfigUtil;
 
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -45,51 +57,142 @@ public class ClusterMaster {
     private final HazelcastInstance hzInstance;
 
     private final ClusterDistributionService clusterDistributionService;
+    private final ScheduledTasksService scheduledTasksService;
+    private final DeadLetterService deadLetterService;
     private HazelcastTopologyService hazelcastTopologyService;
+    private final CommunicationService communicationService;
 
     private final TaskTransitionLogKeeper taskTransitionLogKeeper = new TaskTransitionLogKeeper();
 
+    private final TaskLatencyTracker taskLatencyTracker = new TaskLatencyTracker();
+
     private AsyncEventBus eventBus = new AsyncEventBus(Executors.newCachedThreadPool());
 
     private ClusterMasterService clusterMasterService;
 
+    private final MasterConfig masterConfig;
+
+    /** true while waiting as standby for the active Master to leave **/
+    private volatile boolean standby;
+
+    private String standbyListenerId;
+
 
     public ClusterMaster(MasterConfig masterConfig, Config hazelcastConfig) {
         Config hzConfigWithInternal = ConfigUtil.addInternalConfig(hazelcastConfig, 1);
 
         hzInstance = Hazelcast.newHazelcastInstance(hzConfigWithInternal);
 
-        hzInstance.getUserContext().put(HzKeysConstants.USER_CONTEXT_MEMBER_TYPE, MemberType.MASTER);
+        this.masterConfig = masterConfig;
+        hzInstance.getUserContext().put(HzKeysConstants.USER_CONTEXT_MEMBER_TYPE, masterConfig.isStandby() ?
+                MemberType.STANDBY_MASTER : MemberType.MASTER);
 
-        CommunicationService communicationService = new CommunicationService(hzInstance);
+        communicationService = new CommunicationService(hzInstance);
         hazelcastTopologyService = new HazelcastTopologyService(hzInstance, eventBus, communicationService);
 
         clusterDistributionService = initClusterDistributionService(masterConfig);
+        scheduledTasksService = new ScheduledTasksService(clusterDistributionService);
+        deadLetterService = new DeadLetterService(clusterDistributionService, masterConfig.getDeadLetterMaxLostRuns());
+        if(masterConfig.isDeadLetterEnabled()) {
+            clusterDistributionService.setDeadLetterService(deadLetterService);
+        }
 
-        checkNoOtherMasterClusterAmongMembers();
+        TaskCompletionHandlerProvider taskCompletionHandlerProvider = new TaskCompletionHandlerProvider(masterConfig,
+                taskLatencyTracker, hzInstance);
+        clusterMasterService = new ClusterMasterService(clusterDistributionService,
+                communicationService, taskCompletionHandlerProvider);
+
+        Member activeMaster = findOtherMasterClusterAmongMembers();
+        if(activeMaster != null) {
+            startAsStandby(activeMaster);
+        } else {
+            startAsActiveMaster();
+        }
+//        clusterMasterService.startUnassignedTasksReschedulerThread();
+    }
+
+    /**
+     * Tasks might already be present in the cluster, left by a previous Master. They are taken over the same
+     * way whether this Master was a standby or not, the Agents keep running the tasks they were assigned.
+     */
+    private void startAsActiveMaster() {
+        activate();
+        clusterDistributionService.takeOverDispatchState();
+        clusterDistributionService.startTaskDispatcher();
+        startTaskRebalancer();
+        clusterDistributionService.startTaskLeaseExpiry();
+        scheduledTasksService.start();
 
         registerMembershipListener();
 
         registerAlreadyPresentAgents();
+    }
 
-        unassignAnyPreviousTasks();
+    /**
+     * Wait for the active Master to leave, following the dispatch state of the tasks in the meantime
+     * @param activeMaster the active Master
+     */
+    private void startAsStandby(Member activeMaster) {
+        log.info("Starting as standby of Master {}", activeMaster);
+        standby = true;
 
-        TaskCompletionHandlerProvider taskCompletionHandlerProvider = new TaskCompletionHandlerProvider(masterConfig);
-        clusterMasterService = new ClusterMasterService(clusterDistributionService,
-                communicationService, taskCompletionHandlerProvider);
+        //followed before the takeover can be triggered
+        clusterDistributionService.followDispatchState();
+
+        eventBus.register(new MasterLeftSubscriber(this::takeOver));
+        standbyListenerId = hzInstance.getCluster().addMembershipListener(
+                new StandbyMembershipListener(eventBus, activeMaster));
+
+        //the Master might have left before the listener was registered
+        if(! hzInstance.getCluster().getMembers().contains(activeMaster)) {
+            takeOver();
+        }
+    }
+
+    /**
+     * Become the active Master after the previous one left. The tasks already assigned to Agents
+     * are left running on them and only the tasks of members no longer in the cluster are unassigned,
+     * then the Agents are announced about the new Master.
+     */
+    private synchronized void takeOver() {
+        if(! standby) {
+            return;
+        }
+        log.info("Taking over as active Master");
+        standby = false;
+
+        hzInstance.getCluster().removeMembershipListener(standbyListenerId);
 
+        startAsActiveMaster();
+    }
+
+    private void activate() {
+        hzInstance.getUserContext().put(HzKeysConstants.USER_CONTEXT_MEMBER_TYPE, MemberType.MASTER);
         hzInstance.getUserContext().put(HzKeysConstants.USER_CONTEXT_CLUSTER_MASTER_SERVICE,
                 clusterMasterService);
-//        clusterMasterService.startUnassignedTasksReschedulerThread();
+    }
+
+    private void startTaskRebalancer() {
+        if(masterConfig.getTaskRebalancingIntervalMs() > 0) {
+            clusterDistributionService.startTaskRebalancer(masterConfig.getTaskRebalancingIntervalMs());
+        }
     }
 
     private ClusterDistributionService initClusterDistributionService(MasterConfig masterConfig) {
         ClusterDistributionService clusterDistributionService = new ClusterDistributionService(hazelcastTopologyService,
-                new CodahaleStatisticsService());
+                communicationService, new LongAdderStatisticsService());
 
         clusterDistributionService.setRoutingStrategy(getRoutingStrategy(masterConfig,
                 hazelcastTopologyService, clusterDistributionService.getStatisticsService()));
         clusterDistributionService.setTaskTransitionLogKeeper(taskTransitionLogKeeper);
+        clusterDistributionService.setTaskLatencyTracker(taskLatencyTracker);
+        clusterDistributionService.setTaskLeaseKeeper(new TaskLeaseKeeper(masterConfig.getTaskLeaseMs()));
+        clusterDistributionService.setRetryPolicies(masterConfig.getRetryPolicies());
+        clusterDistributionService.setDefaultRetryPolicy(masterConfig.getDefaultRetryPolicy());
+        if(masterConfig.getDedupExpectedKeys() > 0) {
+            clusterDistributionService.setRecentDedupKeys(new RecentKeysFilter(masterConfig.getDedupExpectedKeys(),
+                    masterConfig.getDedupFalsePositiveRate(), masterConfig.getDedupWindowMs()));
+        }
 
         return clusterDistributionService;
     }
@@ -97,9 +200,114 @@ public class ClusterMaster {
     /**
      * Offer a task for distribution to Agents
      * @param task task
+     * @return false if the task was dropped, a task with the same dedup key being already waiting or running
+     */
+    public boolean submitTask(Task task) {
+        checkNotStandby();
+        return clusterDistributionService.queueTask(task);
+    }
+
+    /**
+     * Offer tasks in bulk for distribution to Agents
+     * @param tasks tasks
+     * @return the number of tasks offered, without the ones dropped as duplicates
+     */
+    public long submitTasks(Collection<? extends Task> tasks) {
+        checkNotStandby();
+        return clusterDistributionService.queueTasks(tasks.iterator());
+    }
+
+    /**
+     * Offer tasks in bulk for distribution to Agents, the tasks are consumed from the iterator
+     * in batches so they don't need to be all in memory at once
+     * @param tasks tasks
+     * @return the number of tasks offered, without the ones dropped as duplicates
+     */
+    public long submitTasks(Iterator<? extends Task> tasks) {
+        checkNotStandby();
+        return clusterDistributionService.queueTasks(tasks);
+    }
+
+    /**
+     * Offer a task for distribution to Agents after a delay. The task is kept in the cluster until
+     * it's due, so it's not lost if the Master leaves
+     * @param task task
+     * @param delay how long to wait before submitting the task
+     * @param unit unit of the delay
+     * @return the id of the schedule, for cancelling it
      */
-    public void submitTask(Task task) {
-        clusterDistributionService.queueTask(task);
+    public String submitTask(Task task, long delay, TimeUnit unit) {
+        checkNotStandby();
+        return scheduledTasksService.schedule(task, unit.toMillis(delay));
+    }
+
+    /**
+     * Offer a task for distribution to Agents repeatedly, every run being a copy of the task with its own id.
+     * Runs missed while there was no active Master are not caught up, the schedule continues with the next one
+     * @param task task
+     * @param initialDelay how long to wait before the first run
+     * @param period time between two runs
+     * @param unit unit of the delay and period
+     * @return the id of the schedule, for cancelling it
+     */
+    public String submitTaskAtFixedRate(Task task, long initialDelay, long period, TimeUnit unit) {
+        checkNotStandby();
+        return scheduledTasksService.scheduleAtFixedRate(task, unit.toMillis(initialDelay), unit.toMillis(period));
+    }
+
+    /**
+     * Cancel a task submitted with a delay or at a fixed rate, the runs already submitted are not affected
+     * @param scheduleId id returned when the task was submitted
+     * @return false if there was no such schedule(the task submitted with a delay was already due)
+     */
+    public boolean cancelScheduledTask(String scheduleId) {
+        checkNotStandby();
+        return scheduledTasksService.cancel(scheduleId);
+    }
+
+    /**
+     * @param predicate the tasks to return, on the attributes of the tasks(ex. Predicates.equal("taskType", ..))
+     * @return the tasks in the dead letter store, with the summaries of their failures
+     */
+    public Collection<Task> getDeadLetterTasks(com.hazelcast.query.Predicate predicate) {
+        return deadLetterService.getTasks(predicate);
+    }
+
+    public int getDeadLetterTasksCount() {
+        return deadLetterService.getTasksCount();
+    }
+
+    /**
+     * Remove tasks from the dead letter store
+     * @param predicate the tasks to remove, on the attributes of the tasks
+     * @return the number of removed tasks
+     */
+    public int purgeDeadLetterTasks(com.hazelcast.query.Predicate predicate) {
+        checkNotStandby();
+        return deadLetterService.purge(predicate);
+    }
+
+    /**
+     * Offer again for distribution tasks from the dead letter store, as if they were never tried
+     * @param predicate the tasks to requeue, on the attributes of the tasks
+     * @return the number of requeued tasks
+     */
+    public int requeueDeadLetterTasks(com.hazelcast.query.Predicate predicate) {
+        checkNotStandby();
+        return deadLetterService.requeue(predicate);
+    }
+
+    private void checkNotStandby() {
+        if(standby) {
+            throw new IllegalStateException("Standby Master does not accept tasks until it takes over");
+        }
+    }
+
+    /**
+     * @return true if waiting as standby for the active Master to leave
+     */
+    public boolean isStandby() {
+        return standby;
     }
 
     /**
@@ -128,14 +336,35 @@ public class ClusterMaster {
     }
 
 
-    private void checkNoOtherMasterClusterAmongMembers() {
-        if(hazelcastTopologyService.isMasterAmongClusterMembers()) {
+    /**
+     * @return the active Master if there is one and this Master is configured as standby, null if there's
+     * no other Master
+     */
+    private Member findOtherMasterClusterAmongMembers() {
+        com.google.common.base.Optional<Member> activeMaster =
+                hazelcastTopologyService.findMemberOfType(MemberType.MASTER);
+        if(! activeMaster.isPresent()) {
+            return null;
+        }
+
+        if(! masterConfig.isStandby()) {
             hzInstance.shutdown();
             throw new RuntimeException("Another Master is already started");
         }
+        if(hazelcastTopologyService.findMemberOfType(MemberType.STANDBY_MASTER).isPresent()) {
+            hzInstance.shutdown();
+            throw new RuntimeException("Another standby Master is already started");
+        }
+        return activeMaster.get();
     }
 
-    public void shutdown() {
+    public synchronized void shutdown() {
+        if(standby) { //the Agents belong to the active Master
+            standby = false;
+            hzInstance.shutdown();
+            return;
+        }
+        scheduledTasksService.shutdown();
         clusterMasterService.shutdown();
     }
 
@@ -174,11 +403,34 @@ public class ClusterMaster {
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
     }
 
-    private void unassignAnyPreviousTasks() {
-        //TODO with HZ3.3 change it to highest value retrieved by Aggregate
-        long latestTaskCounter = System.currentTimeMillis();
-        clusterDistributionService.setLatestTaskCounter(latestTaskCounter);
-        clusterDistributionService.unassignOlderTasks(latestTaskCounter);
+    /**
+     * Latencies in microseconds of a phase of the tasks lifecycle
+     *
+     * @param phase lifecycle phase
+     * @param taskType task type as returned by {@link Task#getTaskType()}
+     * @param agentUuid the Agent the tasks were assigned to
+     * @return a copy of the recorded latencies
+     */
+    public Histogram getLatencyHistogram(LatencyPhase phase, String taskType, String agentUuid) {
+        return taskLatencyTracker.getHistogram(phase, taskType, agentUuid);
+    }
+
+    /**
+     * Latencies in microseconds of a phase of the tasks lifecycle, on all the Agents
+     *
+     * @param phase lifecycle phase
+     * @param taskType task type as returned by {@link Task#getTaskType()}
+     * @return a copy of the recorded latencies
+     */
+    public Histogram getLatencyHistogram(LatencyPhase phase, String taskType) {
+        return taskLatencyTracker.getHistogram(phase, taskType);
+    }
+
+    /**
+     * @return the task types for which latencies were recorded in the phase
+     */
+    public Set<String> getLatencyTaskTypes(LatencyPhase phase) {
+        return taskLatencyTracker.getTaskTypes(phase);
     }
 
     /**
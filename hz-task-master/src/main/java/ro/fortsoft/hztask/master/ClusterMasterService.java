@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.hztask.cluster.IClusterMasterService;
 import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskCompletion;
 import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.master.service.ClusterDistributionService;
 import ro.fortsoft.hztask.master.service.CommunicationService;
@@ -14,6 +15,8 @@ import ro.fortsoft.hztask.master.util.NamesUtil;
 
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Serban Balamaci
@@ -39,6 +42,10 @@ public class ClusterMasterService implements IClusterMasterService {
         log.info("Task with id {} finished on {}", taskKey.getTaskId(),
                 NamesUtil.toLogFormat(agentUuid));
         Task task = clusterDistributionService.finishedTask(taskKey, agentUuid, false);
+        if(task == null) {
+            taskCompletionHandlerProvider.discardResult(response);
+            return;
+        }
 
         taskCompletionHandlerProvider.onSuccess(task, response);
     }
@@ -47,11 +54,43 @@ public class ClusterMasterService implements IClusterMasterService {
     public void handleFailedTask(TaskKey taskKey, Throwable exception, String agentUuid) {
         log.info("Task with id {} failed on {}", taskKey.getTaskId(),
                 NamesUtil.toLogFormat(agentUuid));
+        if(clusterDistributionService.retryFailedTask(taskKey, exception, agentUuid)) {
+            return;
+        }
         Task task = clusterDistributionService.finishedTask(taskKey, agentUuid, true);
+        if(task == null) {
+            return;
+        }
 
         taskCompletionHandlerProvider.onFail(task, exception);
     }
 
+    @Override
+    public void handleCompletedTasks(List<TaskCompletion> completions, String agentUuid, int agentCapacity) {
+        log.info("{} tasks finished on {}", completions.size(), NamesUtil.toLogFormat(agentUuid));
+        Map<TaskKey, Task> finishedTasks = clusterDistributionService.finishedTasks(completions, agentUuid,
+                agentCapacity);
+
+        for(TaskCompletion completion : completions) {
+            Task task = finishedTasks.get(completion.getTaskKey());
+            if(task == null) {
+                taskCompletionHandlerProvider.discardResult(completion.getResult());
+                continue;
+            }
+
+            if(completion.isFailed()) {
+                taskCompletionHandlerProvider.onFail(task, completion.getException());
+            } else {
+                taskCompletionHandlerProvider.onSuccess(task, completion.getResult());
+            }
+        }
+    }
+
+    @Override
+    public void renewTaskLeases(List<TaskKey> taskKeys, String agentUuid) {
+        clusterDistributionService.renewTaskLeases(taskKeys, agentUuid);
+    }
+
     /**
      * shutdown master and agents
      */
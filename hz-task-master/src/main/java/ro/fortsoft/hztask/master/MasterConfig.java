@@ -1,6 +1,7 @@
 package ro.fortsoft.hztask.master;
 
 import ro.fortsoft.hztask.master.handler.TaskCompletionHandlerFactory;
+import ro.fortsoft.hztask.master.retry.RetryPolicy;
 import ro.fortsoft.hztask.master.router.RoutingStrategy;
 
 import java.util.HashMap;
@@ -17,6 +18,40 @@ public class MasterConfig {
 
     private Map<Class, TaskCompletionHandlerFactory> finishedTaskListeners = new HashMap<>();
 
+    /** how often not started tasks are moved between Agents to even out their backlogs, 0 to disable **/
+    private long taskRebalancingIntervalMs = 5000;
+
+    /** start as standby if there is already an active Master, instead of refusing to start **/
+    private boolean standby = false;
+
+    /** tasks whose lease the Agent did not renew for this long are taken back and reassigned, 0 to disable.
+     * Should be a few times the lease renew interval of the Agents **/
+    private long taskLeaseMs = 60000;
+
+    /** how the failed tasks of a type are retried before being handed to the TaskCompletionHandler **/
+    private Map<Class, RetryPolicy> retryPolicies = new HashMap<>();
+
+    /** for the task types without a registered RetryPolicy, if not set their failed tasks are not retried **/
+    private RetryPolicy defaultRetryPolicy;
+
+    /** quarantine in the dead letter store the tasks which used up their RetryPolicy tries or lost too many runs,
+     * instead of handing them to the TaskCompletionHandler **/
+    private boolean deadLetterEnabled = false;
+
+    /** number of runs a task can lose(taken back while running, from an Agent that left or stopped renewing
+     * its lease) before it's moved to the dead letter store **/
+    private int deadLetterMaxLostRuns = 3;
+
+    /** submitted tasks whose dedup key matches a task still waiting or running are dropped, 0 to disable.
+     * The number of keys remembered in half the dedup window, sizing the memory taken **/
+    private int dedupExpectedKeys = 0;
+
+    /** rate of keys seen for the first time that need checking against the tasks waiting or running **/
+    private double dedupFalsePositiveRate = 0.01;
+
+    /** how long the dedup keys are remembered, tasks waiting longer might not be deduplicated against **/
+    private long dedupWindowMs = 3600000;
+
     public void registerFinishedTaskCompletionListenerFactory(Class taskClass,
                                                      TaskCompletionHandlerFactory taskCompletionHandlerFactory) {
         finishedTaskListeners.put(taskClass, taskCompletionHandlerFactory);
@@ -41,4 +76,84 @@ public class MasterConfig {
     public RoutingStrategy.Type getRoutingStrategy() {
         return routingStrategy;
     }
+
+    public long getTaskRebalancingIntervalMs() {
+        return taskRebalancingIntervalMs;
+    }
+
+    public void setTaskRebalancingIntervalMs(long taskRebalancingIntervalMs) {
+        this.taskRebalancingIntervalMs = taskRebalancingIntervalMs;
+    }
+
+    public boolean isStandby() {
+        return standby;
+    }
+
+    public void setStandby(boolean standby) {
+        this.standby = standby;
+    }
+
+    public long getTaskLeaseMs() {
+        return taskLeaseMs;
+    }
+
+    public void setTaskLeaseMs(long taskLeaseMs) {
+        this.taskLeaseMs = taskLeaseMs;
+    }
+
+    public void registerRetryPolicy(Class taskClass, RetryPolicy retryPolicy) {
+        retryPolicies.put(taskClass, retryPolicy);
+    }
+
+    public Map<Class, RetryPolicy> getRetryPolicies() {
+        return retryPolicies;
+    }
+
+    public RetryPolicy getDefaultRetryPolicy() {
+        return defaultRetryPolicy;
+    }
+
+    public void setDefaultRetryPolicy(RetryPolicy defaultRetryPolicy) {
+        this.defaultRetryPolicy = defaultRetryPolicy;
+    }
+
+    public boolean isDeadLetterEnabled() {
+        return deadLetterEnabled;
+    }
+
+    public void setDeadLetterEnabled(boolean deadLetterEnabled) {
+        this.deadLetterEnabled = deadLetterEnabled;
+    }
+
+    public int getDeadLetterMaxLostRuns() {
+        return deadLetterMaxLostRuns;
+    }
+
+    public void setDeadLetterMaxLostRuns(int deadLetterMaxLostRuns) {
+        this.deadLetterMaxLostRuns = deadLetterMaxLostRuns;
+    }
+
+    public int getDedupExpectedKeys() {
+        return dedupExpectedKeys;
+    }
+
+    public void setDedupExpectedKeys(int dedupExpectedKeys) {
+        this.dedupExpectedKeys = dedupExpectedKeys;
+    }
+
+    public double getDedupFalsePositiveRate() {
+        return dedupFalsePositiveRate;
+    }
+
+    public void setDedupFalsePositiveRate(double dedupFalsePositiveRate) {
+        this.dedupFalsePositiveRate = dedupFalsePositiveRate;
+    }
+
+    public long getDedupWindowMs() {
+        return dedupWindowMs;
+    }
+
+    public void setDedupWindowMs(long dedupWindowMs) {
+        this.dedupWindowMs = dedupWindowMs;
+    }
 }
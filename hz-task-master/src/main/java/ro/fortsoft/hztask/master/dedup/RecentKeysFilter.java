@@ -0,0 +1,97 @@
+package ro.fortsoft.hztask.master.dedup;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+/**
+ * Remembers, with a bounded amount of memory, the keys seen recently. A key never seen is always
+ * reported as such, a key seen might be reported as not seen once it's older than the window,
+ * and a few keys never seen are reported as seen(at the false positive rate).
+ *
+ * Keys are added to the current of two Bloom filters, which becomes the previous one when it's
+ * half the window old or holds the number of keys it was sized for, the old previous being dropped.
+ * So keys are remembered for at least half the window, less if more keys come in than expected.
+ *
+ * @author Serban Balamaci
+ */
+public class RecentKeysFilter {
+
+    private final int expectedKeys;
+
+    private final double falsePositiveRate;
+
+    private final long windowMillis;
+
+    private BloomFilter<CharSequence> current;
+    private BloomFilter<CharSequence> previous;
+
+    private int currentKeys;
+    private long currentCreationDate;
+
+    /**
+     * @param expectedKeys number of keys expected in half the window, a filter takes
+     *                     about 10 bits per key for a 1% false positive rate
+     * @param falsePositiveRate rate of keys never seen reported as seen
+     * @param windowMillis how long the keys are remembered
+     */
+    public RecentKeysFilter(int expectedKeys, double falsePositiveRate, long windowMillis) {
+        this.expectedKeys = expectedKeys;
+        this.falsePositiveRate = falsePositiveRate;
+        this.windowMillis = windowMillis;
+
+        this.current = newFilter();
+        this.previous = newFilter();
+        this.currentCreationDate = System.currentTimeMillis();
+    }
+
+    /**
+     * Records the key as seen
+     * @return true if the key might have been seen before, false if it certainly wasn't
+     */
+    public synchronized boolean checkAndAdd(String key) {
+        rotateIfNeeded();
+
+        boolean mightHaveSeen = current.mightContain(key) || previous.mightContain(key);
+        if(current.put(key)) {
+            currentKeys++;
+        }
+        return mightHaveSeen;
+    }
+
+    /**
+     * Records the key as seen, for the keys known from elsewhere, like the tasks already in the cluster
+     */
+    public synchronized void add(String key) {
+        rotateIfNeeded();
+
+        if(current.put(key)) {
+            currentKeys++;
+        }
+    }
+
+    private void rotateIfNeeded() {
+        long now = System.currentTimeMillis();
+        if(currentKeys >= expectedKeys || now - currentCreationDate >= windowMillis / 2) {
+            previous = current;
+            current = newFilter();
+            currentKeys = 0;
+            currentCreationDate = now;
+        }
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(Funnels.stringFunnel(Charsets.UTF_8), expectedKeys, falsePositiveRate);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Objects.toStringHelper(this)
+                .add("expectedKeys", expectedKeys)
+                .add("falsePositiveRate", falsePositiveRate)
+                .add("windowMillis", windowMillis)
+                .add("currentKeys", currentKeys)
+                .toString();
+    }
+}
@@ -0,0 +1,26 @@
+package ro.fortsoft.hztask.master.event.membership;
+
+import com.hazelcast.core.Member;
+
+/**
+ * @author Serban Balamaci
+ */
+public class AgentCapacityChangedEvent {
+
+    private final Member member;
+
+    private final int capacity;
+
+    public AgentCapacityChangedEvent(Member member, int capacity) {
+        this.member = member;
+        this.capacity = capacity;
+    }
+
+    public Member getMember() {
+        return member;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -29,13 +29,19 @@ public class AgentMembershipSubscriber {
     @Subscribe
     public void agentJoined(AgentJoinedEvent event) {
         hazelcastTopologyService.addAgent(event.getMember());
-        clusterDistributionService.startTaskDistributionThread();
+        clusterDistributionService.agentJoined(event.getMember());
+    }
+
+    @Subscribe
+    public void agentCapacityChanged(AgentCapacityChangedEvent event) {
+        clusterDistributionService.agentCapacityChanged(event.getMember(), event.getCapacity());
     }
 
     @Subscribe
     public void agentLeft(AgentLeftEvent event) {
         Member agent = event.getMember();
         hazelcastTopologyService.removeAgent(agent);
+        clusterDistributionService.agentLeft(agent);
         AgentLeftTaskRescheduler agentLeftTaskRescheduler =
                 new AgentLeftTaskRescheduler(agent, clusterDistributionService);
         agentLeftTaskRescheduler.start();
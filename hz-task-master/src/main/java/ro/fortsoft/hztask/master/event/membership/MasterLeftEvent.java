@@ -0,0 +1,21 @@
+package ro.fortsoft.hztask.master.event.membership;
+
+import com.hazelcast.core.Member;
+
+/**
+ * The active Master left the cluster, posted on a standby Master
+ *
+ * @author Serban Balamaci
+ */
+public class MasterLeftEvent {
+
+    private final Member member;
+
+    public MasterLeftEvent(Member member) {
+        this.member = member;
+    }
+
+    public Member getMember() {
+        return member;
+    }
+}
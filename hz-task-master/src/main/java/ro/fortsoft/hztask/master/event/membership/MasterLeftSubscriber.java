@@ -0,0 +1,22 @@
+package ro.fortsoft.hztask.master.event.membership;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Subscriber of a standby Master, triggers the take over when the active Master left
+ *
+ * @author Serban Balamaci
+ */
+public class MasterLeftSubscriber {
+
+    private final Runnable takeOver;
+
+    public MasterLeftSubscriber(Runnable takeOver) {
+        this.takeOver = takeOver;
+    }
+
+    @Subscribe
+    public void masterLeft(MasterLeftEvent event) {
+        takeOver.run();
+    }
+}
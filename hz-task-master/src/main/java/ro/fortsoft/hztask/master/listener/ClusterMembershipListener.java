@@ -6,6 +6,8 @@ import com.hazelcast.core.MembershipEvent;
 import com.hazelcast.core.MembershipListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.master.event.membership.AgentCapacityChangedEvent;
 import ro.fortsoft.hztask.master.event.membership.AgentLeftEvent;
 import ro.fortsoft.hztask.master.event.membership.MemberJoinedEvent;
 
@@ -36,7 +38,11 @@ public class ClusterMembershipListener implements MembershipListener {
 
     @Override
     public void memberAttributeChanged(MemberAttributeEvent memberAttributeEvent) {
-
+        if(HzKeysConstants.AGENT_CAPACITY_PROPERTY.equals(memberAttributeEvent.getKey())
+                && memberAttributeEvent.getValue() instanceof Integer) {
+            eventBus.post(new AgentCapacityChangedEvent(memberAttributeEvent.getMember(),
+                    (Integer) memberAttributeEvent.getValue()));
+        }
     }
 
 
@@ -0,0 +1,46 @@
+package ro.fortsoft.hztask.master.listener;
+
+import com.google.common.eventbus.EventBus;
+import com.hazelcast.core.Member;
+import com.hazelcast.core.MemberAttributeEvent;
+import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.core.MembershipListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.master.event.membership.MasterLeftEvent;
+
+/**
+ * Listener of a standby Master, watching for the active Master to leave
+ *
+ * @author Serban Balamaci
+ */
+public class StandbyMembershipListener implements MembershipListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StandbyMembershipListener.class);
+
+    private final EventBus eventBus;
+
+    private final Member activeMaster;
+
+    public StandbyMembershipListener(EventBus eventBus, Member activeMaster) {
+        this.eventBus = eventBus;
+        this.activeMaster = activeMaster;
+    }
+
+    @Override
+    public void memberAdded(MembershipEvent membershipEvent) {
+    }
+
+    @Override
+    public void memberRemoved(MembershipEvent membershipEvent) {
+        if(activeMaster.equals(membershipEvent.getMember())) {
+            LOG.info("Active Master {} left the cluster", membershipEvent.getMember());
+            eventBus.post(new MasterLeftEvent(membershipEvent.getMember()));
+        }
+    }
+
+    @Override
+    public void memberAttributeChanged(MemberAttributeEvent memberAttributeEvent) {
+
+    }
+}
@@ -0,0 +1,111 @@
+package ro.fortsoft.hztask.master.retry;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the failed tasks of a type are retried: how many times they are tried in all, how long to wait
+ * before each retry and which failures are worth retrying.
+ *
+ * The wait doubles(by default) with every try, up to a maximum, and is randomized in its upper half
+ * so that tasks failing together, like on an outage of a resource they share, don't all retry
+ * at the same time.
+ *
+ * @author Serban Balamaci
+ */
+public class RetryPolicy {
+
+    private final int maxAttempts;
+
+    private final long initialBackoffMs;
+
+    private final long maxBackoffMs;
+
+    private double backoffMultiplier = 2;
+
+    /** failures retried, if empty any failure is retried **/
+    private final List<Class<? extends Throwable>> retriableExceptions = new ArrayList<>();
+
+    /**
+     * @param maxAttempts how many times a task is tried in all, including the first
+     * @param initialBackoffMs wait before the first retry
+     * @param maxBackoffMs maximum wait before a retry
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMs, long maxBackoffMs) {
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    /**
+     * Retry only the failures caused by this exception or its subclasses, can be called for more exceptions
+     */
+    public RetryPolicy retryOn(Class<? extends Throwable> exceptionClass) {
+        retriableExceptions.add(exceptionClass);
+        return this;
+    }
+
+    public RetryPolicy setBackoffMultiplier(double backoffMultiplier) {
+        this.backoffMultiplier = backoffMultiplier;
+        return this;
+    }
+
+    /**
+     * @param exception the failure
+     * @param nrOfTries times the task was already retried
+     * @return true if the task should be tried again
+     */
+    public boolean shouldRetry(Throwable exception, int nrOfTries) {
+        return nrOfTries + 1 < maxAttempts && isRetriable(exception);
+    }
+
+    /**
+     * @param exception the failure
+     * @return true if the failure is one worth retrying, regardless of the tries left
+     */
+    public boolean isRetriable(Throwable exception) {
+        if(retriableExceptions.isEmpty()) {
+            return true;
+        }
+        if(exception == null) {
+            return false;
+        }
+        for(Throwable cause : Throwables.getCausalChain(exception)) {
+            for(Class<? extends Throwable> retriableException : retriableExceptions) {
+                if(retriableException.isInstance(cause)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param nrOfTries times the task was already retried
+     * @return how long to wait before trying the task again
+     */
+    public long getBackoffMillis(int nrOfTries) {
+        double backoff = Math.min(maxBackoffMs, initialBackoffMs * Math.pow(backoffMultiplier, nrOfTries));
+        long half = (long) (backoff / 2);
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("maxAttempts", maxAttempts)
+                .add("initialBackoffMs", initialBackoffMs)
+                .add("maxBackoffMs", maxBackoffMs)
+                .add("backoffMultiplier", backoffMultiplier)
+                .add("retriableExceptions", retriableExceptions)
+                .toString();
+    }
+}
@@ -9,6 +9,8 @@ import ro.fortsoft.hztask.master.topology.HazelcastTopologyService;
 import ro.fortsoft.hztask.master.statistics.IStatisticsService;
 import ro.fortsoft.hztask.master.util.NamesUtil;
 
+import java.util.Collection;
+
 /**
  *
  *
@@ -30,10 +32,15 @@ public class BalancedWorkloadRoutingStrategy implements RoutingStrategy {
 
     @Override
     public Optional<Member> getMemberToRunOn(Task task) {
+        return getMemberToRunOn(task, hazelcastTopologyService.getAgentsCopy());
+    }
+
+    @Override
+    public Optional<Member> getMemberToRunOn(Task task, Collection<Member> candidates) {
         double min = Integer.MAX_VALUE;
         Optional<Member> nextMember = Optional.absent();
 
-        for(Member member : hazelcastTopologyService.getAgentsCopy()) {
+        for(Member member : candidates) {
             String memberUuid = member.getUuid();
             long tasksOfSameTypeSubmitted = statisticsService.
                     getSubmittedTasks(task.getTaskType(), memberUuid);
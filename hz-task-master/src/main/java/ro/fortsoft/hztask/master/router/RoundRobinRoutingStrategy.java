@@ -1,10 +1,13 @@
 package ro.fortsoft.hztask.master.router;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.Iterables;
 import com.hazelcast.core.Member;
 import ro.fortsoft.hztask.common.task.Task;
 import ro.fortsoft.hztask.master.topology.HazelcastTopologyService;
 
+import java.util.Collection;
+
 /**
  * @author Serban Balamaci
  */
@@ -19,8 +22,13 @@ public class RoundRobinRoutingStrategy implements RoutingStrategy {
     }
 
     @Override
-    public synchronized Optional<Member> getMemberToRunOn(Task task) {
-        int numberOfAgents = hazelcastTopologyService.getAgentsCount();
+    public Optional<Member> getMemberToRunOn(Task task) {
+        return getMemberToRunOn(task, hazelcastTopologyService.getAgentsCopy());
+    }
+
+    @Override
+    public synchronized Optional<Member> getMemberToRunOn(Task task, Collection<Member> candidates) {
+        int numberOfAgents = candidates.size();
         if(numberOfAgents == 0) {
             return Optional.absent();
         }
@@ -28,6 +36,6 @@ public class RoundRobinRoutingStrategy implements RoutingStrategy {
         roundRobinCounter ++;
         roundRobinCounter = roundRobinCounter % numberOfAgents;
 
-        return Optional.of(hazelcastTopologyService.getAgentsCopy().get(roundRobinCounter));
+        return Optional.of(Iterables.get(candidates, roundRobinCounter));
     }
 }
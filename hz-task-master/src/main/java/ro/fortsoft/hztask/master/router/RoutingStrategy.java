@@ -4,6 +4,8 @@ import com.google.common.base.Optional;
 import com.hazelcast.core.Member;
 import ro.fortsoft.hztask.common.task.Task;
 
+import java.util.Collection;
+
 /**
  * Generic interface for implementing different strategies of assigning
  * next task to a cluster member
@@ -25,4 +27,12 @@ public interface RoutingStrategy {
      */
     public Optional<Member> getMemberToRunOn(Task task);
 
+    /**
+     * Picks a cluster member on which to run the task among the candidates
+     * @param task task
+     * @param candidates the members that can accept the task
+     * @return cluster member
+     */
+    public Optional<Member> getMemberToRunOn(Task task, Collection<Member> candidates);
+
 }
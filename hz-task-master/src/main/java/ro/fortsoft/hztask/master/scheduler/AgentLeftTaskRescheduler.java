@@ -30,6 +30,9 @@ public class AgentLeftTaskRescheduler extends Thread {
              clusterDistributionService.rescheduleAgentTasks(member.getUuid());
         } catch (Exception e) {
             log.error("Error rescheduling tasks", e);
+        } finally {
+            clusterDistributionService.getStatisticsService().removeAgent(member.getUuid());
+            clusterDistributionService.getTaskLatencyTracker().removeAgent(member.getUuid());
         }
     }
 
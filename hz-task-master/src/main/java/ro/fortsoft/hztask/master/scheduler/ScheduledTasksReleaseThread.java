@@ -0,0 +1,47 @@
+package ro.fortsoft.hztask.master.scheduler;
+
+import com.hazelcast.core.HazelcastInstanceNotActiveException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.master.service.ScheduledTasksService;
+
+/**
+ * Submits for distribution the scheduled tasks as they become due
+ *
+ * @author Serban Balamaci
+ */
+public class ScheduledTasksReleaseThread extends Thread {
+
+    private final ScheduledTasksService scheduledTasksService;
+
+    private final long tickMs;
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledTasksReleaseThread.class);
+
+    public ScheduledTasksReleaseThread(ScheduledTasksService scheduledTasksService, long tickMs) {
+        setName("Scheduled tasks release");
+        setDaemon(true);
+
+        this.scheduledTasksService = scheduledTasksService;
+        this.tickMs = tickMs;
+    }
+
+    @Override
+    public void run() {
+        while (! scheduledTasksService.isShuttingDown()) {
+            try {
+                Thread.sleep(tickMs);
+
+                int releasedTasks = scheduledTasksService.releaseDueTasks();
+                if(releasedTasks > 0) {
+                    log.info("Submitted {} scheduled tasks", releasedTasks);
+                }
+            } catch (InterruptedException | HazelcastInstanceNotActiveException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Error submitting the scheduled tasks", e);
+            }
+        }
+        log.info("Scheduled tasks release thread terminated");
+    }
+}
@@ -0,0 +1,46 @@
+package ro.fortsoft.hztask.master.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.master.service.ClusterDistributionService;
+
+/**
+ * Takes back the tasks whose leases ran out, once every tick of the lease wheel
+ *
+ * @author Serban Balamaci
+ */
+public class TaskLeaseExpiryThread extends Thread {
+
+    private final ClusterDistributionService clusterDistributionService;
+
+    private final long tickMillis;
+
+    private static final Logger log = LoggerFactory.getLogger(TaskLeaseExpiryThread.class);
+
+    public TaskLeaseExpiryThread(ClusterDistributionService clusterDistributionService, long tickMillis) {
+        setName("Task lease expiry");
+        setDaemon(true);
+
+        this.clusterDistributionService = clusterDistributionService;
+        this.tickMillis = tickMillis;
+    }
+
+    @Override
+    public void run() {
+        while (! clusterDistributionService.isShuttingDown()) {
+            try {
+                Thread.sleep(tickMillis);
+
+                int reclaimedTasks = clusterDistributionService.reclaimExpiredTasks();
+                if(reclaimedTasks > 0) {
+                    log.info("Took back {} tasks with expired leases", reclaimedTasks);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Error taking back tasks with expired leases", e);
+            }
+        }
+        log.info("Task lease expiry thread terminated");
+    }
+}
@@ -0,0 +1,39 @@
+package ro.fortsoft.hztask.master.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.master.service.ClusterDistributionService;
+
+/**
+ * Moves the failed tasks into the retry lane as their retries become due
+ *
+ * @author Serban Balamaci
+ */
+public class TaskRetryThread extends Thread {
+
+    private final ClusterDistributionService clusterDistributionService;
+
+    private static final Logger log = LoggerFactory.getLogger(TaskRetryThread.class);
+
+    public TaskRetryThread(ClusterDistributionService clusterDistributionService) {
+        setName("Task retry");
+        setDaemon(true);
+
+        this.clusterDistributionService = clusterDistributionService;
+    }
+
+    @Override
+    public void run() {
+        while (! clusterDistributionService.isShuttingDown()) {
+            try {
+                int dueRetries = clusterDistributionService.releaseDueRetries();
+                log.debug("{} task retries are due", dueRetries);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Error releasing the task retries", e);
+            }
+        }
+        log.info("Task retry thread terminated");
+    }
+}
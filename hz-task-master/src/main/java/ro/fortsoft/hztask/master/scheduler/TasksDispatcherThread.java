@@ -0,0 +1,84 @@
+package ro.fortsoft.hztask.master.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.master.service.ClusterDistributionService;
+
+/**
+ * Long lived thread that assigns the unassigned tasks to the Agents that have credits.
+ * It sleeps until signaled that there might be something to dispatch(new tasks submitted,
+ * Agents finished tasks and got credits back, new Agents joined) and then dispatches until
+ * either there are no unassigned tasks or no credits left.
+ *
+ * @author Serban Balamaci
+ */
+public class TasksDispatcherThread extends Thread {
+
+    private final ClusterDistributionService clusterDistributionService;
+
+    private final Object signalLock = new Object();
+
+    private boolean signaled;
+
+    private volatile boolean shuttingDown = false;
+
+    /** maximum number of tasks assigned in one round **/
+    private static final int MAX_DISPATCH_BATCH_SIZE = 500;
+
+    /** wake up from time to time even without signals, in case one was missed **/
+    private static final long IDLE_WAKEUP_MS = 5000;
+
+    private static final Logger log = LoggerFactory.getLogger(TasksDispatcherThread.class);
+
+    public TasksDispatcherThread(ClusterDistributionService clusterDistributionService) {
+        setName("Task dispatcher");
+        setDaemon(true);
+
+        this.clusterDistributionService = clusterDistributionService;
+    }
+
+    @Override
+    public void run() {
+        log.info("Started Task dispatcher thread");
+
+        while (! shuttingDown) {
+            try {
+                awaitSignal();
+
+                int dispatched;
+                do {
+                    dispatched = clusterDistributionService.rescheduleUnassignedTasks(MAX_DISPATCH_BATCH_SIZE);
+                } while (dispatched > 0 && ! shuttingDown);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Error encountered during task distribution", e);
+            }
+        }
+        log.info("Task dispatcher thread terminated");
+    }
+
+    private void awaitSignal() throws InterruptedException {
+        synchronized (signalLock) {
+            if(! signaled) {
+                signalLock.wait(IDLE_WAKEUP_MS);
+            }
+            signaled = false;
+        }
+    }
+
+    /**
+     * Wake up the dispatcher, there might be tasks to dispatch
+     */
+    public void signal() {
+        synchronized (signalLock) {
+            signaled = true;
+            signalLock.notify();
+        }
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+        interrupt();
+    }
+}
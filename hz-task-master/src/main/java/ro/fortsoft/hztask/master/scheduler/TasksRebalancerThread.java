@@ -0,0 +1,47 @@
+package ro.fortsoft.hztask.master.scheduler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.master.service.ClusterDistributionService;
+
+/**
+ * Periodically moves the tasks that were not yet started from the Agents with large backlogs
+ * to the idle ones
+ *
+ * @author Serban Balamaci
+ */
+public class TasksRebalancerThread extends Thread {
+
+    private final ClusterDistributionService clusterDistributionService;
+
+    private final long intervalMs;
+
+    private static final Logger log = LoggerFactory.getLogger(TasksRebalancerThread.class);
+
+    public TasksRebalancerThread(ClusterDistributionService clusterDistributionService, long intervalMs) {
+        setName("Task rebalancer");
+        setDaemon(true);
+
+        this.clusterDistributionService = clusterDistributionService;
+        this.intervalMs = intervalMs;
+    }
+
+    @Override
+    public void run() {
+        while (! clusterDistributionService.isShuttingDown()) {
+            try {
+                Thread.sleep(intervalMs);
+
+                int movedTasks = clusterDistributionService.rebalanceAgentTasks();
+                if(movedTasks > 0) {
+                    log.info("Rebalanced {} tasks between Agents", movedTasks);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("Error rebalancing tasks", e);
+            }
+        }
+        log.info("Task rebalancer thread terminated");
+    }
+}
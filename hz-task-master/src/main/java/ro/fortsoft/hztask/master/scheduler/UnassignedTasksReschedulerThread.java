@@ -36,7 +36,7 @@ public class UnassignedTasksReschedulerThread extends Thread {
 
                 boolean taskFound = false;
                 if(shouldRun) {
-                    taskFound = clusterDistributionService.rescheduleUnassignedTasks(100);
+                    taskFound = clusterDistributionService.rescheduleUnassignedTasks(100) > 0;
                 }
 
                 if(! taskFound) {
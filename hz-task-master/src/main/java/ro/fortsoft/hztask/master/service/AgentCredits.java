@@ -0,0 +1,139 @@
+package ro.fortsoft.hztask.master.service;
+
+import com.hazelcast.core.Member;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps for each Agent its advertised capacity and the number of tasks assigned to it which it did not yet
+ * report as finished. The difference is the number of credits the Agent has, how many more tasks
+ * can be assigned to it without flooding it.
+ *
+ * @author Serban Balamaci
+ */
+public class AgentCredits {
+
+    private final ConcurrentMap<String, AgentCredit> credits = new ConcurrentHashMap<>();
+
+    /**
+     * Register the Agent or update its capacity if already registered
+     * @param agentUuid agentUuid
+     * @param capacity the number of tasks the Agent can run at once
+     */
+    public void register(String agentUuid, int capacity) {
+        register(agentUuid, capacity, 0);
+    }
+
+    /**
+     * Register the Agent or update its capacity if already registered
+     * @param agentUuid agentUuid
+     * @param capacity the number of tasks the Agent can run at once
+     * @param outstanding tasks already assigned to the Agent and not reported finished,
+     *                    for ex. by the Master this one took over from
+     */
+    public void register(String agentUuid, int capacity, int outstanding) {
+        AgentCredit newCredit = new AgentCredit(capacity);
+        newCredit.outstanding.set(outstanding);
+
+        AgentCredit credit = credits.putIfAbsent(agentUuid, newCredit);
+        if(credit != null) {
+            credit.capacity = capacity;
+        }
+    }
+
+    public void updateCapacity(String agentUuid, int capacity) {
+        AgentCredit credit = credits.get(agentUuid);
+        if(credit != null) {
+            credit.capacity = capacity;
+        }
+    }
+
+    public void remove(String agentUuid) {
+        credits.remove(agentUuid);
+    }
+
+    /**
+     * Take one credit of the Agent
+     * @param agentUuid agentUuid
+     * @return false if the Agent has no credits left
+     */
+    public boolean tryAcquire(String agentUuid) {
+        AgentCredit credit = credits.get(agentUuid);
+        if(credit == null) {
+            return false;
+        }
+        while (true) {
+            int outstanding = credit.outstanding.get();
+            if(outstanding >= credit.capacity) {
+                return false;
+            }
+            if(credit.outstanding.compareAndSet(outstanding, outstanding + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Give back credits for the tasks the Agent finished
+     * @param agentUuid agentUuid
+     * @param count number of finished tasks
+     */
+    public void release(String agentUuid, int count) {
+        AgentCredit credit = credits.get(agentUuid);
+        if(credit != null) {
+            credit.outstanding.updateAndGet(outstanding -> Math.max(0, outstanding - count));
+        }
+    }
+
+    public int getAvailableCredits(String agentUuid) {
+        AgentCredit credit = credits.get(agentUuid);
+        return credit == null ? 0 : credit.available();
+    }
+
+    public int getTotalAvailableCredits() {
+        int total = 0;
+        for(AgentCredit credit : credits.values()) {
+            total += credit.available();
+        }
+        return total;
+    }
+
+    public int getOutstandingTasks(String agentUuid) {
+        AgentCredit credit = credits.get(agentUuid);
+        return credit == null ? 0 : credit.outstanding.get();
+    }
+
+    /**
+     * @param agents members to filter
+     * @return the members that have credits left
+     */
+    public List<Member> withCredits(Collection<Member> agents) {
+        List<Member> agentsWithCredits = new ArrayList<>(agents.size());
+        for(Member agent : agents) {
+            if(getAvailableCredits(agent.getUuid()) > 0) {
+                agentsWithCredits.add(agent);
+            }
+        }
+        return agentsWithCredits;
+    }
+
+    private static class AgentCredit {
+
+        private volatile int capacity;
+
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        private AgentCredit(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private int available() {
+            return Math.max(0, capacity - outstanding.get());
+        }
+    }
+}
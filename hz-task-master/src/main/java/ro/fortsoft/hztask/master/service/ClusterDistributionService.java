@@ -1,6 +1,8 @@
 package ro.fortsoft.hztask.master.service;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.hazelcast.core.IMap;
 import com.hazelcast.core.Member;
 import com.hazelcast.query.PagingPredicate;
@@ -9,18 +11,42 @@ import com.hazelcast.query.Predicates;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.TasksMapConfigUtil;
 import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskCompletion;
+import ro.fortsoft.hztask.common.task.TaskDispatchState;
+import ro.fortsoft.hztask.common.task.TaskFailure;
 import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.comparator.PriorityAndOldestTaskComparator;
+import ro.fortsoft.hztask.entryprocessor.GetTaskDedupKeyEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.ReclaimTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.RemoveTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.RetryTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.StealTaskEntryProcessor;
+import ro.fortsoft.hztask.master.dedup.RecentKeysFilter;
+import ro.fortsoft.hztask.master.retry.RetryPolicy;
 import ro.fortsoft.hztask.master.topology.HazelcastTopologyService;
 import ro.fortsoft.hztask.master.router.RoundRobinRoutingStrategy;
 import ro.fortsoft.hztask.master.router.RoutingStrategy;
-import ro.fortsoft.hztask.master.scheduler.TasksDistributionThread;
+import ro.fortsoft.hztask.master.scheduler.TaskLeaseExpiryThread;
+import ro.fortsoft.hztask.master.scheduler.TaskRetryThread;
+import ro.fortsoft.hztask.master.scheduler.TasksDispatcherThread;
+import ro.fortsoft.hztask.master.scheduler.TasksRebalancerThread;
 import ro.fortsoft.hztask.master.statistics.IStatisticsService;
 import ro.fortsoft.hztask.master.statistics.TaskTransitionLogKeeper;
+import ro.fortsoft.hztask.master.statistics.latency.LatencyPhase;
+import ro.fortsoft.hztask.master.statistics.latency.TaskLatencyTracker;
 import ro.fortsoft.hztask.master.util.NamesUtil;
+import ro.fortsoft.hztask.util.ClusterUtil;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -35,14 +61,50 @@ public class ClusterDistributionService {
 
     private HazelcastTopologyService hazelcastTopologyService;
 
+    private CommunicationService communicationService;
+
     private IMap<TaskKey, Task> tasks;
 
     private IStatisticsService statisticsService;
 
-    private TasksDistributionThread tasksDistributionThread;
+    private TasksDispatcherThread tasksDispatcherThread;
+
+    private TasksRebalancerThread tasksRebalancerThread;
+
+    private TaskLeaseExpiryThread taskLeaseExpiryThread;
+
+    private TaskRetryThread taskRetryThread;
+
+    private final AgentCredits agentCredits = new AgentCredits();
+
+    /** disabled unless set **/
+    private TaskLeaseKeeper taskLeaseKeeper = new TaskLeaseKeeper(0);
 
     private TaskTransitionLogKeeper taskTransitionLogKeeper;
 
+    private TaskLatencyTracker taskLatencyTracker;
+
+    private final UnassignedTasksIndex unassignedTasksIndex = new UnassignedTasksIndex();
+
+    /** kept while waiting as standby Master **/
+    private volatile StandbyDispatchState standbyDispatchState;
+
+    /** the retry lane, failed tasks whose retry is due are dispatched separately from the fresh ones **/
+    private final UnassignedTasksIndex retryTasksIndex = new UnassignedTasksIndex();
+
+    /** failed tasks waiting for their retry to be due **/
+    private final TaskRetryTimer taskRetryTimer = new TaskRetryTimer();
+
+    private Map<Class, RetryPolicy> retryPolicies = new HashMap<>();
+
+    private RetryPolicy defaultRetryPolicy;
+
+    /** null if poison tasks are not quarantined **/
+    private DeadLetterService deadLetterService;
+
+    /** dedup keys of the recently submitted tasks, null if the submitted tasks are not deduplicated **/
+    private RecentKeysFilter recentDedupKeys;
+
     /**internal counter to keep track of the order of processed tasks**/
     private AtomicLong latestTaskCounter;
 
@@ -52,174 +114,829 @@ public class ClusterDistributionService {
 
     private static final Logger log = LoggerFactory.getLogger(ClusterDistributionService.class);
 
-    /** the number of task remaining for an Agent before the Master restarts distributing tasks **/
-    private static final int MIN_RUN_TASK_REMAINING = 10;
+    /** capacity assumed for Agents that don't advertise one **/
+    private static final int DEFAULT_AGENT_CAPACITY = 5;
+
+    /** difference in pending tasks between two Agents from which tasks are moved from one to the other **/
+    private static final int MIN_IMBALANCE_TO_REBALANCE = 2;
+
+    /** maximum number of tasks moved between two Agents at once **/
+    private static final int MAX_STEAL_BATCH_SIZE = 100;
+
+    /** while there are fresh tasks waiting, the retries get at most 1/RETRY_LANE_SHARE of a dispatch round **/
+    private static final int RETRY_LANE_SHARE = 4;
+
+    /** the number of tasks written to the tasks map at once when submitting tasks in bulk **/
+    private static final int SUBMIT_BATCH_SIZE = 1000;
 
     public ClusterDistributionService(HazelcastTopologyService hazelcastTopologyService,
+                                      CommunicationService communicationService,
                                       IStatisticsService statisticsService) {
         this.hazelcastTopologyService = hazelcastTopologyService;
+        this.communicationService = communicationService;
         this.statisticsService = statisticsService;
 
         this.routingStrategy = new RoundRobinRoutingStrategy(hazelcastTopologyService);
         this.tasks = hazelcastTopologyService.getHzInstance().getMap(HzKeysConstants.TASKS_MAP);
-        tasksDistributionThread = new TasksDistributionThread(this);
+        tasksDispatcherThread = new TasksDispatcherThread(this);
+        taskRetryThread = new TaskRetryThread(this);
     }
 
     /**
      * Add task for distribution to Agents
      * @param task Task
+     * @return false if the task was dropped as a duplicate
      */
-    public void queueTask(Task task) {
-        TaskKey taskKey = new TaskKey(task.getId());
+    public boolean queueTask(Task task) {
+        if(isDuplicate(task, Collections.<String>emptySet())) {
+            return false;
+        }
+        TaskKey taskKey = task.getTaskKey();
         task.setClusterInstanceUuid(LOCAL_MASTER_UUID);
         task.setInternalCounter(latestTaskCounter.getAndIncrement());
 
         log.info("Adding task={} to Map", task);
         tasks.set(taskKey, task);
+        unassignedTasksIndex.add(taskKey, task.getPriority(), task.getInternalCounter());
 
-        taskTransitionLogKeeper.taskReceived(taskKey.getTaskId());
+        taskTransitionLogKeeper.taskReceived(taskKey);
 
-        startTaskDistributionThread();
+        triggerTaskDistribution();
+        return true;
     }
 
-    private void rescheduleTask(TaskKey taskKey) {
-        Task task = tasks.get(taskKey);
+    /**
+     * Only the tasks whose dedup key was seen recently are checked against the tasks in the map,
+     * which most of the new tasks skip. Two tasks with the same key submitted at the same time
+     * can still both get in.
+     * @param task the submitted task
+     * @param batchDedupKeys dedup keys of the tasks submitted with it
+     * @return true if there's already a task waiting or running with the same dedup key
+     */
+    private boolean isDuplicate(Task task, Set<String> batchDedupKeys) {
+        String dedupKey = task.getDedupKey();
+        if(recentDedupKeys == null || dedupKey == null || ! recentDedupKeys.checkAndAdd(dedupKey)) {
+            return false;
+        }
+        boolean duplicate = batchDedupKeys.contains(dedupKey) || ! tasks.keySet(
+                Predicates.equal(TasksMapConfigUtil.DEDUP_KEY_ATTRIBUTE, dedupKey)).isEmpty();
+        if(duplicate) {
+            log.info("Dropping task={}, a task with the dedup key {} is already waiting or running", task, dedupKey);
+        }
+        return duplicate;
+    }
+
+    /**
+     * Add tasks in bulk for distribution to Agents. The tasks are written to the tasks map in batches
+     * and the distribution is triggered once per batch.
+     * @param tasksIterator tasks to add
+     * @return the number of added tasks, without the ones dropped as duplicates
+     */
+    public long queueTasks(Iterator<? extends Task> tasksIterator) {
+        long queuedTasks = 0;
+        List<Task> batch = new ArrayList<>(SUBMIT_BATCH_SIZE);
+
+        while (tasksIterator.hasNext()) {
+            batch.add(tasksIterator.next());
+            if(batch.size() == SUBMIT_BATCH_SIZE) {
+                queuedTasks += writeTasksBatch(batch);
+                batch.clear();
+            }
+        }
+        if(! batch.isEmpty()) {
+            queuedTasks += writeTasksBatch(batch);
+        }
+
+        log.info("Added {} tasks to Map", queuedTasks);
+        return queuedTasks;
+    }
+
+    /**
+     * Writes a batch of tasks with a single putAll, which sends one operation for each partition
+     * @param batch tasks to write
+     * @return the number of written tasks
+     */
+    private int writeTasksBatch(List<Task> batch) {
+        if(recentDedupKeys != null) {
+            batch = dropDuplicates(batch);
+            if(batch.isEmpty()) {
+                return 0;
+            }
+        }
+        //reserve a block of counter values for the whole batch
+        long internalCounter = latestTaskCounter.getAndAdd(batch.size());
+
+        Map<TaskKey, Task> entries = new HashMap<>(batch.size() * 2);
+        List<TaskKey> taskKeys = new ArrayList<>(batch.size());
+        for(Task task : batch) {
+            task.setClusterInstanceUuid(LOCAL_MASTER_UUID);
+            task.setInternalCounter(internalCounter ++);
+
+            TaskKey taskKey = task.getTaskKey();
+            entries.put(taskKey, task);
+            taskKeys.add(taskKey);
+        }
+
+        log.debug("Adding batch of {} tasks to Map", entries.size());
+        tasks.putAll(entries);
+        for(Task task : batch) {
+            unassignedTasksIndex.add(task.getTaskKey(), task.getPriority(), task.getInternalCounter());
+        }
+
+        taskTransitionLogKeeper.tasksReceived(taskKeys);
+
+        triggerTaskDistribution();
+        return entries.size();
+    }
+
+    private List<Task> dropDuplicates(List<Task> batch) {
+        List<Task> uniqueTasks = new ArrayList<>(batch.size());
+        Set<String> batchDedupKeys = new HashSet<>();
+        for(Task task : batch) {
+            if(! isDuplicate(task, batchDedupKeys)) {
+                uniqueTasks.add(task);
+                if(task.getDedupKey() != null) {
+                    batchDedupKeys.add(task.getDedupKey());
+                }
+            }
+        }
+        return uniqueTasks;
+    }
+
+    /**
+     * Routes the task to an Agent
+     * @param taskKey taskKey
+     * @return the agentUuid the task was assigned to or LOCAL_MASTER_UUID if it remained unassigned
+     */
+    private String rescheduleTask(TaskKey taskKey, Task task) {
         task.setInternalCounter(latestTaskCounter.getAndIncrement());
+        task.setStartedDate(0);
+        task.setProcessingStartedDate(0);
 
         String oldClusterInstanceAssignedToTask = task.getClusterInstanceUuid();
         String clusterInstanceId = getClusterInstanceToRunOn(task);
         task.setClusterInstanceUuid(clusterInstanceId);
+        if (!clusterInstanceId.equals(LOCAL_MASTER_UUID)) {
+            recordAssignment(task, clusterInstanceId);
+        }
 
         tasks.set(taskKey, task);
 
         if (!clusterInstanceId.equals(LOCAL_MASTER_UUID)) {
+            taskLeaseKeeper.grant(taskKey, clusterInstanceId);
             if(oldClusterInstanceAssignedToTask.equals(LOCAL_MASTER_UUID)) {
                 log.info("Assigning task={} to run on Agent {}", task, NamesUtil.
                         toLogFormat(task.getClusterInstanceUuid()));
-                taskTransitionLogKeeper.taskAssigned(taskKey.getTaskId(), clusterInstanceId);
+                taskTransitionLogKeeper.taskAssigned(taskKey, clusterInstanceId);
             } else {
                 log.info("Rescheduling task={} to run on Agent {}", task, NamesUtil.
                         toLogFormat(task.getClusterInstanceUuid()));
-                taskTransitionLogKeeper.taskReassigned(taskKey.getTaskId(), clusterInstanceId);
+                taskTransitionLogKeeper.taskReassigned(taskKey, clusterInstanceId);
             }
 
             statisticsService.incSubmittedTasks(task.getTaskType(), clusterInstanceId);
             statisticsService.decUnassignedTask(task.getTaskType());
 
-            taskTransitionLogKeeper.taskReassigned(taskKey.getTaskId(), clusterInstanceId);
+            taskTransitionLogKeeper.taskReassigned(taskKey, clusterInstanceId);
         } else { //we're unassigning a task
             log.info("Unassigned task={}", task);
+            taskLeaseKeeper.release(taskKey);
 
             statisticsService.incUnassignedTasks(task.getTaskType());
-            taskTransitionLogKeeper.taskUnassigned(taskKey.getTaskId());
+            taskTransitionLogKeeper.taskUnassigned(taskKey);
+
+            //a retry that found no Agent with credits stays in the retry lane
+            UnassignedTasksIndex lane = task.getNrOfTries() > 0 ? retryTasksIndex : unassignedTasksIndex;
+            lane.add(taskKey, task.getPriority(), task.getInternalCounter());
+        }
+        return clusterInstanceId;
+    }
+
+    private void recordAssignment(Task task, String agentUuid) {
+        long now = System.currentTimeMillis();
+        if(task.getAssignedDate() == 0) { //only the first assignment counts as waiting to be assigned
+            taskLatencyTracker.recordMillis(LatencyPhase.UNASSIGNED_WAIT, task.getTaskType(), agentUuid,
+                    now - task.getCreationDate());
+        }
+        task.setAssignedDate(now);
+    }
+
+    private void recordCompletionLatencies(Task task, TaskCompletion completion, String agentUuid) {
+        if(completion.getProcessingStartDate() == 0) {
+            return;
+        }
+        String taskType = task.getTaskType();
+        if(task.getAssignedDate() > 0) {
+            taskLatencyTracker.recordMillis(LatencyPhase.PICKUP, taskType, agentUuid,
+                    completion.getProcessingStartDate() - task.getAssignedDate());
+        }
+        taskLatencyTracker.recordNanos(LatencyPhase.PROCESSING, taskType, agentUuid,
+                completion.getProcessingNanos());
+        taskLatencyTracker.recordMillis(LatencyPhase.NOTIFICATION, taskType, agentUuid,
+                System.currentTimeMillis() - completion.getProcessingEndDate());
+    }
+
+    /**
+     * Push to the Agents the keys of the tasks that were just assigned to them, so they don't have
+     * to wait to find them by scanning the tasks map
+     * @param assignedTasks agentUuid to assigned task keys
+     */
+    private void notifyAgentsOfAssignedTasks(ListMultimap<String, TaskKey> assignedTasks) {
+        for(String agentUuid : assignedTasks.keySet()) {
+            List<TaskKey> taskKeys = assignedTasks.get(agentUuid);
+            Optional<Member> agent = ClusterUtil.findMemberWithUuid(hazelcastTopologyService.getHzInstance(),
+                    agentUuid);
+            if(! agent.isPresent()) {
+                log.info("Agent {} left before being notified of {} assigned tasks",
+                        NamesUtil.toLogFormat(agentUuid), taskKeys.size());
+                continue;
+            }
+
+            try {
+                communicationService.sendTasksAssignedMessageToMember(agent.get(), taskKeys);
+            } catch (Exception e) { //the Agent will still find the tasks when scanning
+                log.error("Error notifying Agent {} of assigned tasks", NamesUtil.toLogFormat(agentUuid), e);
+            }
         }
     }
 
     private void unassignTask(TaskKey taskKey) {
         Task task = tasks.get(taskKey);
 
-        if (!LOCAL_MASTER_UUID.equals(task.getClusterInstanceUuid())) {
+        if (task != null && !LOCAL_MASTER_UUID.equals(task.getClusterInstanceUuid())) {
             String clusterInstanceId = LOCAL_MASTER_UUID;
 
             task.setClusterInstanceUuid(clusterInstanceId);
+            task.setStartedDate(0);
+            task.setProcessingStartedDate(0);
 
             log.info("Unassigning task={}", task);
             tasks.set(taskKey, task);
+            taskLeaseKeeper.release(taskKey);
+            unassignedTasksIndex.add(taskKey, task.getPriority(), task.getInternalCounter());
 
             statisticsService.incUnassignedTasks(task.getTaskType());
         }
     }
 
     /**
-     * Uses the RoutingStrategy to look for the next agentUuid where
+     * Uses the RoutingStrategy to look for the next agentUuid where the task should run, among the
+     * Agents that have credits, and takes one credit of the chosen Agent
      * @param task the task to run
      *
-     * @return the agentUuid where the next task should run
+     * @return the agentUuid where the next task should run, LOCAL_MASTER_UUID if no Agent has credits
      */
     private String getClusterInstanceToRunOn(Task task) {
-        Optional<Member> memberToRunOn = routingStrategy.getMemberToRunOn(task);
+        List<Member> candidates = agentCredits.withCredits(hazelcastTopologyService.getAgentsCopy());
+
+        while (! candidates.isEmpty()) {
+            Optional<Member> memberToRunOn = routingStrategy.getMemberToRunOn(task, candidates);
+            if (! memberToRunOn.isPresent()) {
+                break;
+            }
 
-        String executeOn = LOCAL_MASTER_UUID; //unassigned
-        if (memberToRunOn.isPresent()) {
-            executeOn = memberToRunOn.get().getUuid();
+            String agentUuid = memberToRunOn.get().getUuid();
+            if (agentCredits.tryAcquire(agentUuid)) {
+                return agentUuid;
+            }
+            //credits were taken in the meantime
+            candidates.remove(memberToRunOn.get());
         }
 
-        return executeOn;
+        return LOCAL_MASTER_UUID; //unassigned
     }
 
+    /**
+     * Removes a task finished by an Agent
+     * @return the removed task, null if it was not found or it is no longer assigned to the Agent
+     */
     public Task finishedTask(TaskKey taskKey, String agentUuid, boolean taskFailed) {
-        Task task = tasks.remove(taskKey);
+        Task task = (Task) tasks.executeOnKey(taskKey, new RemoveTaskEntryProcessor(agentUuid));
+        if(task == null) {
+            log.info("Finished task with id {} was not found or is no longer assigned to {}",
+                    taskKey.getTaskId(), NamesUtil.toLogFormat(agentUuid));
+            return null;
+        }
+        taskLeaseKeeper.release(taskKey);
         if (taskFailed) {
             statisticsService.incTaskFailedCounter(task.getTaskType(), agentUuid);
-            taskTransitionLogKeeper.taskFinishedFailure(taskKey.getTaskId());
+            taskTransitionLogKeeper.taskFinishedFailure(taskKey);
         } else {
             statisticsService.incTaskFinishedCounter(task.getTaskType(), agentUuid);
-            taskTransitionLogKeeper.taskFinishedSuccess(taskKey.getTaskId());
+            taskTransitionLogKeeper.taskFinishedSuccess(taskKey);
         }
 
-        if(shouldReStartTaskDistributionThread(agentUuid, MIN_RUN_TASK_REMAINING)) {
-            startTaskDistributionThread();
-        }
+        agentCredits.release(task.getClusterInstanceUuid(), 1);
+        triggerTaskDistribution();
         return task;
     }
 
-    private boolean shouldReStartTaskDistributionThread(String agentUuid, int minRemainingTasks) {
-        long totalSubmitted = statisticsService.getSubmittedTasks(agentUuid);
-        long totalProcessed = statisticsService.getFinishedTasks(agentUuid)
-                + statisticsService.getFailedTasks(agentUuid);
+    /**
+     * Removes in one pass a batch of tasks finished by an Agent
+     * @param completions the outcome of the finished tasks
+     * @param agentUuid the agent that processed the tasks
+     * @param agentCapacity the capacity advertised by the agent
+     * @return the removed tasks, tasks that were no longer found or that are now assigned
+     * to another agent are missing
+     */
+    public Map<TaskKey, Task> finishedTasks(Collection<TaskCompletion> completions, String agentUuid,
+                                            int agentCapacity) {
+        agentCredits.updateCapacity(agentUuid, agentCapacity);
+
+        Set<TaskKey> retriedTaskKeys = retryFailedTasks(completions, agentUuid);
+
+        Set<TaskKey> taskKeys = new HashSet<>();
+        for(TaskCompletion completion : completions) {
+            if(! retriedTaskKeys.contains(completion.getTaskKey())) {
+                taskKeys.add(completion.getTaskKey());
+            }
+        }
+        if(taskKeys.isEmpty()) { //all were retried
+            triggerTaskDistribution();
+            return Collections.emptyMap();
+        }
+        Map<TaskKey, Object> removedTasks = tasks.executeOnKeys(taskKeys, new RemoveTaskEntryProcessor(agentUuid));
+
+        Map<TaskKey, Task> finishedTasks = new HashMap<>();
+        Map<String, Long> finishedCountByType = new HashMap<>();
+        Map<String, Long> failedCountByType = new HashMap<>();
+        for(TaskCompletion completion : completions) {
+            TaskKey taskKey = completion.getTaskKey();
+            if(retriedTaskKeys.contains(taskKey)) {
+                continue;
+            }
+            Task task = (Task) removedTasks.get(taskKey);
+            if(task == null) {
+                log.info("Finished task with id {} was not found or is no longer assigned to {}",
+                        taskKey.getTaskId(), NamesUtil.toLogFormat(agentUuid));
+                continue;
+            }
+            finishedTasks.put(taskKey, task);
+            taskLeaseKeeper.release(taskKey);
+            recordCompletionLatencies(task, completion, agentUuid);
+            //the credit belongs to the agent the task was assigned to
+            agentCredits.release(task.getClusterInstanceUuid(), 1);
+
+            if (completion.isFailed()) {
+                failedCountByType.merge(task.getTaskType(), 1L, Long::sum);
+                taskTransitionLogKeeper.taskFinishedFailure(taskKey);
+            } else {
+                finishedCountByType.merge(task.getTaskType(), 1L, Long::sum);
+                taskTransitionLogKeeper.taskFinishedSuccess(taskKey);
+            }
+        }
+
+        for(Map.Entry<String, Long> finishedCount : finishedCountByType.entrySet()) {
+            statisticsService.incTaskFinishedCounter(finishedCount.getKey(), agentUuid, finishedCount.getValue());
+        }
+        for(Map.Entry<String, Long> failedCount : failedCountByType.entrySet()) {
+            statisticsService.incTaskFailedCounter(failedCount.getKey(), agentUuid, failedCount.getValue());
+        }
+
+        triggerTaskDistribution();
+        return finishedTasks;
+    }
+
+    /**
+     * Puts back the failed tasks whose RetryPolicy allows another try. They stay in the tasks map, unassigned,
+     * until their retry is due, so the TaskCompletionHandler only sees the last failure.
+     * A failure reported by an Agent the task is no longer assigned to(taken back while it was running)
+     * is dropped, the task being retried already.
+     * With the dead letter store enabled, the tasks that used up their tries on a failure the RetryPolicy
+     * retries are moved there instead of being handed to the TaskCompletionHandler.
+     *
+     * @param completions completions reported by the Agent
+     * @param agentUuid agentUuid
+     * @return the keys of the tasks that were retried, dropped or moved to the dead letter store
+     */
+    public Set<TaskKey> retryFailedTasks(Collection<TaskCompletion> completions, String agentUuid) {
+        if(retryPolicies.isEmpty() && defaultRetryPolicy == null) {
+            return Collections.emptySet();
+        }
+
+        Map<TaskKey, Throwable> failures = new HashMap<>();
+        for(TaskCompletion completion : completions) {
+            if(completion.isFailed()) {
+                failures.put(completion.getTaskKey(), completion.getException());
+            }
+        }
+        if(failures.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        Map<TaskKey, Task> failedTasks = tasks.getAll(failures.keySet());
+        Map<TaskKey, Long> backoffs = new HashMap<>();
+        Map<TaskKey, TaskFailure> exhaustedFailures = new HashMap<>();
+        Set<TaskKey> droppedTaskKeys = new HashSet<>();
+        for(Map.Entry<TaskKey, Task> entry : failedTasks.entrySet()) {
+            Task task = entry.getValue();
+            Throwable exception = failures.get(entry.getKey());
+            RetryPolicy retryPolicy = getRetryPolicy(task);
+            if(retryPolicy == null) {
+                continue;
+            }
+            if(retryPolicy.shouldRetry(exception, task.getNrOfTries())) {
+                backoffs.put(entry.getKey(), retryPolicy.getBackoffMillis(task.getNrOfTries()));
+            } else if(deadLetterService != null && retryPolicy.isRetriable(exception)) {
+                if(agentUuid.equals(task.getClusterInstanceUuid())) {
+                    exhaustedFailures.put(entry.getKey(), TaskFailure.failed(agentUuid, exception));
+                } else {
+                    droppedTaskKeys.add(entry.getKey());
+                }
+            }
+        }
+
+        Set<TaskKey> handledTaskKeys = new HashSet<>(backoffs.keySet());
+        handledTaskKeys.addAll(droppedTaskKeys);
+        if(! exhaustedFailures.isEmpty()) {
+            handledTaskKeys.addAll(quarantineExhaustedTasks(exhaustedFailures, agentUuid));
+        }
+        if(backoffs.isEmpty()) {
+            return handledTaskKeys;
+        }
+
+        Map<String, TaskFailure> retriedFailures = new HashMap<>();
+        if(deadLetterService != null) {
+            for(TaskKey taskKey : backoffs.keySet()) {
+                retriedFailures.put(taskKey.getTaskId(), TaskFailure.failed(agentUuid, failures.get(taskKey)));
+            }
+        }
+        Map<TaskKey, Object> results = tasks.executeOnKeys(backoffs.keySet(),
+                new RetryTaskEntryProcessor(agentUuid, LOCAL_MASTER_UUID, retriedFailures));
+
+        int retried = 0;
+        Map<String, Long> retriedCountByType = new HashMap<>();
+        for(Map.Entry<TaskKey, Object> result : results.entrySet()) {
+            TaskDispatchState state = (TaskDispatchState) result.getValue();
+            if(state == null) {
+                log.info("Dropping failure of task {}, it's no longer assigned to Agent {}",
+                        result.getKey().getTaskId(), NamesUtil.toLogFormat(agentUuid));
+                continue;
+            }
+            TaskKey taskKey = result.getKey();
+            taskLeaseKeeper.release(taskKey);
+            long backoffMillis = backoffs.get(taskKey);
+            log.info("Task {} failed, retrying in {}ms", taskKey.getTaskId(), backoffMillis);
+
+            taskRetryTimer.schedule(taskKey, state.getPriority(), state.getInternalCounter(), backoffMillis);
+            retriedCountByType.merge(state.getTaskType(), 1L, Long::sum);
+            statisticsService.incUnassignedTasks(state.getTaskType());
+            taskTransitionLogKeeper.taskRetryScheduled(taskKey, agentUuid);
+            retried++;
+        }
+        for(Map.Entry<String, Long> retriedCount : retriedCountByType.entrySet()) {
+            statisticsService.incTaskRetriedCounter(retriedCount.getKey(), agentUuid, retriedCount.getValue());
+        }
+        if(retried > 0) {
+            agentCredits.release(agentUuid, retried);
+            triggerTaskDistribution();
+        }
+        return handledTaskKeys;
+    }
+
+    /**
+     * Moves to the dead letter store the failed tasks that used up their tries
+     * @param exhaustedFailures the summaries of their last failure
+     * @return the keys of the moved tasks
+     */
+    private Set<TaskKey> quarantineExhaustedTasks(Map<TaskKey, TaskFailure> exhaustedFailures, String agentUuid) {
+        Map<TaskKey, Object> removedTasks = tasks.executeOnKeys(exhaustedFailures.keySet(),
+                new RemoveTaskEntryProcessor(agentUuid));
+
+        List<Task> quarantinedTasks = new ArrayList<>(removedTasks.size());
+        for(Map.Entry<TaskKey, Object> entry : removedTasks.entrySet()) {
+            Task task = (Task) entry.getValue();
+            if(task == null) {
+                continue;
+            }
+            taskLeaseKeeper.release(entry.getKey());
+            task.addFailure(exhaustedFailures.get(entry.getKey()));
+            quarantinedTasks.add(task);
+            agentCredits.release(task.getClusterInstanceUuid(), 1);
+        }
+        quarantineTasks(quarantinedTasks, agentUuid);
+        return exhaustedFailures.keySet();
+    }
+
+    /**
+     * Moves to the dead letter store tasks already removed from the tasks map, counting them as failed
+     * @param removedTasks the tasks
+     * @param agentUuid the Agent the tasks last ran on
+     */
+    private void quarantineTasks(List<Task> removedTasks, String agentUuid) {
+        if(removedTasks.isEmpty()) {
+            return;
+        }
+        deadLetterService.quarantine(removedTasks);
+
+        Map<String, Long> failedCountByType = new HashMap<>();
+        for(Task task : removedTasks) {
+            failedCountByType.merge(task.getTaskType(), 1L, Long::sum);
+            taskTransitionLogKeeper.taskFinishedFailure(task.getTaskKey());
+        }
+        for(Map.Entry<String, Long> failedCount : failedCountByType.entrySet()) {
+            statisticsService.incTaskFailedCounter(failedCount.getKey(), agentUuid, failedCount.getValue());
+        }
+    }
+
+    /**
+     * @return true if the task was put back for another try or moved to the dead letter store
+     */
+    public boolean retryFailedTask(TaskKey taskKey, Throwable exception, String agentUuid) {
+        return ! retryFailedTasks(Collections.singletonList(TaskCompletion.failure(taskKey, exception)),
+                agentUuid).isEmpty();
+    }
+
+    private RetryPolicy getRetryPolicy(Task task) {
+        RetryPolicy retryPolicy = retryPolicies.get(task.getClass());
+        return retryPolicy != null ? retryPolicy : defaultRetryPolicy;
+    }
 
-        long remaining = totalSubmitted - totalProcessed;
-        log.info("{} Remaining tasks for {}", remaining, NamesUtil.toLogFormat(agentUuid));
+    /**
+     * Waits for retries to be due and moves them into the retry lane
+     * @return the number of retries moved
+     */
+    public int releaseDueRetries() throws InterruptedException {
+        List<TaskRetryTimer.ScheduledRetry> dueRetries = taskRetryTimer.takeDue();
+        for(TaskRetryTimer.ScheduledRetry retry : dueRetries) {
+            retryTasksIndex.add(retry.getTaskKey(), retry.getPriority(), retry.getInternalCounter());
+        }
+        triggerTaskDistribution();
+        return dueRetries.size();
+    }
 
-        return remaining < minRemainingTasks;
+    /**
+     * Starts the long lived thread that dispatches the unassigned tasks to the Agents, and the one
+     * feeding it the due retries
+     */
+    public void startTaskDispatcher() {
+        tasksDispatcherThread.start();
+        taskRetryThread.start();
     }
 
-    public synchronized void startTaskDistributionThread() {
+    /**
+     * Signal the dispatcher that there might be tasks to dispatch
+     */
+    public void triggerTaskDistribution() {
         if(shuttingDown) {
             return;
         }
+        tasksDispatcherThread.signal();
+    }
 
-        if (!tasksDistributionThread.isAlive()) {
-            log.info("Starting up TaskDistributionThread");
-            TasksDistributionThread newTaskDistributionThread = new TasksDistributionThread(this);
-            newTaskDistributionThread.setLastThroughput(tasksDistributionThread.getLastThroughput());
-            newTaskDistributionThread.setBatchSize(tasksDistributionThread.getBatchSize());
+    /**
+     * Register the credits of a new Agent based on the capacity it advertises
+     * @param agent new Agent
+     */
+    public void agentJoined(Member agent) {
+        Integer capacity = agent.getIntAttribute(HzKeysConstants.AGENT_CAPACITY_PROPERTY);
+        //tasks might already be assigned to it, if this Master took over from another one
+        int outstanding = (int) Math.max(0, getPendingTasks(agent.getUuid()));
+        agentCredits.register(agent.getUuid(), capacity != null ? capacity : DEFAULT_AGENT_CAPACITY, outstanding);
+        triggerTaskDistribution();
+    }
 
-            tasksDistributionThread = newTaskDistributionThread;
-            tasksDistributionThread.start();
-        } else {
-            log.info("TaskDistributionThread is still running...");
+    /**
+     * The Agent advertised a new capacity outside of its completion reports, for ex. when it put aside
+     * tasks of a type it has no room for
+     */
+    public void agentCapacityChanged(Member agent, int capacity) {
+        agentCredits.updateCapacity(agent.getUuid(), capacity);
+        triggerTaskDistribution();
+    }
+
+    public void agentLeft(Member agent) {
+        agentCredits.remove(agent.getUuid());
+    }
+
+    /**
+     * Starts the thread that periodically moves not started tasks from the Agents with many
+     * pending tasks to the ones with few
+     * @param intervalMs time between rebalancing rounds
+     */
+    public synchronized void startTaskRebalancer(long intervalMs) {
+        tasksRebalancerThread = new TasksRebalancerThread(this, intervalMs);
+        tasksRebalancerThread.start();
+    }
+
+    /**
+     * Starts the thread that takes back the tasks whose leases expired, if the leases are enabled
+     */
+    public synchronized void startTaskLeaseExpiry() {
+        if(! taskLeaseKeeper.isEnabled()) {
+            return;
         }
+        taskLeaseExpiryThread = new TaskLeaseExpiryThread(this, taskLeaseKeeper.getTickMillis());
+        taskLeaseExpiryThread.start();
     }
 
+    /**
+     * @param taskKeys the tasks the Agent holds
+     * @param agentUuid agentUuid
+     */
+    public void renewTaskLeases(Collection<TaskKey> taskKeys, String agentUuid) {
+        int renewed = taskLeaseKeeper.renew(agentUuid, taskKeys);
+        log.debug("Agent {} renewed {} of {} task leases", NamesUtil.toLogFormat(agentUuid), renewed,
+                taskKeys.size());
+    }
 
-    private Collection<Task> queryTasks(Predicate predicate) {
-        return tasks.values(predicate);
+    /**
+     * Takes back the tasks whose leases ran out, started or not, from the Agents still holding them
+     * and tells the Agents to cancel them
+     * @return the number of tasks taken back
+     */
+    public int reclaimExpiredTasks() {
+        ListMultimap<String, TaskKey> expiredLeases = taskLeaseKeeper.expire();
+
+        int reclaimed = 0;
+        for(String agentUuid : expiredLeases.keySet()) {
+            List<TaskKey> taskKeys = expiredLeases.get(agentUuid);
+            ReclaimTaskEntryProcessor reclaimEntryProcessor = deadLetterService != null ?
+                    new ReclaimTaskEntryProcessor(agentUuid, LOCAL_MASTER_UUID, TaskFailure.lostRun(agentUuid),
+                            deadLetterService.getMaxLostRuns()) :
+                    new ReclaimTaskEntryProcessor(agentUuid, LOCAL_MASTER_UUID);
+            Map<TaskKey, Object> results = tasks.executeOnKeys(new HashSet<>(taskKeys), reclaimEntryProcessor);
+
+            List<TaskKey> reclaimedTaskKeys = new ArrayList<>();
+            List<Task> quarantinedTasks = new ArrayList<>();
+            Map<String, Long> reclaimedCountByType = new HashMap<>();
+            for(Map.Entry<TaskKey, Object> result : results.entrySet()) {
+                if(result.getValue() instanceof Task) { //lost too many runs
+                    reclaimedTaskKeys.add(result.getKey());
+                    quarantinedTasks.add((Task) result.getValue());
+                    continue;
+                }
+                TaskDispatchState state = (TaskDispatchState) result.getValue();
+                if(state == null) {
+                    continue; //finished or moved in the meantime
+                }
+                TaskKey taskKey = result.getKey();
+                reclaimedTaskKeys.add(taskKey);
+                reclaimedCountByType.merge(state.getTaskType(), 1L, Long::sum);
+
+                unassignedTasksIndex.add(taskKey, state.getPriority(), state.getInternalCounter());
+                statisticsService.incUnassignedTasks(state.getTaskType());
+                taskTransitionLogKeeper.taskUnassigned(taskKey);
+            }
+            for(Map.Entry<String, Long> reclaimedCount : reclaimedCountByType.entrySet()) {
+                statisticsService.incTaskLeaseExpiredCounter(reclaimedCount.getKey(), agentUuid,
+                        reclaimedCount.getValue());
+            }
+            quarantineTasks(quarantinedTasks, agentUuid);
+            if(reclaimedTaskKeys.isEmpty()) {
+                continue;
+            }
+            agentCredits.release(agentUuid, reclaimedTaskKeys.size());
+            reclaimed += reclaimedTaskKeys.size();
+            log.info("Took back {} tasks with expired leases from Agent {}", reclaimedTaskKeys.size(),
+                    NamesUtil.toLogFormat(agentUuid));
+
+            Optional<Member> agent = ClusterUtil.findMemberWithUuid(hazelcastTopologyService.getHzInstance(),
+                    agentUuid);
+            if(agent.isPresent()) {
+                try {
+                    communicationService.sendCancelTasksMessageToMember(agent.get(), reclaimedTaskKeys);
+                } catch (Exception e) {
+                    log.error("Error telling Agent {} to cancel its tasks", NamesUtil.toLogFormat(agentUuid), e);
+                }
+            }
+        }
+        if(reclaimed > 0) {
+            triggerTaskDistribution();
+        }
+        return reclaimed;
     }
 
-    private Set<TaskKey> queryTaskKeys(Predicate predicate) {
-        return tasks.keySet(predicate);
+    /**
+     * @param agentUuid agentUuid
+     * @return the number of tasks assigned to the Agent and not yet reported as finished
+     */
+    public long getPendingTasks(String agentUuid) {
+        return statisticsService.getSubmittedTasks(agentUuid) - statisticsService.getFinishedTasks(agentUuid)
+                - statisticsService.getFailedTasks(agentUuid) - statisticsService.getStolenTasks(agentUuid)
+                - statisticsService.getLeaseExpiredTasks(agentUuid) - statisticsService.getRetriedTasks(agentUuid);
     }
 
     /**
-     * Looks for tasks and unassignes them.
-     * Useful in case the master went down but the tasks list is rebuilt from the active masters
+     * Repeatedly pairs the Agent with the most pending tasks with the one with the fewest and
+     * moves not started tasks between them until the pending counts are within
+     * MIN_IMBALANCE_TO_REBALANCE of each other.
+     * Needed since an Agent that joins only receives newly assigned tasks and otherwise would not
+     * help with the backlogs of the other Agents.
      *
-     * @param lastKey a key to reference when the master went back up so we don't reassign task
-     *                that were submitted after the current master took control.
+     * @return the number of moved tasks
      */
-    public void unassignOlderTasks(long lastKey) {
-        Predicate oldTaskPredicate = Predicates.lessThan("internalCounter", lastKey);
-        Predicate notAssigned = Predicates.notEqual("clusterInstanceUuid", LOCAL_MASTER_UUID);
+    public int rebalanceAgentTasks() {
+        Map<String, Long> pendingTasks = new HashMap<>();
+        for(Member agent : hazelcastTopologyService.getAgentsCopy()) {
+            pendingTasks.put(agent.getUuid(), getPendingTasks(agent.getUuid()));
+        }
 
-        Predicate selectionPredicate = Predicates.and(oldTaskPredicate, notAssigned);
-        int batchSize = 100;
-        while (true) {
-            boolean moreTasksFound = unassignMatchedTasks(batchSize, selectionPredicate);
-            if(! moreTasksFound) {
+        int movedTasks = 0;
+        while (pendingTasks.size() > 1 && ! shuttingDown) {
+            String mostLoaded = null;
+            String leastLoaded = null;
+            for(Map.Entry<String, Long> entry : pendingTasks.entrySet()) {
+                if(mostLoaded == null || entry.getValue() > pendingTasks.get(mostLoaded)) {
+                    mostLoaded = entry.getKey();
+                }
+                if(leastLoaded == null || entry.getValue() < pendingTasks.get(leastLoaded)) {
+                    leastLoaded = entry.getKey();
+                }
+            }
+
+            long imbalance = pendingTasks.get(mostLoaded) - pendingTasks.get(leastLoaded);
+            if(imbalance < MIN_IMBALANCE_TO_REBALANCE) {
                 break;
             }
+
+            int stolen = stealTasks(mostLoaded, leastLoaded, (int) Math.min(imbalance / 2, MAX_STEAL_BATCH_SIZE));
+            if(stolen == 0) { //nothing left to steal from it right now(all started or no credits)
+                pendingTasks.remove(mostLoaded);
+                continue;
+            }
+            pendingTasks.put(mostLoaded, pendingTasks.get(mostLoaded) - stolen);
+            pendingTasks.put(leastLoaded, pendingTasks.get(leastLoaded) + stolen);
+            movedTasks += stolen;
         }
+        return movedTasks;
+    }
+
+    /**
+     * Moves tasks assigned to an Agent, which it did not start yet, to another Agent.
+     * A task is only moved if it's still not claimed by the Agent it's taken from
+     * (see {@link StealTaskEntryProcessor}), so an Agent never starts a task that was stolen from it.
+     * The receiving Agent must have credits for the moved tasks.
+     *
+     * @param fromAgentUuid Agent to take the tasks from
+     * @param toAgentUuid Agent to give the tasks to
+     * @param maxCount maximum number of tasks to move
+     * @return the number of moved tasks
+     */
+    public int stealTasks(String fromAgentUuid, String toAgentUuid, int maxCount) {
+        int reservedCredits = 0;
+        while (reservedCredits < maxCount && agentCredits.tryAcquire(toAgentUuid)) {
+            reservedCredits ++;
+        }
+        if(reservedCredits == 0) {
+            return 0;
+        }
+
+        Predicate notStartedPredicate = Predicates.and(
+                Predicates.equal(TasksMapConfigUtil.CLUSTER_INSTANCE_UUID_ATTRIBUTE, fromAgentUuid),
+                Predicates.equal(TasksMapConfigUtil.STARTED_DATE_ATTRIBUTE, 0L));
+        PagingPredicate pagingPredicate = new PagingPredicate(notStartedPredicate,
+                new PriorityAndOldestTaskComparator(), reservedCredits);
+        Set<TaskKey> candidates = new HashSet<>();
+        for(Map.Entry<TaskKey, Task> entry : queryTaskEntries(pagingPredicate)) {
+            candidates.add(entry.getKey());
+        }
+
+        ListMultimap<String, TaskKey> stolenTasks = ArrayListMultimap.create();
+        Map<String, Long> stolenCountByType = new HashMap<>();
+        if(! candidates.isEmpty()) {
+            Map<TaskKey, Object> results = tasks.executeOnKeys(candidates,
+                    new StealTaskEntryProcessor(fromAgentUuid, toAgentUuid));
+            for(Map.Entry<TaskKey, Object> result : results.entrySet()) {
+                String taskType = (String) result.getValue();
+                if(taskType == null) {
+                    continue; //the Agent started it in the meantime
+                }
+                stolenTasks.put(toAgentUuid, result.getKey());
+                taskLeaseKeeper.grant(result.getKey(), toAgentUuid);
+                stolenCountByType.merge(taskType, 1L, Long::sum);
+
+                statisticsService.incSubmittedTasks(taskType, toAgentUuid);
+                taskTransitionLogKeeper.taskReassigned(result.getKey(), toAgentUuid);
+            }
+        }
+        for(Map.Entry<String, Long> stolenCount : stolenCountByType.entrySet()) {
+            statisticsService.incTaskStolenCounter(stolenCount.getKey(), fromAgentUuid, stolenCount.getValue());
+        }
+
+        int stolen = stolenTasks.size();
+        agentCredits.release(fromAgentUuid, stolen);
+        agentCredits.release(toAgentUuid, reservedCredits - stolen);
+
+        if(stolen > 0) {
+            log.info("Moved {} not started tasks from Agent {} to Agent {}", stolen,
+                    NamesUtil.toLogFormat(fromAgentUuid), NamesUtil.toLogFormat(toAgentUuid));
+            notifyAgentsOfAssignedTasks(stolenTasks);
+        }
+        return stolen;
+    }
+
+
+    private Collection<Task> queryTasks(Predicate predicate) {
+        return tasks.values(predicate);
+    }
+
+    /**
+     * Paged queries sorted by {@link PriorityAndOldestTaskComparator} fetch the entries, the pages of the members
+     * are merged by comparing the values, which a keySet query does not bring back
+     */
+    private Set<Map.Entry<TaskKey, Task>> queryTaskEntries(PagingPredicate pagingPredicate) {
+        return tasks.entrySet(pagingPredicate);
     }
 
     /**
@@ -227,7 +944,8 @@ public class ClusterDistributionService {
      * @param agentUuid agentUuid
      */
     public void rescheduleAgentTasks(String agentUuid) {
-        Predicate selectionPredicate = Predicates.equal("clusterInstanceUuid", agentUuid);
+        Predicate selectionPredicate = Predicates.equal(TasksMapConfigUtil.CLUSTER_INSTANCE_UUID_ATTRIBUTE,
+                agentUuid);
 
         while(true) {
             boolean moreTasksFound = rescheduleMatchedTasks(100, selectionPredicate);
@@ -238,34 +956,124 @@ public class ClusterDistributionService {
     }
 
     /**
-     * Reschedule unassigned tasks to agents
-     * @param batchSize size of the reasigning batch
-     * @return true if tasks unassigned were found
+     * Reschedule unassigned tasks to agents, no more than the credits the agents have available
+     * @param maxBatchSize maximum size of the reasigning batch
+     * @return number of tasks that were assigned or found stale, 0 if there's nothing more to do for now
+     */
+    public int rescheduleUnassignedTasks(int maxBatchSize) {
+        int batchSize = Math.min(maxBatchSize, agentCredits.getTotalAvailableCredits());
+        if(batchSize <= 0) {
+            return 0;
+        }
+        //a burst of failures can't hold back the fresh tasks, nor the fresh tasks the retries
+        int retryBatchSize = unassignedTasksIndex.size() > 0 ?
+                Math.max(1, batchSize / RETRY_LANE_SHARE) : batchSize;
+        List<TaskKey> candidates = retryTasksIndex.poll(retryBatchSize);
+        candidates.addAll(unassignedTasksIndex.poll(batchSize - candidates.size()));
+        if(candidates.isEmpty()) {
+            return 0;
+        }
+        Map<TaskKey, Task> candidateTasks = tasks.getAll(new HashSet<>(candidates));
+
+        int processed = 0;
+        ListMultimap<String, TaskKey> assignedTasks = ArrayListMultimap.create();
+        for(TaskKey taskKey : candidates) {
+            Task task = candidateTasks.get(taskKey);
+            if(task == null || ! LOCAL_MASTER_UUID.equals(task.getClusterInstanceUuid())) {
+                processed ++;
+                continue; //stale entry, the task was finished or assigned in the meantime
+            }
+
+            String agentUuid = rescheduleTask(taskKey, task);
+            if(! LOCAL_MASTER_UUID.equals(agentUuid)) {
+                assignedTasks.put(agentUuid, taskKey);
+                processed ++;
+            }
+        }
+        notifyAgentsOfAssignedTasks(assignedTasks);
+
+        return processed;
+    }
+
+    /**
+     * Starts keeping the dispatch state of the tasks while waiting as standby, so the takeover
+     * doesn't have to read the tasks map
      */
-    public boolean rescheduleUnassignedTasks(int batchSize) {
-        Predicate selectionPredicate = Predicates.equal("clusterInstanceUuid", LOCAL_MASTER_UUID);
-        return rescheduleMatchedTasks(batchSize, selectionPredicate);
+    public void followDispatchState() {
+        standbyDispatchState = new StandbyDispatchState(tasks, recentDedupKeys);
+        standbyDispatchState.start();
+        seedRecentDedupKeys();
     }
 
     /**
-     *
-     * @param batchSize
-     * @param selectionPredicate
-     * @return
+     * Takes over the tasks already in the cluster, when taking over from a Master that left or when starting
+     * while tasks are present. The tasks assigned to Agents still in the cluster are left running on them
+     * and only counted as pending in the statistics, and only the tasks of members that left are unassigned.
+     * The index of unassigned tasks and the internal counter, which continues after the highest counter
+     * found, are rebuilt from the dispatch state kept while standby, or read now if this Master was not a standby.
      */
-    private boolean unassignMatchedTasks(int batchSize, Predicate selectionPredicate) {
-        PagingPredicate pagingPredicate = new PagingPredicate(selectionPredicate,
-                new PriorityAndOldestTaskComparator(),
-                batchSize);
+    public void takeOverDispatchState() {
+        StandbyDispatchState dispatchState = standbyDispatchState;
+        standbyDispatchState = null;
+        if(dispatchState == null) {
+            dispatchState = new StandbyDispatchState(tasks, recentDedupKeys);
+            dispatchState.start();
+            seedRecentDedupKeys();
+        }
+        Map<TaskKey, TaskDispatchState> states = dispatchState.stop();
 
-        Set<TaskKey> foundTasks = queryTaskKeys(pagingPredicate);
-        log.info("Looking for paged tasks matching {} found {} ", selectionPredicate, foundTasks.size());
+        Set<String> memberUuids = new HashSet<>();
+        for(Member member : hazelcastTopologyService.getHzInstance().getCluster().getMembers()) {
+            memberUuids.add(member.getUuid());
+        }
+
+        long highestCounter = -1;
+        List<TaskKey> orphanedTaskKeys = new ArrayList<>();
+        synchronized (unassignedTasksIndex) {
+            unassignedTasksIndex.clear();
+            for(Map.Entry<TaskKey, TaskDispatchState> entry : states.entrySet()) {
+                TaskDispatchState state = entry.getValue();
+                highestCounter = Math.max(highestCounter, state.getInternalCounter());
+
+                String agentUuid = state.getClusterInstanceUuid();
+                if(LOCAL_MASTER_UUID.equals(agentUuid)) {
+                    unassignedTasksIndex.add(entry.getKey(), state.getPriority(), state.getInternalCounter());
+                    statisticsService.incUnassignedTasks(state.getTaskType());
+                } else if(memberUuids.contains(agentUuid)) {
+                    statisticsService.incSubmittedTasks(state.getTaskType(), agentUuid);
+                    taskLeaseKeeper.grant(entry.getKey(), agentUuid);
+                } else {
+                    orphanedTaskKeys.add(entry.getKey());
+                }
+            }
+        }
+        setLatestTaskCounter(Math.max(highestCounter + 1, System.currentTimeMillis()));
 
-        for(TaskKey taskKey: foundTasks) {
+        for(TaskKey taskKey : orphanedTaskKeys) {
             unassignTask(taskKey);
         }
+        log.info("Took over {} tasks, unassigned {} tasks of Agents no longer in the cluster", states.size(),
+                orphanedTaskKeys.size());
+    }
 
-        return foundTasks.size() > 0;
+    /**
+     * Remembers the dedup keys of the tasks already in the tasks map, otherwise they would not be checked
+     * when submitted again
+     */
+    private void seedRecentDedupKeys() {
+        if(recentDedupKeys == null) {
+            return;
+        }
+        Map<TaskKey, Object> dedupKeys = tasks.executeOnEntries(new GetTaskDedupKeyEntryProcessor());
+
+        int seeded = 0;
+        for(Object dedupKey : dedupKeys.values()) {
+            if(dedupKey != null) {
+                recentDedupKeys.add((String) dedupKey);
+                seeded++;
+            }
+        }
+        log.info("Remembered the dedup keys of {} tasks already submitted", seeded);
     }
 
     private boolean rescheduleMatchedTasks(int batchSize, Predicate selectionPredicate) {
@@ -274,25 +1082,66 @@ public class ClusterDistributionService {
                 new PriorityAndOldestTaskComparator(),
                 batchSize);
 
-        Set<TaskKey> foundTasks = queryTaskKeys(pagingPredicate);
+        Set<Map.Entry<TaskKey, Task>> foundTasks = queryTaskEntries(pagingPredicate);
         log.info("Looking for paged tasks matching {} found {} ", selectionPredicate, foundTasks.size());
 
-        for(TaskKey taskKey: foundTasks) {
-            rescheduleTask(taskKey);
+        ListMultimap<String, TaskKey> assignedTasks = ArrayListMultimap.create();
+        for(Map.Entry<TaskKey, Task> entry : foundTasks) {
+            TaskKey taskKey = entry.getKey();
+            Task task = entry.getValue();
+            if(quarantineIfLostTooManyRuns(taskKey, task)) {
+                continue;
+            }
+            String agentUuid = rescheduleTask(taskKey, task);
+            if(! LOCAL_MASTER_UUID.equals(agentUuid)) {
+                assignedTasks.put(agentUuid, taskKey);
+            }
         }
+        notifyAgentsOfAssignedTasks(assignedTasks);
 
         return foundTasks.size() > 0;
     }
 
+    /**
+     * Records a lost run for a task that was running on an Agent that left, and moves it to
+     * the dead letter store if it lost too many runs
+     * @return true if the task was moved
+     */
+    private boolean quarantineIfLostTooManyRuns(TaskKey taskKey, Task task) {
+        if(deadLetterService == null || task.getProcessingStartedDate() == 0) {
+            return false;
+        }
+        String agentUuid = task.getClusterInstanceUuid();
+        task.addFailure(TaskFailure.lostRun(agentUuid));
+        if(TaskFailure.countLostRuns(task.getFailures()) < deadLetterService.getMaxLostRuns()) {
+            return false; //recorded when the task is rescheduled
+        }
+        tasks.delete(taskKey);
+        taskLeaseKeeper.release(taskKey);
+        quarantineTasks(Collections.singletonList(task), agentUuid);
+        return true;
+    }
+
     public synchronized void shutdown() {
         shuttingDown = true;
-        tasksDistributionThread.interrupt();
+        tasksDispatcherThread.shutDown();
+        if(tasksRebalancerThread != null) {
+            tasksRebalancerThread.interrupt();
+        }
+        if(taskLeaseExpiryThread != null) {
+            taskLeaseExpiryThread.interrupt();
+        }
+        taskRetryThread.interrupt();
     }
 
     public int getTaskCount() {
         return tasks.size();
     }
 
+    public int getUnassignedTaskCount() {
+        return unassignedTasksIndex.size() + retryTasksIndex.size();
+    }
+
     public int getAgentsCount() {
         return hazelcastTopologyService.getAgentsCount();
     }
@@ -317,6 +1166,38 @@ public class ClusterDistributionService {
         this.taskTransitionLogKeeper = taskTransitionLogKeeper;
     }
 
+    public TaskLatencyTracker getTaskLatencyTracker() {
+        return taskLatencyTracker;
+    }
+
+    public void setTaskLatencyTracker(TaskLatencyTracker taskLatencyTracker) {
+        this.taskLatencyTracker = taskLatencyTracker;
+    }
+
+    public void setRetryPolicies(Map<Class, RetryPolicy> retryPolicies) {
+        this.retryPolicies = retryPolicies;
+    }
+
+    public void setDefaultRetryPolicy(RetryPolicy defaultRetryPolicy) {
+        this.defaultRetryPolicy = defaultRetryPolicy;
+    }
+
+    public void setDeadLetterService(DeadLetterService deadLetterService) {
+        this.deadLetterService = deadLetterService;
+    }
+
+    /**
+     * Enables the deduplication of the submitted tasks, indexing the tasks by their dedup key
+     */
+    public void setRecentDedupKeys(RecentKeysFilter recentDedupKeys) {
+        this.recentDedupKeys = recentDedupKeys;
+        tasks.addIndex(TasksMapConfigUtil.DEDUP_KEY_ATTRIBUTE, false);
+    }
+
+    public void setTaskLeaseKeeper(TaskLeaseKeeper taskLeaseKeeper) {
+        this.taskLeaseKeeper = taskLeaseKeeper;
+    }
+
     public boolean isShuttingDown() {
         return shuttingDown;
     }
@@ -5,10 +5,14 @@ import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IExecutorService;
 import com.hazelcast.core.Member;
 import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.task.TaskKey;
 import ro.fortsoft.hztask.op.AbstractClusterOp;
+import ro.fortsoft.hztask.op.agent.CancelTasksOp;
+import ro.fortsoft.hztask.op.agent.NotifyAgentTasksAssignedOp;
 import ro.fortsoft.hztask.op.agent.OutputDebugStatsOp;
 import ro.fortsoft.hztask.op.agent.ShutdownAgentOp;
 
+import java.util.Collection;
 import java.util.concurrent.Future;
 
 /**
@@ -39,6 +43,14 @@ public class CommunicationService {
         return communicationExecutorService.submitToMember(new ShutdownAgentOp(), member);
     }
 
+    public Future sendTasksAssignedMessageToMember(Member member, Collection<TaskKey> taskKeys) {
+        return communicationExecutorService.submitToMember(new NotifyAgentTasksAssignedOp(taskKeys), member);
+    }
+
+    public Future sendCancelTasksMessageToMember(Member member, Collection<TaskKey> taskKeys) {
+        return communicationExecutorService.submitToMember(new CancelTasksOp(taskKeys), member);
+    }
+
     public Future sendOutputDebugStatsMessageToMember(Member member) {
         return communicationExecutorService.submitToMember(new OutputDebugStatsOp(), member);
     }
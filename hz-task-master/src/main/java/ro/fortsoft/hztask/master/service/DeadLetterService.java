@@ -0,0 +1,131 @@
+package ro.fortsoft.hztask.master.service;
+
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.entryprocessor.RemoveTaskEntryProcessor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps in a cluster map the poison tasks, which used up the tries of their RetryPolicy or lost too many runs,
+ * so they don't keep taking up the Agents. They can be looked at with the summaries of their failures,
+ * and purged or requeued in bulk.
+ *
+ * @author Serban Balamaci
+ */
+public class DeadLetterService {
+
+    /** number of tasks purged or requeued at once **/
+    private static final int BATCH_SIZE = 1000;
+
+    private final ClusterDistributionService clusterDistributionService;
+
+    private final IMap<TaskKey, Task> deadLetterTasks;
+
+    private final int maxLostRuns;
+
+    private static final Logger log = LoggerFactory.getLogger(DeadLetterService.class);
+
+    /**
+     * @param maxLostRuns number of runs a task can lose before it's moved to the dead letter store
+     */
+    public DeadLetterService(ClusterDistributionService clusterDistributionService, int maxLostRuns) {
+        this.clusterDistributionService = clusterDistributionService;
+        this.deadLetterTasks = clusterDistributionService.getHazelcastTopologyService().getHzInstance()
+                .getMap(HzKeysConstants.DEAD_LETTER_TASKS_MAP);
+        this.maxLostRuns = maxLostRuns;
+    }
+
+    /**
+     * Moves the tasks, already removed from the tasks map, in the dead letter store
+     */
+    public void quarantine(Collection<Task> tasks) {
+        Map<TaskKey, Task> entries = new HashMap<>(tasks.size() * 2);
+        for(Task task : tasks) {
+            log.warn("Moving task {} to the dead letter store, failures {}", task, task.getFailures());
+            entries.put(task.getTaskKey(), task);
+        }
+        deadLetterTasks.putAll(entries);
+    }
+
+    /**
+     * @param predicate the tasks to return, on the attributes of the tasks
+     * @return the matching tasks, with the summaries of their failures
+     */
+    public Collection<Task> getTasks(Predicate predicate) {
+        return deadLetterTasks.values(predicate);
+    }
+
+    /**
+     * @param predicate the tasks to remove, on the attributes of the tasks
+     * @return the number of removed tasks
+     */
+    public int purge(Predicate predicate) {
+        int purged = 0;
+        for(Set<TaskKey> batch : batches(deadLetterTasks.keySet(predicate))) {
+            purged += deadLetterTasks.executeOnKeys(batch, new RemoveTaskEntryProcessor()).size();
+        }
+        log.info("Purged {} tasks from the dead letter store", purged);
+        return purged;
+    }
+
+    /**
+     * Submits again the tasks for distribution, with no tries or failures, and removes them from the
+     * dead letter store
+     * @param predicate the tasks to requeue, on the attributes of the tasks
+     * @return the number of requeued tasks
+     */
+    public int requeue(Predicate predicate) {
+        int requeued = 0;
+        for(Set<TaskKey> batch : batches(deadLetterTasks.keySet(predicate))) {
+            Collection<Task> tasks = deadLetterTasks.getAll(batch).values();
+            for(Task task : tasks) {
+                task.setNrOfTries(0);
+                task.setAssignedDate(0);
+                task.setStartedDate(0);
+                task.setProcessingStartedDate(0);
+                task.clearFailures();
+            }
+            //the tasks keep their keys, so requeuing them twice if we fail in between does no harm
+            requeued += clusterDistributionService.queueTasks(tasks.iterator());
+            deadLetterTasks.executeOnKeys(batch, new RemoveTaskEntryProcessor());
+        }
+        log.info("Requeued {} tasks from the dead letter store", requeued);
+        return requeued;
+    }
+
+    public int getTasksCount() {
+        return deadLetterTasks.size();
+    }
+
+    public int getMaxLostRuns() {
+        return maxLostRuns;
+    }
+
+    private static List<Set<TaskKey>> batches(Set<TaskKey> taskKeys) {
+        List<Set<TaskKey>> batches = new ArrayList<>();
+        Set<TaskKey> batch = new HashSet<>();
+        for(TaskKey taskKey : taskKeys) {
+            batch.add(taskKey);
+            if(batch.size() == BATCH_SIZE) {
+                batches.add(batch);
+                batch = new HashSet<>();
+            }
+        }
+        if(! batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+}
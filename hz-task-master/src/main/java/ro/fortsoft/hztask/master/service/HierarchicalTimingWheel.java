@@ -0,0 +1,155 @@
+package ro.fortsoft.hztask.master.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel holding large numbers of timers, with constant time for adding a timer
+ * and for finding the expired ones.
+ *
+ * Time is counted in ticks. Level 0 has a bucket for each of the next WHEEL_SIZE ticks, each higher level
+ * has a bucket spanning a full turn of the level below it. A timer is put in the lowest level where
+ * its due tick falls in the current turn of the level above. When the clock completes a turn of a level,
+ * the bucket of the level above that comes up is emptied into the lower levels, closer to the timer's
+ * due tick, so a timer is moved at most once per level before it expires from level 0.
+ *
+ * Not thread safe.
+ *
+ * @author Serban Balamaci
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+
+    /** levels needed to cover the whole range of a long **/
+    private static final int MAX_LEVELS = (Long.SIZE + WHEEL_BITS - 1) / WHEEL_BITS;
+
+    private final long tickMillis;
+
+    /** buckets of every level, created on demand **/
+    private final List<List<Timer<T>>[]> levels = new ArrayList<>();
+
+    /** timers that were already due when added **/
+    private List<T> overdue = new ArrayList<>();
+
+    /** the ticks up to and including this one were processed **/
+    private long currentTick;
+
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    public void add(T item, long dueMillis) {
+        long dueTick = dueMillis / tickMillis;
+        size++;
+        if(dueTick <= currentTick) {
+            overdue.add(item);
+            return;
+        }
+        place(new Timer<>(item, dueTick));
+    }
+
+    /**
+     * Moves the clock up to now
+     * @return the items whose timers expired
+     */
+    public List<T> advance(long nowMillis) {
+        List<T> expired = overdue;
+        overdue = new ArrayList<>();
+
+        long targetTick = nowMillis / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+
+            List<Timer<T>> bucket = takeBucket(0, (int) (currentTick & WHEEL_MASK));
+            if(bucket != null) {
+                for(Timer<T> timer : bucket) {
+                    expired.add(timer.item);
+                }
+            }
+        }
+        size -= expired.size();
+        return expired;
+    }
+
+    /**
+     * @return the number of timers held
+     */
+    public int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Empties into the lower levels the buckets of the higher levels whose turn came up on the current tick,
+     * starting with the highest so their timers can fall through more levels
+     */
+    private void cascade() {
+        int level = 1;
+        while (level < levels.size() && (currentTick & ((1L << (level * WHEEL_BITS)) - 1)) == 0) {
+            level++;
+        }
+        for(level = level - 1; level > 0; level--) {
+            List<Timer<T>> bucket = takeBucket(level, (int) ((currentTick >>> (level * WHEEL_BITS)) & WHEEL_MASK));
+            if(bucket != null) {
+                for(Timer<T> timer : bucket) {
+                    place(timer);
+                }
+            }
+        }
+    }
+
+    /**
+     * The level is given by the highest digit, in base WHEEL_SIZE, in which the due tick and the current tick
+     * differ, the bucket by the due tick's digit on that level
+     */
+    private void place(Timer<T> timer) {
+        int highestDifferentBit = 63 - Long.numberOfLeadingZeros(timer.dueTick ^ currentTick);
+        int level = Math.min(highestDifferentBit / WHEEL_BITS, MAX_LEVELS - 1);
+        int slot = (int) ((timer.dueTick >>> (level * WHEEL_BITS)) & WHEEL_MASK);
+
+        List<Timer<T>>[] buckets = getLevel(level);
+        if(buckets[slot] == null) {
+            buckets[slot] = new ArrayList<>();
+        }
+        buckets[slot].add(timer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Timer<T>>[] getLevel(int level) {
+        while (levels.size() <= level) {
+            levels.add(new List[WHEEL_SIZE]);
+        }
+        return levels.get(level);
+    }
+
+    private List<Timer<T>> takeBucket(int level, int slot) {
+        if(level >= levels.size()) {
+            return null;
+        }
+        List<Timer<T>>[] buckets = levels.get(level);
+        List<Timer<T>> bucket = buckets[slot];
+        buckets[slot] = null;
+        return bucket;
+    }
+
+    private static class Timer<T> {
+
+        private final T item;
+        private final long dueTick;
+
+        private Timer(T item, long dueTick) {
+            this.item = item;
+            this.dueTick = dueTick;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ro.fortsoft.hztask.master.service;
+
+import com.hazelcast.core.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.task.ScheduledTask;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.entryprocessor.AdvanceScheduledTaskEntryProcessor;
+import ro.fortsoft.hztask.entryprocessor.GetScheduledTaskDueDateEntryProcessor;
+import ro.fortsoft.hztask.master.scheduler.ScheduledTasksReleaseThread;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Keeps the tasks submitted to run later, once or repeatedly, and submits them for distribution when
+ * they are due.
+ *
+ * The scheduled tasks are kept in a cluster map, so they survive the Master leaving, while the Master only
+ * keeps their ids in a {@link HierarchicalTimingWheel}. The due tasks are submitted in batches and only then
+ * removed(or moved to their next run if recurring) from the map, so a Master leaving in between can at most
+ * submit a task twice, not lose it.
+ *
+ * @author Serban Balamaci
+ */
+public class ScheduledTasksService {
+
+    private static final long TICK_MS = 100;
+
+    /** number of due tasks read and submitted at once **/
+    private static final int RELEASE_BATCH_SIZE = 1000;
+
+    private final ClusterDistributionService clusterDistributionService;
+
+    private final IMap<String, ScheduledTask> scheduledTasks;
+
+    /** guarded by itself **/
+    private final HierarchicalTimingWheel<String> timingWheel;
+
+    private ScheduledTasksReleaseThread releaseThread;
+
+    private volatile boolean shuttingDown = false;
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduledTasksService.class);
+
+    public ScheduledTasksService(ClusterDistributionService clusterDistributionService) {
+        this.clusterDistributionService = clusterDistributionService;
+        this.scheduledTasks = clusterDistributionService.getHazelcastTopologyService().getHzInstance()
+                .getMap(HzKeysConstants.SCHEDULED_TASKS_MAP);
+        this.timingWheel = new HierarchicalTimingWheel<>(TICK_MS, System.currentTimeMillis());
+    }
+
+    /**
+     * @param task task
+     * @param delayMillis how long to wait before submitting the task
+     * @return the id of the schedule, the task id
+     */
+    public String schedule(Task task, long delayMillis) {
+        return schedule(task.getId(), task, delayMillis, 0);
+    }
+
+    /**
+     * @param task task, every run is submitted as a copy of it with its own id
+     * @param initialDelayMillis how long to wait before the first run
+     * @param periodMillis time between the start of two runs
+     * @return the id of the schedule, for cancelling it
+     */
+    public String scheduleAtFixedRate(Task task, long initialDelayMillis, long periodMillis) {
+        if(periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        return schedule(UUID.randomUUID().toString(), task, initialDelayMillis, periodMillis);
+    }
+
+    private String schedule(String scheduleId, Task task, long delayMillis, long periodMillis) {
+        long dueDate = System.currentTimeMillis() + delayMillis;
+        scheduledTasks.set(scheduleId, new ScheduledTask(scheduleId, task, dueDate, periodMillis));
+        synchronized (timingWheel) {
+            timingWheel.add(scheduleId, dueDate);
+        }
+        log.info("Scheduled task={} to be submitted in {}ms", task, delayMillis);
+        return scheduleId;
+    }
+
+    /**
+     * Cancel the future runs of the scheduled task, its timer is left to expire and finds nothing to submit
+     * @return false if there was no such scheduled task
+     */
+    public boolean cancel(String scheduleId) {
+        return scheduledTasks.remove(scheduleId) != null;
+    }
+
+    /**
+     * Loads the timers of the scheduled tasks found in the cluster, left by a previous Master, and starts
+     * the thread submitting the due tasks
+     */
+    public synchronized void start() {
+        Map<String, Object> dueDates = scheduledTasks.executeOnEntries(new GetScheduledTaskDueDateEntryProcessor());
+        synchronized (timingWheel) {
+            for(Map.Entry<String, Object> entry : dueDates.entrySet()) {
+                if(entry.getValue() != null) {
+                    timingWheel.add(entry.getKey(), (Long) entry.getValue());
+                }
+            }
+        }
+        log.info("Loaded {} scheduled tasks", dueDates.size());
+
+        releaseThread = new ScheduledTasksReleaseThread(this, TICK_MS);
+        releaseThread.start();
+    }
+
+    /**
+     * Submits the tasks that are due
+     * @return the number of submitted tasks
+     */
+    public int releaseDueTasks() {
+        long now = System.currentTimeMillis();
+        List<String> dueScheduleIds;
+        synchronized (timingWheel) {
+            dueScheduleIds = timingWheel.advance(now);
+        }
+
+        int released = 0;
+        for(int from = 0; from < dueScheduleIds.size(); from += RELEASE_BATCH_SIZE) {
+            List<String> batch = dueScheduleIds.subList(from, Math.min(dueScheduleIds.size(),
+                    from + RELEASE_BATCH_SIZE));
+            try {
+                released += releaseBatch(new HashSet<>(batch), now);
+            } catch (RuntimeException e) { //try again on the next tick the batches not released
+                synchronized (timingWheel) {
+                    for(String scheduleId : dueScheduleIds.subList(from, dueScheduleIds.size())) {
+                        timingWheel.add(scheduleId, now);
+                    }
+                }
+                throw e;
+            }
+        }
+        return released;
+    }
+
+    private int releaseBatch(Set<String> scheduleIds, long now) {
+        Map<String, ScheduledTask> dueTasks = scheduledTasks.getAll(scheduleIds);
+
+        List<Task> tasks = new ArrayList<>(dueTasks.size());
+        Set<String> releasedScheduleIds = new HashSet<>();
+        for(ScheduledTask scheduledTask : dueTasks.values()) {
+            if(scheduledTask.getDueDate() <= now + TICK_MS) { //else scheduled again, a timer is waiting for it
+                tasks.add(scheduledTask.createOccurrence());
+                releasedScheduleIds.add(scheduledTask.getScheduleId());
+            }
+        }
+        if(tasks.isEmpty()) { //cancelled
+            return 0;
+        }
+        clusterDistributionService.queueTasks(tasks.iterator());
+
+        Map<String, Object> nextDueDates = scheduledTasks.executeOnKeys(releasedScheduleIds,
+                new AdvanceScheduledTaskEntryProcessor(now + TICK_MS));
+        synchronized (timingWheel) {
+            for(Map.Entry<String, Object> entry : nextDueDates.entrySet()) {
+                if(entry.getValue() != null) {
+                    timingWheel.add(entry.getKey(), (Long) entry.getValue());
+                }
+            }
+        }
+        return tasks.size();
+    }
+
+    /**
+     * @return the number of scheduled tasks waiting to be due
+     */
+    public int getScheduledTasksCount() {
+        synchronized (timingWheel) {
+            return timingWheel.size();
+        }
+    }
+
+    public boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    public synchronized void shutdown() {
+        shuttingDown = true;
+        if(releaseThread != null) {
+            releaseThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ro.fortsoft.hztask.master.service;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.hazelcast.core.EntryEvent;
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryEvictedListener;
+import com.hazelcast.map.listener.EntryRemovedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ro.fortsoft.hztask.common.task.Task;
+import ro.fortsoft.hztask.common.task.TaskDispatchState;
+import ro.fortsoft.hztask.common.task.TaskKey;
+import ro.fortsoft.hztask.entryprocessor.GetTaskDispatchStateEntryProcessor;
+import ro.fortsoft.hztask.master.dedup.RecentKeysFilter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The dispatch state of every task, kept by a standby Master from the events of the tasks map,
+ * so taking over doesn't need to read the whole tasks map again.
+ * It's seeded with one pass over the tasks map, the events received in the meantime taking precedence
+ * over the values read. The dedup keys of the tasks added are remembered as well, so their resubmissions
+ * are checked once this Master takes over.
+ *
+ * The events of the tasks written by the active Master right before it left are normally delivered long
+ * before its departure is noticed, the Agents holding on to the finished tasks until a new Master announces itself.
+ *
+ * @author Serban Balamaci
+ */
+public class StandbyDispatchState implements EntryAddedListener<TaskKey, Task>, EntryUpdatedListener<TaskKey, Task>,
+        EntryRemovedListener<TaskKey, Task>, EntryEvictedListener<TaskKey, Task> {
+
+    /** marks a task removed while seeding, so the value read before the removal is not kept **/
+    private static final TaskDispatchState REMOVED = new TaskDispatchState();
+
+    private final IMap<TaskKey, Task> tasks;
+
+    private final ConcurrentMap<TaskKey, TaskDispatchState> states = new ConcurrentHashMap<>();
+
+    /** null if the submitted tasks are not deduplicated **/
+    private final RecentKeysFilter recentDedupKeys;
+
+    /** the same few Agent uuids and task types are found on all the tasks **/
+    private final Interner<String> interner = Interners.newWeakInterner();
+
+    private volatile boolean seeding;
+
+    private String listenerId;
+
+    private static final Logger log = LoggerFactory.getLogger(StandbyDispatchState.class);
+
+    public StandbyDispatchState(IMap<TaskKey, Task> tasks, RecentKeysFilter recentDedupKeys) {
+        this.tasks = tasks;
+        this.recentDedupKeys = recentDedupKeys;
+    }
+
+    /**
+     * Starts following the events of the tasks map and reads the state of the tasks already present
+     */
+    public void start() {
+        seeding = true;
+        listenerId = tasks.addEntryListener(this, true);
+
+        Map<TaskKey, Object> read = tasks.executeOnEntries(new GetTaskDispatchStateEntryProcessor());
+        for(Map.Entry<TaskKey, Object> entry : read.entrySet()) {
+            TaskDispatchState state = (TaskDispatchState) entry.getValue();
+            if(state != null) {
+                states.putIfAbsent(entry.getKey(), intern(state));
+            }
+        }
+        seeding = false;
+        states.values().removeIf(state -> state == REMOVED);
+        log.info("Standby following the state of {} tasks", states.size());
+    }
+
+    /**
+     * Stops following the tasks map
+     * @return the dispatch state of every task
+     */
+    public Map<TaskKey, TaskDispatchState> stop() {
+        tasks.removeEntryListener(listenerId);
+        states.values().removeIf(state -> state == REMOVED);
+        return Collections.unmodifiableMap(states);
+    }
+
+    @Override
+    public void entryAdded(EntryEvent<TaskKey, Task> event) {
+        Task task = event.getValue();
+        states.put(event.getKey(), intern(new TaskDispatchState(task)));
+        if(recentDedupKeys != null && task.getDedupKey() != null) {
+            recentDedupKeys.add(task.getDedupKey());
+        }
+    }
+
+    @Override
+    public void entryUpdated(EntryEvent<TaskKey, Task> event) {
+        states.put(event.getKey(), intern(new TaskDispatchState(event.getValue())));
+    }
+
+    @Override
+    public void entryRemoved(EntryEvent<TaskKey, Task> event) {
+        removed(event.getKey());
+    }
+
+    @Override
+    public void entryEvicted(EntryEvent<TaskKey, Task> event) {
+        removed(event.getKey());
+    }
+
+    private void removed(TaskKey taskKey) {
+        if(seeding) {
+            states.put(taskKey, REMOVED);
+        } else {
+            states.remove(taskKey);
+        }
+    }
+
+    private TaskDispatchState intern(TaskDispatchState state) {
+        String clusterInstanceUuid = state.getClusterInstanceUuid();
+        return new TaskDispatchState(clusterInstanceUuid == null ? null : interner.intern(clusterInstanceUuid),
+                interner.intern(state.getTaskType()), state.getPriority(), state.getInternalCounter());
+    }
+}
@@ -1,10 +1,15 @@
 package ro.fortsoft.hztask.master.service;
 
 import com.google.common.base.Optional;
+import com.hazelcast.core.HazelcastInstance;
+import ro.fortsoft.hztask.common.stream.ResultStreamRef;
 import ro.fortsoft.hztask.common.task.Task;
 import ro.fortsoft.hztask.master.MasterConfig;
 import ro.fortsoft.hztask.master.handler.TaskCompletionHandler;
 import ro.fortsoft.hztask.master.handler.TaskCompletionHandlerFactory;
+import ro.fortsoft.hztask.master.statistics.latency.LatencyPhase;
+import ro.fortsoft.hztask.master.statistics.latency.TaskLatencyTracker;
+import ro.fortsoft.hztask.master.stream.ResultInputStream;
 import ro.fortsoft.hztask.master.util.NamesUtil;
 
 import java.util.concurrent.ExecutorService;
@@ -19,6 +24,10 @@ public class TaskCompletionHandlerProvider {
 
     private MasterConfig masterConfig;
 
+    private TaskLatencyTracker taskLatencyTracker;
+
+    private HazelcastInstance hzInstance;
+
     /**
      * Task executor service that executes the handling of the task result processing
      * so that we don't block any future completed task processing we process them in a separate thread
@@ -26,8 +35,11 @@ public class TaskCompletionHandlerProvider {
     private ExecutorService taskExecutorService = Executors.newCachedThreadPool();
 
 
-    public TaskCompletionHandlerProvider(MasterConfig masterConfig) {
+    public TaskCompletionHandlerProvider(MasterConfig masterConfig, TaskLatencyTracker taskLatencyTracker,
+                                         HazelcastInstance hzInstance) {
         this.masterConfig = masterConfig;
+        this.taskLatencyTracker = taskLatencyTracker;
+        this.hzInstance = hzInstance;
     }
 
     /**
@@ -35,17 +47,42 @@ public class TaskCompletionHandlerProvider {
      * @param task Task
      * @param taskResult taskResult
      */
-    public void onSuccess(final Task task, final Object taskResult) {
+    public void onSuccess(final Task task, Object taskResult) {
         final String agentName = NamesUtil.toLogFormat(task.getClusterInstanceUuid());
 
         final Optional<TaskCompletionHandler> finishedTaskHandler = getCompletionHandlerForTask(task);
-        if (finishedTaskHandler.isPresent()) {
-            taskExecutorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    finishedTaskHandler.get().onSuccess(task, taskResult, agentName);
+        if (! finishedTaskHandler.isPresent()) {
+            discardResult(taskResult);
+            return;
+        }
+
+        //a streamed result is handed as an InputStream, closed once the handler returns
+        final Object handlerResult = taskResult instanceof ResultStreamRef ?
+                new ResultInputStream(hzInstance, (ResultStreamRef) taskResult) : taskResult;
+        taskExecutorService.submit(new Runnable() {
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                try {
+                    finishedTaskHandler.get().onSuccess(task, handlerResult, agentName);
+                } finally {
+                    if(handlerResult instanceof ResultInputStream) {
+                        ((ResultInputStream) handlerResult).close();
+                    }
+                    recordHandlerLatency(task, System.nanoTime() - start);
                 }
-            });
+            }
+        });
+    }
+
+    /**
+     * Drops the result of a task that has no one to handle it, a streamed result is abandoned
+     * so the Agent stops writing it
+     * @param taskResult taskResult
+     */
+    public void discardResult(Object taskResult) {
+        if(taskResult instanceof ResultStreamRef) {
+            new ResultInputStream(hzInstance, (ResultStreamRef) taskResult).close();
         }
     }
 
@@ -61,12 +98,22 @@ public class TaskCompletionHandlerProvider {
             taskExecutorService.submit(new Runnable() {
                 @Override
                 public void run() {
-                    finishedTaskHandler.get().onFail(task, exception, agentName);
+                    long start = System.nanoTime();
+                    try {
+                        finishedTaskHandler.get().onFail(task, exception, agentName);
+                    } finally {
+                        recordHandlerLatency(task, System.nanoTime() - start);
+                    }
                 }
             });
         }
     }
 
+    private void recordHandlerLatency(Task task, long nanos) {
+        taskLatencyTracker.recordNanos(LatencyPhase.COMPLETION_HANDLER, task.getTaskType(),
+                task.getClusterInstanceUuid(), nanos);
+    }
+
     private Optional<TaskCompletionHandler> getCompletionHandlerForTask(Task task) {
         TaskCompletionHandlerFactory taskCompletionHandlerFactory = masterConfig.
                 getFinishedTaskListeners().get(task.getClass());
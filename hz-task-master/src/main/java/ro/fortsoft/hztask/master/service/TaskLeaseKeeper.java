@@ -0,0 +1,189 @@
+package ro.fortsoft.hztask.master.service;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the leases the Agents hold on the tasks assigned to them. A lease is granted on assignment and
+ * the Agent renews it for all the tasks it holds, a task whose lease ran out is stuck(hung or lost
+ * by the Agent) and can be taken back.
+ *
+ * The deadlines are kept in a timing wheel, a ring of buckets each holding the tasks with the deadline
+ * in one tick, so finding the expired leases only looks at the buckets of the ticks that passed.
+ * A renewed lease is just added to its new bucket, the entry left in the old bucket is skipped
+ * when that bucket comes up.
+ *
+ * @author Serban Balamaci
+ */
+public class TaskLeaseKeeper {
+
+    /** number of ticks a lease spans, the precision of the expiry **/
+    private static final int TICKS_PER_LEASE = 20;
+
+    private static final long MIN_TICK_MS = 100;
+
+    private final long leaseMillis;
+
+    private final long tickMillis;
+
+    private final List<Set<TaskKey>> wheel;
+
+    private final Map<TaskKey, Lease> leases = new HashMap<>();
+
+    /** the buckets up to and including this tick were processed **/
+    private long processedTick;
+
+    /**
+     * @param leaseMillis how long a lease lasts without being renewed, 0 disables the leases
+     */
+    public TaskLeaseKeeper(long leaseMillis) {
+        this.leaseMillis = leaseMillis;
+        this.tickMillis = Math.max(MIN_TICK_MS, leaseMillis / TICKS_PER_LEASE);
+
+        int wheelSize = isEnabled() ? (int) (leaseMillis / tickMillis) + 2 : 0;
+        wheel = new ArrayList<>(wheelSize);
+        for(int i = 0; i < wheelSize; i++) {
+            wheel.add(new HashSet<TaskKey>());
+        }
+        processedTick = System.currentTimeMillis() / tickMillis - 1;
+    }
+
+    public boolean isEnabled() {
+        return leaseMillis > 0;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * Grant the Agent a new lease on the task, replacing any other lease on it
+     */
+    public synchronized void grant(TaskKey taskKey, String agentUuid) {
+        if(! isEnabled()) {
+            return;
+        }
+        Lease lease = new Lease(agentUuid, System.currentTimeMillis() + leaseMillis);
+        leases.put(taskKey, lease);
+        schedule(taskKey, lease);
+    }
+
+    /**
+     * Extends the leases of the Agent. Tasks without a lease(for ex. assigned by the Master this one
+     * took over from) get a new one, the leases of other Agents are left alone
+     * @return the number of renewed leases
+     */
+    public synchronized int renew(String agentUuid, Collection<TaskKey> taskKeys) {
+        if(! isEnabled()) {
+            return 0;
+        }
+        long deadline = System.currentTimeMillis() + leaseMillis;
+        int renewed = 0;
+        for(TaskKey taskKey : taskKeys) {
+            Lease lease = leases.get(taskKey);
+            if(lease == null) {
+                lease = new Lease(agentUuid, deadline);
+                leases.put(taskKey, lease);
+            } else if(agentUuid.equals(lease.agentUuid)) {
+                lease.deadline = deadline;
+            } else {
+                continue;
+            }
+            schedule(taskKey, lease);
+            renewed ++;
+        }
+        return renewed;
+    }
+
+    public synchronized void release(TaskKey taskKey) {
+        leases.remove(taskKey);
+    }
+
+    public synchronized void release(Collection<TaskKey> taskKeys) {
+        for(TaskKey taskKey : taskKeys) {
+            leases.remove(taskKey);
+        }
+    }
+
+    /**
+     * Removes the leases that ran out
+     * @return agentUuid to the keys of the tasks whose lease expired
+     */
+    public synchronized ListMultimap<String, TaskKey> expire() {
+        ListMultimap<String, TaskKey> expired = ArrayListMultimap.create();
+        if(! isEnabled()) {
+            return expired;
+        }
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMillis;
+
+        if(currentTick - processedTick > wheel.size()) { //fell behind a whole turn of the wheel
+            expireByScan(now, expired);
+        } else {
+            //only the ticks fully in the past, all the deadlines in their buckets passed
+            for (long tick = processedTick + 1; tick < currentTick; tick++) {
+                Set<TaskKey> bucket = wheel.get(bucketIndex(tick));
+                for (TaskKey taskKey : bucket) {
+                    Lease lease = leases.get(taskKey);
+                    if (lease != null && lease.deadline / tickMillis == tick) {
+                        leases.remove(taskKey);
+                        expired.put(lease.agentUuid, taskKey);
+                    }
+                }
+                bucket.clear();
+            }
+        }
+        processedTick = currentTick - 1;
+        return expired;
+    }
+
+    private void expireByScan(long now, ListMultimap<String, TaskKey> expired) {
+        for(Set<TaskKey> bucket : wheel) {
+            bucket.clear();
+        }
+        Iterator<Map.Entry<TaskKey, Lease>> it = leases.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<TaskKey, Lease> entry = it.next();
+            if(entry.getValue().deadline < now) {
+                expired.put(entry.getValue().agentUuid, entry.getKey());
+                it.remove();
+            } else {
+                schedule(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void schedule(TaskKey taskKey, Lease lease) {
+        wheel.get(bucketIndex(lease.deadline / tickMillis)).add(taskKey);
+    }
+
+    private int bucketIndex(long tick) {
+        return (int) (tick % wheel.size());
+    }
+
+    public synchronized int size() {
+        return leases.size();
+    }
+
+    private static class Lease {
+
+        private final String agentUuid;
+
+        private long deadline;
+
+        private Lease(String agentUuid, long deadline) {
+            this.agentUuid = agentUuid;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package ro.fortsoft.hztask.master.service;
+
+import com.google.common.base.Objects;
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the failed tasks until their retry is due
+ *
+ * @author Serban Balamaci
+ */
+public class TaskRetryTimer {
+
+    private final DelayQueue<ScheduledRetry> scheduledRetries = new DelayQueue<>();
+
+    public void schedule(TaskKey taskKey, int priority, long internalCounter, long delayMillis) {
+        scheduledRetries.add(new ScheduledRetry(taskKey, priority, internalCounter,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis)));
+    }
+
+    /**
+     * Waits for at least one retry to be due
+     * @return the retries that are due
+     */
+    public List<ScheduledRetry> takeDue() throws InterruptedException {
+        List<ScheduledRetry> due = new ArrayList<>();
+        due.add(scheduledRetries.take());
+        scheduledRetries.drainTo(due);
+        return due;
+    }
+
+    public int size() {
+        return scheduledRetries.size();
+    }
+
+    public void clear() {
+        scheduledRetries.clear();
+    }
+
+    public static class ScheduledRetry implements Delayed {
+
+        private final TaskKey taskKey;
+        private final int priority;
+        private final long internalCounter;
+        private final long dueNanos;
+
+        private ScheduledRetry(TaskKey taskKey, int priority, long internalCounter, long dueNanos) {
+            this.taskKey = taskKey;
+            this.priority = priority;
+            this.internalCounter = internalCounter;
+            this.dueNanos = dueNanos;
+        }
+
+        public TaskKey getTaskKey() {
+            return taskKey;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public long getInternalCounter() {
+            return internalCounter;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((ScheduledRetry) other).dueNanos);
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("taskKey", taskKey)
+                    .add("dueInMs", getDelay(TimeUnit.MILLISECONDS))
+                    .toString();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package ro.fortsoft.hztask.master.service;
+
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Master local index of the unassigned tasks, a binary heap ordered by priority (higher first)
+ * and then by the internal counter (older first), the same order as
+ * {@link ro.fortsoft.hztask.comparator.PriorityAndOldestTaskComparator}.
+ * The ordering fields are kept in primitive arrays parallel to the keys array, so no objects
+ * are created per entry besides the key.
+ *
+ * The Master being the only one assigning tasks, the index is fed with the tasks as they become
+ * unassigned. Entries can become stale (task finished or assigned in the meantime),
+ * so the popped keys must be checked against the tasks map.
+ *
+ * @author Serban Balamaci
+ */
+public class UnassignedTasksIndex {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] priorities = new int[INITIAL_CAPACITY];
+    private long[] counters = new long[INITIAL_CAPACITY];
+    private TaskKey[] keys = new TaskKey[INITIAL_CAPACITY];
+
+    private int size;
+
+    public synchronized void add(TaskKey taskKey, int priority, long internalCounter) {
+        ensureCapacity(size + 1);
+        siftUp(size, taskKey, priority, internalCounter);
+        size ++;
+    }
+
+    /**
+     * @return the key of the unassigned task with the highest priority, null if the index is empty
+     */
+    public synchronized TaskKey poll() {
+        if(size == 0) {
+            return null;
+        }
+        TaskKey first = keys[0];
+
+        size --;
+        TaskKey lastKey = keys[size];
+        int lastPriority = priorities[size];
+        long lastCounter = counters[size];
+        keys[size] = null;
+
+        if(size > 0) {
+            siftDown(0, lastKey, lastPriority, lastCounter);
+        }
+        return first;
+    }
+
+    /**
+     * @param maxCount maximum number of keys to remove
+     * @return the keys of the unassigned tasks with the highest priority, in order
+     */
+    public synchronized List<TaskKey> poll(int maxCount) {
+        List<TaskKey> taskKeys = new ArrayList<>(Math.min(maxCount, size));
+        while(taskKeys.size() < maxCount && size > 0) {
+            taskKeys.add(poll());
+        }
+        return taskKeys;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+
+    private void siftUp(int pos, TaskKey taskKey, int priority, long internalCounter) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if(! isBefore(priority, internalCounter, priorities[parent], counters[parent])) {
+                break;
+            }
+            move(parent, pos);
+            pos = parent;
+        }
+        set(pos, taskKey, priority, internalCounter);
+    }
+
+    private void siftDown(int pos, TaskKey taskKey, int priority, long internalCounter) {
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = (pos << 1) + 1;
+            int right = child + 1;
+            if(right < size && isBefore(priorities[right], counters[right], priorities[child], counters[child])) {
+                child = right;
+            }
+            if(! isBefore(priorities[child], counters[child], priority, internalCounter)) {
+                break;
+            }
+            move(child, pos);
+            pos = child;
+        }
+        set(pos, taskKey, priority, internalCounter);
+    }
+
+    private static boolean isBefore(int priority, long internalCounter, int otherPriority, long otherCounter) {
+        if(priority != otherPriority) {
+            return priority > otherPriority;
+        }
+        return internalCounter < otherCounter;
+    }
+
+    private void move(int from, int to) {
+        set(to, keys[from], priorities[from], counters[from]);
+    }
+
+    private void set(int pos, TaskKey taskKey, int priority, long internalCounter) {
+        keys[pos] = taskKey;
+        priorities[pos] = priority;
+        counters[pos] = internalCounter;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > keys.length) {
+            int newCapacity = Math.max(capacity, keys.length + (keys.length >> 1));
+            keys = Arrays.copyOf(keys, newCapacity);
+            priorities = Arrays.copyOf(priorities, newCapacity);
+            counters = Arrays.copyOf(counters, newCapacity);
+        }
+    }
+}
@@ -7,12 +7,16 @@ public interface IStatisticsService {
 
     public void incTaskFinishedCounter(String taskType, String agentUuid);
 
+    public void incTaskFinishedCounter(String taskType, String agentUuid, long count);
+
     public long getFinishedTasks(String taskType, String agentUuid);
     
     public long getFinishedTasks(String agentUuid);
 
     public void incTaskFailedCounter(String taskType, String agentUuid);
 
+    public void incTaskFailedCounter(String taskType, String agentUuid, long count);
+
     public long getFailedTasks(String agentUuid);
 
     public long getFailedTasks(String taskType, String agentUuid);
@@ -23,8 +27,44 @@ public interface IStatisticsService {
 
     public long getSubmittedTasks(String taskType, String agentUuid);
 
+    /**
+     * Count the tasks that were moved away from an Agent before it started them
+     * @param taskType taskType
+     * @param agentUuid the Agent the tasks were stolen from
+     * @param count number of stolen tasks
+     */
+    public void incTaskStolenCounter(String taskType, String agentUuid, long count);
+
+    public long getStolenTasks(String agentUuid);
+
+    /**
+     * Count the tasks taken back from an Agent because it stopped renewing their leases
+     * @param taskType taskType
+     * @param agentUuid the Agent the tasks were taken from
+     * @param count number of tasks
+     */
+    public void incTaskLeaseExpiredCounter(String taskType, String agentUuid, long count);
+
+    public long getLeaseExpiredTasks(String agentUuid);
+
+    /**
+     * Count the tasks that failed on an Agent and were put back to be tried again
+     * @param taskType taskType
+     * @param agentUuid the Agent the tasks failed on
+     * @param count number of tasks
+     */
+    public void incTaskRetriedCounter(String taskType, String agentUuid, long count);
+
+    public long getRetriedTasks(String agentUuid);
+
     public void incUnassignedTasks(String taskType);
 
     public void decUnassignedTask(String taskType);
 
+    /**
+     * Drop the counters of an Agent that left the cluster
+     * @param agentUuid agentUuid
+     */
+    public void removeAgent(String agentUuid);
+
 }
@@ -9,4 +9,5 @@ public enum TaskStatus {
     ASSIGNED,
     UNASSIGNED,
     REASSIGNED,
+    RETRY_SCHEDULED,
 }
@@ -1,5 +1,8 @@
 package ro.fortsoft.hztask.master.statistics;
 
+import ro.fortsoft.hztask.common.task.TaskKey;
+
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -19,49 +22,72 @@ import static ro.fortsoft.hztask.master.statistics.TaskTransition.create;
  */
 public class TaskTransitionLogKeeper {
 
-    private Map<String, List<TaskTransition>> tracker = new ConcurrentHashMap<>();
+    private Map<TaskKey, List<TaskTransition>> tracker = new ConcurrentHashMap<>();
 
-    public void taskReceived(String id) {
+    public void taskReceived(TaskKey id) {
         logTaskActivity(id, CREATED);
     }
 
-    public void taskAssigned(String id, String memberId) {
+    /**
+     * Log the creation of a batch of tasks, the same transition entry is shared by all the tasks
+     * @param ids ids of the received tasks
+     */
+    public void tasksReceived(Collection<TaskKey> ids) {
+        TaskTransition entry = create(CREATED);
+        for(TaskKey id : ids) {
+            addActivity(id, entry);
+        }
+    }
+
+    public void taskAssigned(TaskKey id, String memberId) {
         logTaskActivity(id, ASSIGNED, memberId);
     }
 
-    public void taskUnassigned(String id) {
+    public void taskUnassigned(TaskKey id) {
         logTaskActivity(id, UNASSIGNED);
     }
 
-    public void taskReassigned(String id, String memberId) {
+    public void taskReassigned(TaskKey id, String memberId) {
         logTaskActivity(id, TaskStatus.REASSIGNED, memberId);
     }
 
-    public void taskFinishedSuccess(String id) {
+    /**
+     * The task failed on the Agent and waits to be tried again
+     */
+    public void taskRetryScheduled(TaskKey id, String memberId) {
+        logTaskActivity(id, TaskStatus.RETRY_SCHEDULED, memberId);
+    }
+
+    public void taskFinishedSuccess(TaskKey id) {
         tracker.remove(id);
     }
 
-    public void taskFinishedFailure(String id) {
+    public void taskFinishedFailure(TaskKey id) {
         tracker.remove(id);
     }
 
-    private void addActivity(String id, TaskTransition entry) {
+    private void addActivity(TaskKey id, TaskTransition entry) {
         List<TaskTransition> transitions  = tracker.computeIfAbsent(id, key -> new CopyOnWriteArrayList<>());
         transitions.add(entry);
     }
 
-    private void logTaskActivity(String id, TaskStatus taskStatus) {
+    private void logTaskActivity(TaskKey id, TaskStatus taskStatus) {
         TaskTransition entry = create(taskStatus);
         addActivity(id, entry);
     }
 
-    private void logTaskActivity(String id, TaskStatus taskStatus, String memberId) {
+    private void logTaskActivity(TaskKey id, TaskStatus taskStatus, String memberId) {
         TaskTransition entry = create(taskStatus, memberId);
         addActivity(id, entry);
     }
 
+    /**
+     * @return copy of the tracked transitions by the task id in String form
+     */
     public Map<String, List<TaskTransition>> getDataCopy() {
-        return new HashMap<>(tracker);
+        Map<String, List<TaskTransition>> copy = new HashMap<>(tracker.size() * 2);
+        tracker.forEach((taskKey, transitions) -> copy.put(taskKey.getTaskId(), transitions));
+        return copy;
     }
 
 }
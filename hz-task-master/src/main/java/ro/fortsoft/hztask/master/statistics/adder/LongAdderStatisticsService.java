@@ -0,0 +1,301 @@
+package ro.fortsoft.hztask.master.statistics.adder;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import ro.fortsoft.hztask.master.statistics.IStatisticsService;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Statistics kept in {@link LongAdder} counters. Task types and agents are interned to small int ids,
+ * the agent id indexing the row of counters of the agent and the task type id the counters in the row,
+ * so reads and increments only do a lookup by the existing String instances and don't build keys
+ * or create objects (besides the first time a type or agent is seen).
+ *
+ * The counters of an agent that left are dropped, its id is not reused so a count racing with the removal
+ * can't land on another agent's counters. The agent is remembered for a while,
+ * so the counts reported late for it(ex. a completion batch still in flight) don't bring its counters back.
+ *
+ * @author Serban Balamaci
+ */
+public class LongAdderStatisticsService implements IStatisticsService {
+
+    private static final int SUBMITTED = 0;
+    private static final int FINISHED = 1;
+    private static final int FAILED = 2;
+    private static final int STOLEN = 3;
+    private static final int LEASE_EXPIRED = 4;
+    private static final int RETRIED = 5;
+    private static final int METRICS_COUNT = 6;
+
+    private static final int INITIAL_TYPES_CAPACITY = 16;
+    private static final int INITIAL_AGENTS_CAPACITY = 16;
+
+    /** how long the agents that left are remembered **/
+    private static final long REMOVED_AGENTS_RETENTION_MINUTES = 10;
+
+    private final ConcurrentMap<String, Integer> taskTypeIds = new ConcurrentHashMap<>();
+    private final AtomicInteger nextTaskTypeId = new AtomicInteger();
+
+    private final ConcurrentMap<String, Integer> agentIds = new ConcurrentHashMap<>();
+
+    /** rows of counters by agent id, slots written under the agentsLock **/
+    private volatile AgentCounters[] agentCountersById = new AgentCounters[INITIAL_AGENTS_CAPACITY];
+
+    /** guarded by agentsLock **/
+    private int nextAgentId;
+
+    private final Cache<String, Boolean> removedAgents = CacheBuilder.newBuilder()
+            .expireAfterWrite(REMOVED_AGENTS_RETENTION_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    private final Object agentsLock = new Object();
+
+    private final CountersRow unassignedTasks = new CountersRow(1);
+
+    @Override
+    public void incTaskFinishedCounter(String taskType, String agentUuid) {
+        incTaskFinishedCounter(taskType, agentUuid, 1);
+    }
+
+    @Override
+    public void incTaskFinishedCounter(String taskType, String agentUuid, long count) {
+        add(agentUuid, FINISHED, taskType, count);
+    }
+
+    @Override
+    public long getFinishedTasks(String taskType, String agentUuid) {
+        return get(FINISHED, taskType, agentUuid);
+    }
+
+    @Override
+    public long getFinishedTasks(String agentUuid) {
+        return get(FINISHED, agentUuid);
+    }
+
+    @Override
+    public void incTaskFailedCounter(String taskType, String agentUuid) {
+        incTaskFailedCounter(taskType, agentUuid, 1);
+    }
+
+    @Override
+    public void incTaskFailedCounter(String taskType, String agentUuid, long count) {
+        add(agentUuid, FAILED, taskType, count);
+    }
+
+    @Override
+    public long getFailedTasks(String agentUuid) {
+        return get(FAILED, agentUuid);
+    }
+
+    @Override
+    public long getFailedTasks(String taskType, String agentUuid) {
+        return get(FAILED, taskType, agentUuid);
+    }
+
+    @Override
+    public void incSubmittedTasks(String taskType, String agentUuid) {
+        add(agentUuid, SUBMITTED, taskType, 1);
+    }
+
+    @Override
+    public long getSubmittedTasks(String agentUuid) {
+        return get(SUBMITTED, agentUuid);
+    }
+
+    @Override
+    public long getSubmittedTasks(String taskType, String agentUuid) {
+        return get(SUBMITTED, taskType, agentUuid);
+    }
+
+    @Override
+    public void incTaskStolenCounter(String taskType, String agentUuid, long count) {
+        add(agentUuid, STOLEN, taskType, count);
+    }
+
+    @Override
+    public long getStolenTasks(String agentUuid) {
+        return get(STOLEN, agentUuid);
+    }
+
+    @Override
+    public void incTaskLeaseExpiredCounter(String taskType, String agentUuid, long count) {
+        add(agentUuid, LEASE_EXPIRED, taskType, count);
+    }
+
+    @Override
+    public long getLeaseExpiredTasks(String agentUuid) {
+        return get(LEASE_EXPIRED, agentUuid);
+    }
+
+    @Override
+    public void incTaskRetriedCounter(String taskType, String agentUuid, long count) {
+        add(agentUuid, RETRIED, taskType, count);
+    }
+
+    @Override
+    public long getRetriedTasks(String agentUuid) {
+        return get(RETRIED, agentUuid);
+    }
+
+    @Override
+    public void incUnassignedTasks(String taskType) {
+        unassignedTasks.add(0, taskTypeId(taskType), 1);
+    }
+
+    @Override
+    public void decUnassignedTask(String taskType) {
+        unassignedTasks.add(0, taskTypeId(taskType), -1);
+    }
+
+    @Override
+    public void removeAgent(String agentUuid) {
+        synchronized (agentsLock) {
+            removedAgents.put(agentUuid, Boolean.TRUE);
+            Integer agentId = agentIds.remove(agentUuid);
+            if(agentId != null) {
+                agentCountersById[agentId] = null;
+            }
+        }
+    }
+
+    private void add(String agentUuid, int metric, String taskType, long count) {
+        AgentCounters counters = agentCounters(agentUuid);
+        if(counters != null) {
+            counters.add(metric, taskTypeId(taskType), count);
+        }
+    }
+
+    private long get(int metric, String agentUuid) {
+        AgentCounters counters = existingAgentCounters(agentUuid);
+        return counters == null ? 0 : counters.totals[metric].sum();
+    }
+
+    private long get(int metric, String taskType, String agentUuid) {
+        AgentCounters counters = existingAgentCounters(agentUuid);
+        Integer taskTypeId = taskTypeIds.get(taskType);
+        if(counters == null || taskTypeId == null) {
+            return 0;
+        }
+        return counters.byType.sum(metric, taskTypeId);
+    }
+
+    private int taskTypeId(String taskType) {
+        Integer taskTypeId = taskTypeIds.get(taskType);
+        if(taskTypeId == null) {
+            taskTypeId = taskTypeIds.computeIfAbsent(taskType, type -> nextTaskTypeId.getAndIncrement());
+        }
+        return taskTypeId;
+    }
+
+    private AgentCounters existingAgentCounters(String agentUuid) {
+        Integer agentId = agentIds.get(agentUuid);
+        return agentId == null ? null : agentCountersById[agentId];
+    }
+
+    /**
+     * @return the counters of the agent, created the first time it's seen, null if the agent left
+     */
+    private AgentCounters agentCounters(String agentUuid) {
+        AgentCounters counters = existingAgentCounters(agentUuid);
+        if(counters != null) {
+            return counters;
+        }
+
+        synchronized (agentsLock) {
+            Integer agentId = agentIds.get(agentUuid);
+            if(agentId != null) {
+                return agentCountersById[agentId];
+            }
+            if(removedAgents.getIfPresent(agentUuid) != null) {
+                return null;
+            }
+
+            agentId = nextAgentId++;
+            AgentCounters[] current = agentCountersById;
+            if(agentId >= current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            counters = new AgentCounters();
+            current[agentId] = counters;
+            agentCountersById = current;
+            //published after the slot is written, readers get to the slot through the id
+            agentIds.put(agentUuid, agentId);
+            return counters;
+        }
+    }
+
+    private static class AgentCounters {
+
+        private final LongAdder[] totals = new LongAdder[METRICS_COUNT];
+        private final CountersRow byType = new CountersRow(METRICS_COUNT);
+
+        private AgentCounters() {
+            for(int i = 0; i < METRICS_COUNT; i++) {
+                totals[i] = new LongAdder();
+            }
+        }
+
+        private void add(int metric, int taskTypeId, long count) {
+            totals[metric].add(count);
+            byType.add(metric, taskTypeId, count);
+        }
+    }
+
+    /**
+     * Counters for a number of metrics by task type id, laid out as [taskTypeId * metrics + metric].
+     * The array is only replaced by a bigger copy when a new task type id doesn't fit
+     */
+    private static class CountersRow {
+
+        private final int metrics;
+        private volatile LongAdder[] counters;
+
+        private CountersRow(int metrics) {
+            this.metrics = metrics;
+            this.counters = newCounters(INITIAL_TYPES_CAPACITY * metrics);
+        }
+
+        private void add(int metric, int taskTypeId, long count) {
+            int index = taskTypeId * metrics + metric;
+            LongAdder[] current = counters;
+            if(index >= current.length) {
+                current = grow(index + 1);
+            }
+            current[index].add(count);
+        }
+
+        private long sum(int metric, int taskTypeId) {
+            int index = taskTypeId * metrics + metric;
+            LongAdder[] current = counters;
+            return index < current.length ? current[index].sum() : 0;
+        }
+
+        private synchronized LongAdder[] grow(int minLength) {
+            LongAdder[] current = counters;
+            if(minLength <= current.length) {
+                return current;
+            }
+            int newLength = Math.max(minLength, current.length * 2);
+            LongAdder[] grown = Arrays.copyOf(current, newLength);
+            for(int i = current.length; i < newLength; i++) {
+                grown[i] = new LongAdder();
+            }
+            counters = grown;
+            return grown;
+        }
+
+        private static LongAdder[] newCounters(int length) {
+            LongAdder[] counters = new LongAdder[length];
+            for(int i = 0; i < length; i++) {
+                counters[i] = new LongAdder();
+            }
+            return counters;
+        }
+    }
+}
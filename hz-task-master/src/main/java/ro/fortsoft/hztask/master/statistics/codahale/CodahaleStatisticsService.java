@@ -14,11 +14,16 @@ public class CodahaleStatisticsService implements IStatisticsService {
 
     @Override
     public void incTaskFinishedCounter(String taskType, String agentUuid) {
+        incTaskFinishedCounter(taskType, agentUuid, 1);
+    }
+
+    @Override
+    public void incTaskFinishedCounter(String taskType, String agentUuid, long count) {
         Counter tasks = finishedTasksCounter(agentUuid);
         Counter byMember = finishedTasksCounter(taskType, agentUuid);
 
-        tasks.inc();
-        byMember.inc();
+        tasks.inc(count);
+        byMember.inc(count);
     }
 
     @Override
@@ -33,11 +38,16 @@ public class CodahaleStatisticsService implements IStatisticsService {
 
     @Override
     public void incTaskFailedCounter(String taskType, String agentUuid) {
-        Counter tasksFailed = failedTasksCounter(taskType, agentUuid);
+        incTaskFailedCounter(taskType, agentUuid, 1);
+    }
+
+    @Override
+    public void incTaskFailedCounter(String taskType, String agentUuid, long count) {
+        Counter tasksFailed = failedTasksCounter(agentUuid);
         Counter byMember = failedTasksCounter(taskType, agentUuid);
 
-        tasksFailed.inc();
-        byMember.inc();
+        tasksFailed.inc(count);
+        byMember.inc(count);
     }
 
     @Override
@@ -69,6 +79,39 @@ public class CodahaleStatisticsService implements IStatisticsService {
         return submittedTasksCounter(taskType, agentUuid).getCount();
     }
 
+    @Override
+    public void incTaskStolenCounter(String taskType, String agentUuid, long count) {
+        stolenTasksCounter(agentUuid).inc(count);
+        stolenTasksCounter(taskType, agentUuid).inc(count);
+    }
+
+    @Override
+    public long getStolenTasks(String agentUuid) {
+        return stolenTasksCounter(agentUuid).getCount();
+    }
+
+    @Override
+    public void incTaskLeaseExpiredCounter(String taskType, String agentUuid, long count) {
+        leaseExpiredTasksCounter(agentUuid).inc(count);
+        leaseExpiredTasksCounter(taskType, agentUuid).inc(count);
+    }
+
+    @Override
+    public long getLeaseExpiredTasks(String agentUuid) {
+        return leaseExpiredTasksCounter(agentUuid).getCount();
+    }
+
+    @Override
+    public void incTaskRetriedCounter(String taskType, String agentUuid, long count) {
+        retriedTasksCounter(agentUuid).inc(count);
+        retriedTasksCounter(taskType, agentUuid).inc(count);
+    }
+
+    @Override
+    public long getRetriedTasks(String agentUuid) {
+        return retriedTasksCounter(agentUuid).getCount();
+    }
+
     @Override
     public void incUnassignedTasks(String taskType) {
         unassignedTasksCounter(taskType).inc();
@@ -79,6 +122,12 @@ public class CodahaleStatisticsService implements IStatisticsService {
         unassignedTasksCounter(taskType).dec();
     }
 
+    @Override
+    public void removeAgent(String agentUuid) {
+        String agentSuffix = "," + agentUuid;
+        metrics.removeMatching((name, metric) -> name.endsWith(agentSuffix));
+    }
+
     private Counter unassignedTasksCounter(String taskType) {
         return metrics.counter("unassigned-tasks," + taskType);
     }
@@ -99,6 +148,30 @@ public class CodahaleStatisticsService implements IStatisticsService {
         return metrics.counter("finished-tasks-agent," + agentUuid);
     }
 
+    private Counter stolenTasksCounter(String taskType, String agentUuid) {
+        return metrics.counter("stolen-tasks-type-agent," + taskType + "," + agentUuid);
+    }
+
+    private Counter stolenTasksCounter(String agentUuid) {
+        return metrics.counter("stolen-tasks-agent," + agentUuid);
+    }
+
+    private Counter leaseExpiredTasksCounter(String taskType, String agentUuid) {
+        return metrics.counter("lease-expired-tasks-type-agent," + taskType + "," + agentUuid);
+    }
+
+    private Counter leaseExpiredTasksCounter(String agentUuid) {
+        return metrics.counter("lease-expired-tasks-agent," + agentUuid);
+    }
+
+    private Counter retriedTasksCounter(String taskType, String agentUuid) {
+        return metrics.counter("retried-tasks-type-agent," + taskType + "," + agentUuid);
+    }
+
+    private Counter retriedTasksCounter(String agentUuid) {
+        return metrics.counter("retried-tasks-agent," + agentUuid);
+    }
+
     private Counter submittedTasksCounter(String taskType, String agentUuid) {
         return metrics.counter("submitted-tasks-type-agent," + taskType + "," + agentUuid);
     }
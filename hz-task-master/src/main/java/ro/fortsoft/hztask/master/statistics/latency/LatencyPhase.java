@@ -0,0 +1,24 @@
+package ro.fortsoft.hztask.master.statistics.latency;
+
+/**
+ * Phases of the task lifecycle for which latencies are recorded
+ *
+ * @author Serban Balamaci
+ */
+public enum LatencyPhase {
+
+    /** from the task creation until it's first assigned to an Agent **/
+    UNASSIGNED_WAIT,
+
+    /** from the assignment until the Agent starts processing the task **/
+    PICKUP,
+
+    /** the running time of the TaskProcessor on the Agent **/
+    PROCESSING,
+
+    /** from the end of processing until the Master received the completion notification **/
+    NOTIFICATION,
+
+    /** the running time of the TaskCompletionHandler on the Master **/
+    COMPLETION_HANDLER,
+}
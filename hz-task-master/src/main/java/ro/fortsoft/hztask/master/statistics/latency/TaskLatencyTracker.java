@@ -0,0 +1,136 @@
+package ro.fortsoft.hztask.master.statistics.latency;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps HdrHistograms of the latencies of the task lifecycle phases, by task type and Agent.
+ * Values are recorded in microseconds.
+ *
+ * The PICKUP and NOTIFICATION phases are measured between the clocks of the Master and the Agent,
+ * so they are only as accurate as the clocks of the members are synchronized.
+ *
+ * The histograms of an Agent that left are merged into one per task type for all the departed Agents,
+ * so the memory doesn't grow with the Agents coming and going while the latencies by task type are kept.
+ *
+ * @author Serban Balamaci
+ */
+public class TaskLatencyTracker {
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+
+    /** key of the histograms of the Agents that left **/
+    private static final String DEPARTED_AGENTS = "";
+
+    /** how long the Agents that left are remembered, the latencies reported late for them go to DEPARTED_AGENTS **/
+    private static final long REMOVED_AGENTS_RETENTION_MINUTES = 10;
+
+    private final Cache<String, Boolean> removedAgents = CacheBuilder.newBuilder()
+            .expireAfterWrite(REMOVED_AGENTS_RETENTION_MINUTES, TimeUnit.MINUTES)
+            .build();
+
+    private final Map<LatencyPhase, ConcurrentMap<String, ConcurrentMap<String, ConcurrentHistogram>>> histograms =
+            new EnumMap<>(LatencyPhase.class);
+
+    public TaskLatencyTracker() {
+        for(LatencyPhase phase : LatencyPhase.values()) {
+            histograms.put(phase, new ConcurrentHashMap<>());
+        }
+    }
+
+    public void recordMillis(LatencyPhase phase, String taskType, String agentUuid, long millis) {
+        record(phase, taskType, agentUuid, TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    public void recordNanos(LatencyPhase phase, String taskType, String agentUuid, long nanos) {
+        record(phase, taskType, agentUuid, TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    private void record(LatencyPhase phase, String taskType, String agentUuid, long micros) {
+        //members clocks might be skewed
+        histogram(phase, taskType, agentUuid).recordValue(Math.max(micros, 0));
+    }
+
+    /**
+     * Merges the histograms of the Agent into the ones of the departed Agents
+     * @param agentUuid Agent that left the cluster
+     */
+    public void removeAgent(String agentUuid) {
+        removedAgents.put(agentUuid, Boolean.TRUE);
+        for(LatencyPhase phase : LatencyPhase.values()) {
+            for(Map.Entry<String, ConcurrentMap<String, ConcurrentHistogram>> byType :
+                    histograms.get(phase).entrySet()) {
+                ConcurrentHistogram histogram = byType.getValue().remove(agentUuid);
+                if(histogram != null) {
+                    histogram(phase, byType.getKey(), DEPARTED_AGENTS).add(histogram);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the latencies in microseconds recorded for the task type on the Agent
+     */
+    public Histogram getHistogram(LatencyPhase phase, String taskType, String agentUuid) {
+        Map<String, ConcurrentHistogram> byAgent = histograms.get(phase).get(taskType);
+        ConcurrentHistogram histogram = byAgent == null ? null : byAgent.get(agentUuid);
+        return histogram == null ? new Histogram(SIGNIFICANT_DIGITS) : histogram.copy();
+    }
+
+    /**
+     * @return the latencies in microseconds recorded for the task type on all the Agents
+     */
+    public Histogram getHistogram(LatencyPhase phase, String taskType) {
+        Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+        Map<String, ConcurrentHistogram> byAgent = histograms.get(phase).get(taskType);
+        if(byAgent != null) {
+            for(ConcurrentHistogram histogram : byAgent.values()) {
+                merged.add(histogram);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @return the task types for which latencies were recorded in the phase
+     */
+    public Set<String> getTaskTypes(LatencyPhase phase) {
+        return Collections.unmodifiableSet(histograms.get(phase).keySet());
+    }
+
+    private ConcurrentHistogram histogram(LatencyPhase phase, String taskType, String agentUuid) {
+        if(removedAgents.getIfPresent(agentUuid) != null) {
+            agentUuid = DEPARTED_AGENTS;
+        }
+        ConcurrentMap<String, ConcurrentMap<String, ConcurrentHistogram>> byType = histograms.get(phase);
+
+        ConcurrentMap<String, ConcurrentHistogram> byAgent = byType.get(taskType);
+        if(byAgent == null) {
+            byAgent = byType.computeIfAbsent(taskType, type -> new ConcurrentHashMap<>());
+        }
+
+        ConcurrentHistogram histogram = byAgent.get(agentUuid);
+        if(histogram == null) {
+            histogram = byAgent.computeIfAbsent(agentUuid, uuid -> new ConcurrentHistogram(SIGNIFICANT_DIGITS));
+
+            // the Agent might have been removed while its histogram was being created
+            if(! DEPARTED_AGENTS.equals(agentUuid) && removedAgents.getIfPresent(agentUuid) != null
+                    && byAgent.remove(agentUuid, histogram)) {
+                ConcurrentHistogram departed = histogram(phase, taskType, DEPARTED_AGENTS);
+                departed.add(histogram);
+                return departed;
+            }
+        }
+        return histogram;
+    }
+}
@@ -0,0 +1,111 @@
+package ro.fortsoft.hztask.master.stream;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IQueue;
+import ro.fortsoft.hztask.common.stream.ResultStreamConfigUtil;
+import ro.fortsoft.hztask.common.stream.ResultStreamRef;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a task result streamed by the Agent in chunks, as they are taken from the stream's queue
+ * the Agent can write the next ones. Closing it before the end abandons the stream, the Agent
+ * stops writing after the idle timeout.
+ *
+ * For a ReadableByteChannel wrap it with {@link java.nio.channels.Channels#newChannel(InputStream)}.
+ *
+ * @author Serban Balamaci
+ */
+public class ResultInputStream extends InputStream {
+
+    private final IQueue<Object> queue;
+
+    private byte[] chunk = new byte[0];
+    private int position;
+
+    private boolean endOfStream;
+    private boolean closed;
+
+    public ResultInputStream(HazelcastInstance hzInstance, ResultStreamRef streamRef) {
+        this.queue = hzInstance.getQueue(streamRef.getQueueName());
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(! nextChunkIfNeeded()) {
+            return -1;
+        }
+        return chunk[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+            return 0;
+        }
+        if(! nextChunkIfNeeded()) {
+            return -1;
+        }
+        int length = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, length);
+        position += length;
+        return length;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    /**
+     * @return false if the end of the stream was reached
+     */
+    private boolean nextChunkIfNeeded() throws IOException {
+        if(closed) {
+            throw new IOException("Result stream closed");
+        }
+        while (position == chunk.length) {
+            if(endOfStream) {
+                return false;
+            }
+            Object item = take();
+            if(item instanceof String) {
+                throw new IOException("Writing the result stream failed on the Agent: " + item);
+            }
+            chunk = (byte[]) item;
+            position = 0;
+            endOfStream = chunk.length == 0;
+        }
+        return true;
+    }
+
+    private Object take() throws IOException {
+        Object item;
+        try {
+            item = queue.poll(ResultStreamConfigUtil.IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted reading the result stream");
+        }
+        if(item == null) {
+            throw new IOException("Nothing written to the result stream for " +
+                    ResultStreamConfigUtil.IDLE_TIMEOUT_MS + "ms");
+        }
+        return item;
+    }
+
+    /**
+     * Destroys the stream's queue, along with any chunks not read
+     */
+    @Override
+    public void close() {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        queue.destroy();
+    }
+}
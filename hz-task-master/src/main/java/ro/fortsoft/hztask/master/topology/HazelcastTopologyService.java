@@ -1,5 +1,6 @@
 package ro.fortsoft.hztask.master.topology;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.AsyncEventBus;
 import com.hazelcast.core.ExecutionCallback;
@@ -16,7 +17,9 @@ import ro.fortsoft.hztask.op.GetMemberTypeClusterOp;
 import ro.fortsoft.hztask.op.agent.AnnounceMasterAndSignalStartWorkOp;
 import ro.fortsoft.hztask.op.agent.AskAgentReadyOp;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -50,32 +53,40 @@ public class HazelcastTopologyService {
         this.communicationService = communicationService;
     }
 
-    private Future<MemberType> isMemberMaster(Member member) {
+    private Future<MemberType> getMemberType(Member member) {
         return communicationService.sendMessageToMember(member, new GetMemberTypeClusterOp());
     }
 
     public boolean isMasterAmongClusterMembers() {
+        return findMemberOfType(MemberType.MASTER).isPresent();
+    }
+
+    /**
+     * Asks the other cluster members what they are
+     * @param memberType type to look for
+     * @return the first member found to be of the type
+     */
+    public Optional<Member> findMemberOfType(MemberType memberType) {
         Set<Member> members = hzInstance.getCluster().getMembers();
-        List<Future<MemberType>> futures = Lists.newArrayList();
+        Map<Member, Future<MemberType>> futures = new LinkedHashMap<>();
 
         for(Member member : members) {
             if(! member.localMember()) {
-                futures.add(isMemberMaster(member));
+                futures.put(member, getMemberType(member));
             }
         }
 
-        for(Future<MemberType> future : futures) {
+        for(Map.Entry<Member, Future<MemberType>> future : futures.entrySet()) {
             try {
-                MemberType memberType = future.get();
-                if(MemberType.MASTER.equals(memberType)) {
-                    return true;
+                if(memberType.equals(future.getValue().get())) {
+                    return Optional.of(future.getKey());
                 }
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
         }
 
-        return false;
+        return Optional.absent();
     }
 
     /**
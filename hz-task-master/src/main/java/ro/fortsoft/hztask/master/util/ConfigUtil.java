@@ -0,0 +1,37 @@
+package ro.fortsoft.hztask.master.util;
+
+import com.hazelcast.config.Config;
+import com.hazelcast.config.MapConfig;
+import ro.fortsoft.hztask.common.HzKeysConstants;
+import ro.fortsoft.hztask.common.TasksMapConfigUtil;
+import ro.fortsoft.hztask.common.stream.ResultStreamConfigUtil;
+import ro.fortsoft.hztask.serialization.SerializationConfigUtil;
+
+/**
+ * Adds the internal configuration the framework relies on to the user supplied Hazelcast config
+ *
+ * @author Serban Balamaci
+ */
+public class ConfigUtil {
+
+    /**
+     * Adds the framework's internal configuration
+     * @param config user supplied Hazelcast config
+     * @param tasksBackupCount number of synchronous backups for the distributed tasks maps(tasks, scheduled
+     *                         and dead letter tasks)
+     * @return the same config instance
+     */
+    public static Config addInternalConfig(Config config, int tasksBackupCount) {
+        MapConfig tasksMapConfig = config.getMapConfig(HzKeysConstants.TASKS_MAP);
+        tasksMapConfig.setBackupCount(tasksBackupCount);
+        config.getMapConfig(HzKeysConstants.SCHEDULED_TASKS_MAP).setBackupCount(tasksBackupCount);
+        config.getMapConfig(HzKeysConstants.DEAD_LETTER_TASKS_MAP).setBackupCount(tasksBackupCount);
+        TasksMapConfigUtil.addTasksMapIndexes(config);
+        ResultStreamConfigUtil.addResultStreamConfig(config);
+
+        SerializationConfigUtil.addSerializationConfig(config);
+
+        return config;
+    }
+
+}